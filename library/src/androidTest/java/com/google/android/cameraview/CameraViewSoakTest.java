@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.hardware.Camera;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.google.android.cameraview.test.R;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cycles a {@link CameraView} through starts, stops and setting changes, on the camera hardware
+ * and on the fake camera, and fails when the time a cycle takes, the heaps or the surfaces and
+ * image readers left open grow as the cycles go by.
+ *
+ * <p>The default run is short; pass {@code -e soakCycles 5000} to the instrumentation for a long
+ * one.</p>
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class CameraViewSoakTest {
+
+    private static final String TAG = "CameraViewSoakTest";
+
+    private static final FakeCameraProfile FAKE_PROFILE = new FakeCameraProfile(
+            new Size(640, 480), new Size(1600, 1200), 30, 100, 50, 100);
+
+    private static final int DEFAULT_CYCLES = 50;
+
+    /** The heaps are measured once every this many cycles, as it takes a full collection. */
+    private static final int HEAP_INTERVAL = 10;
+
+    private static final long OPEN_TIMEOUT_MS = 5000;
+
+    /** Long enough for the camera to open and report its aspect ratios. */
+    private static final long SETTLE_MS = 500;
+
+    /** Allowance for the noise of the heap measurements. */
+    private static final long JAVA_HEAP_SLACK_BYTES = 2 * 1024 * 1024;
+
+    /** Allowance for the buffers the camera service and the drivers keep around. */
+    private static final long NATIVE_HEAP_SLACK_BYTES = 8 * 1024 * 1024;
+
+    /** How much slower the last cycles may be than the first ones. */
+    private static final double ELAPSED_SLACK = 2;
+
+    @Rule
+    public final ActivityTestRule<CameraViewActivity> rule =
+            new ActivityTestRule<>(CameraViewActivity.class, false, false);
+
+    private final AtomicInteger mOpened = new AtomicInteger();
+
+    private final AtomicInteger mClosed = new AtomicInteger();
+
+    private volatile CountDownLatch mOpenLatch = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        CameraView.setFakeCameraProfile(null);
+    }
+
+    @Test
+    public void hardwareCyclesDoNotGrow() throws Throwable {
+        rule.launchActivity(null);
+        soak(Camera.getNumberOfCameras() > 1);
+    }
+
+    @Test
+    public void fakeCameraCyclesDoNotGrow() throws Throwable {
+        CameraView.setFakeCameraProfile(FAKE_PROFILE);
+        rule.launchActivity(null);
+        final CameraView cameraView = rule.getActivity().findViewById(R.id.camera);
+        assertTrue(cameraView.getBackend() == CameraView.BACKEND_FAKE);
+        soak(true);
+    }
+
+    private void soak(boolean switchFacing) throws Throwable {
+        final String argument = InstrumentationRegistry.getArguments().getString("soakCycles");
+        final int cycles = argument == null ? DEFAULT_CYCLES : Integer.parseInt(argument);
+        final CameraView cameraView = rule.getActivity().findViewById(R.id.camera);
+        SystemClock.sleep(SETTLE_MS);
+        final List<AspectRatio> ratios = new ArrayList<>(cameraView.getSupportedAspectRatios());
+        assumeTrue("No camera", !ratios.isEmpty());
+        rule.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                cameraView.stop();
+                cameraView.addCallback(new CameraView.Callback() {
+                    @Override
+                    public void onCameraOpened(CameraView view) {
+                        mOpened.incrementAndGet();
+                        mOpenLatch.countDown();
+                    }
+
+                    @Override
+                    public void onCameraClosed(CameraView view) {
+                        mClosed.incrementAndGet();
+                    }
+                });
+            }
+        });
+        final PreviewImpl preview = cameraView.mImpl.mPreview;
+
+        final long[] elapsed = new long[cycles];
+        final int samples = cycles / HEAP_INTERVAL + 1;
+        final long[] javaHeap = new long[samples];
+        final long[] nativeHeap = new long[samples];
+        int surfaces = 0;
+        int readers = 0;
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            final int facing = switchFacing && cycle % 2 == 1
+                    ? CameraView.FACING_FRONT : CameraView.FACING_BACK;
+            final AspectRatio ratio = ratios.get(cycle % ratios.size());
+            mOpenLatch = new CountDownLatch(1);
+            final long start = System.nanoTime();
+            rule.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    cameraView.stop();
+                    cameraView.setFacing(facing);
+                    cameraView.setAspectRatio(ratio);
+                    cameraView.start();
+                }
+            });
+            assertTrue("The camera did not open in cycle " + cycle,
+                    mOpenLatch.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            elapsed[cycle] = System.nanoTime() - start;
+            // Let the session configure before it is torn down again
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+
+            // The close of the activity's own start may be reported after the callback is added
+            final int open = mOpened.get() - mClosed.get();
+            assertTrue("Unbalanced callbacks in cycle " + cycle, open == 0 || open == 1);
+            if (preview instanceof TextureViewPreview) {
+                final int count = ((TextureViewPreview) preview).getCreatedSurfaceCount();
+                // Camera2 creates one surface for the texture; Camera1 uses the texture directly
+                assertTrue("Created " + count + " surfaces by cycle " + cycle,
+                        cycle == 0 || count <= Math.max(surfaces, 1));
+                surfaces = Math.max(surfaces, count);
+            }
+            if (Build.VERSION.SDK_INT >= 21) {
+                final int count = Camera2.getOpenImageReaderCount();
+                // The readers of the first cycle stay open for the next ones to replace
+                assertTrue(count + " image readers open in cycle " + cycle,
+                        cycle == 0 || count <= readers);
+                readers = Math.max(readers, count);
+            }
+            if (cycle % HEAP_INTERVAL == 0) {
+                Runtime.getRuntime().gc();
+                final Runtime runtime = Runtime.getRuntime();
+                javaHeap[cycle / HEAP_INTERVAL] = runtime.totalMemory() - runtime.freeMemory();
+                nativeHeap[cycle / HEAP_INTERVAL] = Debug.getNativeHeapAllocatedSize();
+            }
+        }
+
+        // The first tenth of the cycles warms up the camera service and the drivers
+        final int window = Math.max(cycles / 10, 1);
+        final long first = median(elapsed, window, 2 * window);
+        final long last = median(elapsed, cycles - window, cycles);
+        final int warm = Math.min(samples - 1, (2 * window) / HEAP_INTERVAL);
+        final int end = (cycles - 1) / HEAP_INTERVAL;
+        final long javaGrowth = javaHeap[end] - javaHeap[warm];
+        final long nativeGrowth = nativeHeap[end] - nativeHeap[warm];
+        Log.i(TAG, cycles + " cycles: " + first / 1000000 + " ms -> " + last / 1000000
+                + " ms to open, Java heap " + javaGrowth / 1024 + " KB, native heap "
+                + nativeGrowth / 1024 + " KB");
+        assertTrue("Opening went from " + first + " ns to " + last + " ns",
+                last <= first * ELAPSED_SLACK);
+        assertTrue("The Java heap grew by " + javaGrowth + " bytes",
+                javaGrowth <= JAVA_HEAP_SLACK_BYTES);
+        assertTrue("The native heap grew by " + nativeGrowth + " bytes",
+                nativeGrowth <= NATIVE_HEAP_SLACK_BYTES);
+    }
+
+    private static long median(long[] values, int from, int to) {
+        final long[] window = Arrays.copyOfRange(values, from, to);
+        Arrays.sort(window);
+        return window[window.length / 2];
+    }
+
+}
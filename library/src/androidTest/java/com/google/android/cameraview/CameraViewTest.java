@@ -31,6 +31,7 @@ import static junit.framework.Assert.assertFalse;
 import static org.hamcrest.CoreMatchers.is;
 
 import android.graphics.Bitmap;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.support.test.espresso.IdlingRegistry;
 import android.support.test.espresso.IdlingResource;
@@ -58,6 +59,11 @@ import org.junit.runner.RunWith;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RunWith(AndroidJUnit4.class)
 public class CameraViewTest {
@@ -238,6 +244,38 @@ public class CameraViewTest {
         }
     }
 
+    @Test
+    public void testCallbackOnExecutor() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch opened = new CountDownLatch(1);
+        final AtomicBoolean onMainThread = new AtomicBoolean(true);
+        final CameraView cameraView = rule.getActivity().findViewById(R.id.camera);
+        cameraView.addCallback(executor, new CameraView.Callback() {
+            @Override
+            public void onCameraOpened(CameraView view) {
+                onMainThread.set(Looper.myLooper() == Looper.getMainLooper());
+                // Removing itself must not disturb the other callbacks
+                view.removeCallback(this);
+                opened.countDown();
+            }
+        });
+        try {
+            onView(withId(R.id.camera))
+                    .perform(new AnythingAction("restart") {
+                        @Override
+                        public void perform(UiController uiController, View view) {
+                            CameraView cameraView = (CameraView) view;
+                            cameraView.stop();
+                            cameraView.start();
+                        }
+                    });
+            assertThat(opened.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(onMainThread.get(), is(false));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private static ViewAction waitFor(final long ms) {
         return new AnythingAction("wait") {
             @Override
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.Display;
+import android.view.WindowManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures how often the sensor-based and the display-based detectors wake up while the device
+ * is not rotated.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class DisplayOrientationDetectorTest {
+
+    private static final String TAG = "DisplayOrientation";
+
+    private static final long DURATION_MS = 10000;
+
+    @Test
+    public void displayListenerWakesUpLessThanSensor() {
+        assumeTrue(Build.VERSION.SDK_INT >= 17);
+        final float sensor = measureWakeUpsPerMinute(true);
+        final float display = measureWakeUpsPerMinute(false);
+        Log.i(TAG, "Wake-ups per minute: sensor=" + sensor + ", display=" + display);
+        assertTrue("sensor=" + sensor + ", display=" + display, display <= sensor);
+    }
+
+    private static float measureWakeUpsPerMinute(boolean useSensor) {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final Display display = ((WindowManager) context.getSystemService(
+                Context.WINDOW_SERVICE)).getDefaultDisplay();
+        final DisplayOrientationDetector detector =
+                new DisplayOrientationDetector(context, useSensor) {
+                    @Override
+                    public void onDisplayOrientationChanged(int displayOrientation) {
+                    }
+                };
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                detector.enable(display);
+            }
+        });
+        SystemClock.sleep(DURATION_MS);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                detector.disable();
+            }
+        });
+        return detector.getWakeUpCount() * 60000.f / DURATION_MS;
+    }
+
+}
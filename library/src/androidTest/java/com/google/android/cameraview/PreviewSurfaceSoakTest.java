@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.os.SystemClock;
+import android.support.test.filters.LargeTest;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.google.android.cameraview.test.R;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cycles the camera and checks that the preview does not create a surface every time.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class PreviewSurfaceSoakTest {
+
+    private static final int CYCLES = 30;
+
+    /** Long enough for the camera to open and configure a session. */
+    private static final long SETTLE_MS = 500;
+
+    @Rule
+    public final ActivityTestRule<CameraViewActivity> rule =
+            new ActivityTestRule<>(CameraViewActivity.class);
+
+    @Test
+    public void surfaceCountStaysFlat() throws Throwable {
+        final CameraView cameraView = rule.getActivity().findViewById(R.id.camera);
+        SystemClock.sleep(SETTLE_MS);
+        final PreviewImpl preview = cameraView.mImpl.mPreview;
+        assumeTrue("Only TextureView previews create surfaces",
+                preview instanceof TextureViewPreview);
+        final TextureViewPreview texturePreview = (TextureViewPreview) preview;
+        final List<AspectRatio> ratios = new ArrayList<>(cameraView.getSupportedAspectRatios());
+        final int initial = texturePreview.getCreatedSurfaceCount();
+        for (int i = 0; i < CYCLES; i++) {
+            final AspectRatio ratio = ratios.get(i % ratios.size());
+            rule.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    cameraView.stop();
+                    cameraView.start();
+                }
+            });
+            SystemClock.sleep(SETTLE_MS);
+            rule.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    cameraView.setAspectRatio(ratio);
+                }
+            });
+            SystemClock.sleep(SETTLE_MS);
+        }
+        // Camera2 creates one surface for the texture; Camera1 uses the texture directly
+        final int count = texturePreview.getCreatedSurfaceCount();
+        assertTrue("Created " + count + " surfaces", count <= Math.max(initial, 1));
+    }
+
+}
@@ -19,13 +19,17 @@ package com.google.android.cameraview;
 import android.annotation.SuppressLint;
 import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
+import android.media.CamcorderProfile;
+import android.media.MediaRecorder;
+import android.os.Looper;
 import android.support.v4.util.SparseArrayCompat;
 import android.view.SurfaceHolder;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 
@@ -34,6 +38,9 @@ class Camera1 extends CameraViewImpl {
 
     private static final int INVALID_CAMERA_ID = -1;
 
+    /** The frame rate assumed when the camera does not report any. */
+    private static final int DEFAULT_FRAME_RATE = 30;
+
     private static final SparseArrayCompat<String> FLASH_MODES = new SparseArrayCompat<>();
 
     static {
@@ -52,6 +59,16 @@ class Camera1 extends CameraViewImpl {
 
     private Camera.Parameters mCameraParameters;
 
+    /** The JPEG settings of the camera before the app chose any. */
+    private int mDefaultJpegQuality;
+
+    private Size mDefaultJpegThumbnailSize;
+
+    private int mDefaultJpegThumbnailQuality;
+
+    /** The preview fps range of the camera before the app chose any. */
+    private final int[] mDefaultPreviewFpsRange = new int[2];
+
     private final Camera.CameraInfo mCameraInfo = new Camera.CameraInfo();
 
     private final SizeMap mPreviewSizes = new SizeMap();
@@ -70,15 +87,57 @@ class Camera1 extends CameraViewImpl {
 
     private int mDisplayOrientation;
 
+    /** The recorder while recording; the camera is unlocked to it. */
+    private VideoRecorder mVideoRecorder;
+
+    /** Reports the first frame for previews that cannot see their frames. */
+    private final Camera.PreviewCallback mFirstFrameCallback = new Camera.PreviewCallback() {
+        @Override
+        public void onPreviewFrame(byte[] data, Camera camera) {
+            mPreview.onCameraFrame(0);
+        }
+    };
+
+    private final Runnable mReopen = new Runnable() {
+        @Override
+        public void run() {
+            if (isCameraOpened()) {
+                stop();
+                start();
+            }
+        }
+    };
+
+    private final Runnable mConfigure = new Runnable() {
+        @Override
+        public void run() {
+            configure();
+        }
+    };
+
+    /** Whether the preview surface is to be set again on the next configuration. */
+    private boolean mSurfacePending;
+
+    /** Whether to configure the camera once the picture being taken is done. */
+    private boolean mConfigurePending;
+
+    /** The picture being taken. */
+    private PictureFuture mPictureFuture;
+
+    /** The pictures requested while another one is being taken. */
+    private final ArrayList<PictureFuture> mPendingPictures = new ArrayList<>();
+
     Camera1(Callback callback, PreviewImpl preview) {
-        super(callback, preview);
+        this(callback, preview, new CommandQueue(Looper.getMainLooper()));
+    }
+
+    Camera1(Callback callback, PreviewImpl preview, CommandQueue commands) {
+        super(callback, preview, commands);
         preview.setCallback(new PreviewImpl.Callback() {
             @Override
             public void onSurfaceChanged() {
-                if (mCamera != null) {
-                    setUpPreview();
-                    adjustCameraParameters();
-                }
+                mSurfacePending = true;
+                requestConfigure();
             }
         });
     }
@@ -90,20 +149,98 @@ class Camera1 extends CameraViewImpl {
         if (mPreview.isReady()) {
             setUpPreview();
         }
-        mShowingPreview = true;
-        mCamera.startPreview();
+        if (!mPreviewPaused) {
+            mShowingPreview = true;
+            if (!mPreview.reportsFrames()) {
+                mCamera.setOneShotPreviewCallback(mFirstFrameCallback);
+            }
+            mCamera.startPreview();
+            setCameraState(CameraState.STREAMING);
+        }
         return true;
     }
 
     @Override
     void stop() {
+        stopRecording();
+        mCommands.cancel(COMMAND_REOPEN);
+        mCommands.cancel(COMMAND_CONFIGURE);
+        mConfigurePending = false;
+        abortPictures();
         if (mCamera != null) {
+            setCameraState(CameraState.CLOSING);
             mCamera.stopPreview();
         }
         mShowingPreview = false;
+        mPreviewPaused = false;
         releaseCamera();
     }
 
+    @Override
+    void pausePreview() {
+        if (mPreviewPaused) {
+            return;
+        }
+        if (mVideoRecorder != null) {
+            throw new IllegalStateException("Cannot pause the preview while recording.");
+        }
+        mPreviewPaused = true;
+        if (mCamera != null && mShowingPreview) {
+            mCamera.stopPreview();
+            setCameraState(CameraState.OPENED);
+        }
+        mShowingPreview = false;
+    }
+
+    @Override
+    void resumePreview() {
+        if (!mPreviewPaused) {
+            return;
+        }
+        mPreviewPaused = false;
+        if (mCamera != null) {
+            mShowingPreview = true;
+            mCamera.startPreview();
+            setCameraState(CameraState.STREAMING);
+        }
+    }
+
+    @SuppressLint("NewApi")
+    @Override
+    boolean detachPreview() {
+        if (mCamera == null || mVideoRecorder != null) {
+            // The recorder owns the camera
+            return false;
+        }
+        mCamera.stopPreview();
+        mShowingPreview = false;
+        setCameraState(CameraState.OPENED);
+        try {
+            if (mPreview.getOutputClass() == SurfaceHolder.class) {
+                mCamera.setPreviewDisplay(null);
+            } else {
+                mCamera.setPreviewTexture(null);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return true;
+    }
+
+    @Override
+    void attachPreview(Callback callback, PreviewImpl preview) {
+        super.attachPreview(callback, preview);
+        if (mCamera == null) {
+            return;
+        }
+        mShowingPreview = !mPreviewPaused;
+        // Otherwise, the preview starts when the surface is ready
+        if (mPreview.isReady()) {
+            setUpPreview();
+            adjustCameraParameters();
+        }
+    }
+
     // Suppresses Camera#setPreviewTexture
     @SuppressLint("NewApi")
     void setUpPreview() {
@@ -130,8 +267,7 @@ class Camera1 extends CameraViewImpl {
         }
         mFacing = facing;
         if (isCameraOpened()) {
-            stop();
-            start();
+            mCommands.enqueue(COMMAND_REOPEN, mReopen);
         }
     }
 
@@ -142,13 +278,7 @@ class Camera1 extends CameraViewImpl {
 
     @Override
     Set<AspectRatio> getSupportedAspectRatios() {
-        SizeMap idealAspectRatios = mPreviewSizes;
-        for (AspectRatio aspectRatio : idealAspectRatios.ratios()) {
-            if (mPictureSizes.sizes(aspectRatio) == null) {
-                idealAspectRatios.remove(aspectRatio);
-            }
-        }
-        return idealAspectRatios.ratios();
+        return mPreviewSizes.ratios();
     }
 
     @Override
@@ -158,12 +288,13 @@ class Camera1 extends CameraViewImpl {
             mAspectRatio = ratio;
             return true;
         } else if (!mAspectRatio.equals(ratio)) {
-            final Set<Size> sizes = mPreviewSizes.sizes(ratio);
-            if (sizes == null) {
+            final AspectRatio supported = mPreviewSizes.snapshot()
+                    .closest(ratio, mAspectRatioTolerance);
+            if (supported == null) {
                 throw new UnsupportedOperationException(ratio + " is not supported");
-            } else {
-                mAspectRatio = ratio;
-                adjustCameraParameters();
+            } else if (!supported.equals(mAspectRatio)) {
+                mAspectRatio = supported;
+                requestConfigure();
                 return true;
             }
         }
@@ -175,6 +306,67 @@ class Camera1 extends CameraViewImpl {
         return mAspectRatio;
     }
 
+    @Override
+    void setPreviewSizeSelector(SizeSelector selector) {
+        super.setPreviewSizeSelector(selector);
+        if (isCameraOpened()) {
+            requestConfigure();
+        }
+    }
+
+    @Override
+    void setPictureSizeSelector(SizeSelector selector) {
+        super.setPictureSizeSelector(selector);
+        if (isCameraOpened()) {
+            requestConfigure();
+        }
+    }
+
+    @Override
+    void setFrameRateRange(FrameRateRange range) {
+        super.setFrameRateRange(range);
+        if (isCameraOpened()) {
+            requestConfigure();
+        }
+    }
+
+    @Override
+    FrameRateRange getAppliedFrameRateRange() {
+        if (!isCameraOpened()) {
+            return null;
+        }
+        final int[] range = new int[2];
+        mCameraParameters.getPreviewFpsRange(range);
+        if (range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] <= 0) {
+            return null;
+        }
+        return toFrameRateRange(range);
+    }
+
+    @Override
+    void setJpegQuality(int quality) {
+        super.setJpegQuality(quality);
+        if (isCameraOpened()) {
+            requestConfigure();
+        }
+    }
+
+    @Override
+    void setJpegThumbnailSize(Size size) {
+        super.setJpegThumbnailSize(size);
+        if (isCameraOpened()) {
+            requestConfigure();
+        }
+    }
+
+    @Override
+    void setJpegThumbnailQuality(int quality) {
+        super.setJpegThumbnailQuality(quality);
+        if (isCameraOpened()) {
+            requestConfigure();
+        }
+    }
+
     @Override
     void setAutoFocus(boolean autoFocus) {
         if (mAutoFocus == autoFocus) {
@@ -210,36 +402,180 @@ class Camera1 extends CameraViewImpl {
     }
 
     @Override
-    void takePicture() {
+    void takePicture(PictureFuture future) {
         if (!isCameraOpened()) {
             throw new IllegalStateException(
                     "Camera is not ready. Call start() before takePicture().");
         }
-        if (getAutoFocus()) {
-            mCamera.cancelAutoFocus();
-            mCamera.autoFocus(new Camera.AutoFocusCallback() {
-                @Override
-                public void onAutoFocus(boolean success, Camera camera) {
-                    takePictureInternal();
-                }
-            });
-        } else {
-            takePictureInternal();
+        if (mVideoRecorder != null && !mCameraParameters.isVideoSnapshotSupported()) {
+            throw new UnsupportedOperationException("This camera cannot take pictures while "
+                    + "recording.");
+        }
+        if (isPictureCaptureInProgress.getAndSet(true)) {
+            mPendingPictures.add(future);
+            return;
+        }
+        mPictureFuture = future;
+        try {
+            if (mVideoRecorder != null) {
+                takeVideoSnapshot();
+            } else if (getAutoFocus()) {
+                mCamera.cancelAutoFocus();
+                mCamera.autoFocus(new Camera.AutoFocusCallback() {
+                    @Override
+                    public void onAutoFocus(boolean success, Camera camera) {
+                        try {
+                            takePictureInternal();
+                        } catch (RuntimeException e) {
+                            final PictureFuture failed = mPictureFuture;
+                            resetPictureCapture();
+                            if (failed != null) {
+                                failed.setException(e);
+                            }
+                            takeNextPicture();
+                        }
+                    }
+                });
+            } else {
+                takePictureInternal();
+            }
+        } catch (RuntimeException e) {
+            // The caller fails the picture
+            resetPictureCapture();
+            throw e;
         }
     }
 
     void takePictureInternal() {
-        if (!isPictureCaptureInProgress.getAndSet(true)) {
+        if (mCamera == null) {
+            // Closed while focusing
+            return;
+        }
+        final int state = mCameraState;
+        setCameraState(CameraState.CAPTURING);
+        try {
             mCamera.takePicture(null, null, null, new Camera.PictureCallback() {
                 @Override
                 public void onPictureTaken(byte[] data, Camera camera) {
-                    isPictureCaptureInProgress.set(false);
-                    mCallback.onPictureTaken(data);
+                    deliverPicture(data);
                     camera.cancelAutoFocus();
                     camera.startPreview();
+                    if (mCameraState == CameraState.CAPTURING) {
+                        setCameraState(CameraState.STREAMING);
+                    }
+                    if (mConfigurePending) {
+                        mConfigurePending = false;
+                        requestConfigure();
+                    }
+                    takeNextPicture();
                 }
             });
+        } catch (RuntimeException e) {
+            setCameraState(state);
+            throw e;
+        }
+    }
+
+    /**
+     * Completes {@link #mPictureFuture} with the {@code data} taken with the current parameters.
+     */
+    private void deliverPicture(byte[] data) {
+        final PictureFuture future = mPictureFuture;
+        mPictureFuture = null;
+        isPictureCaptureInProgress.set(false);
+        final Camera.Size size = mCameraParameters.getPictureSize();
+        // Camera1 does not report the timestamp or the exposure of pictures
+        future.set(new PictureResult(data, new Size(size.width, size.height),
+                calcCameraRotation(mDisplayOrientation), 0, 0, 0));
+        mCallback.onPictureTaken(data);
+    }
+
+    /**
+     * Lets the pictures be taken again after {@link #mPictureFuture} could not be.
+     */
+    private void resetPictureCapture() {
+        mPictureFuture = null;
+        isPictureCaptureInProgress.set(false);
+    }
+
+    private void abortPictures() {
+        if (mPictureFuture != null) {
+            mPictureFuture.setException(newPictureAbortedException());
+            mPictureFuture = null;
+        }
+        for (PictureFuture future : mPendingPictures) {
+            future.setException(newPictureAbortedException());
+        }
+        mPendingPictures.clear();
+        isPictureCaptureInProgress.set(false);
+    }
+
+    private void takeNextPicture() {
+        while (!mPendingPictures.isEmpty() && !isPictureCaptureInProgress.get()) {
+            final PictureFuture future = mPendingPictures.remove(0);
+            try {
+                takePicture(future);
+            } catch (RuntimeException e) {
+                future.setException(e);
+            }
+        }
+    }
+
+    @Override
+    void startRecording(File file) {
+        if (!isCameraOpened()) {
+            throw new IllegalStateException(
+                    "Camera is not ready. Call start() before startRecording().");
+        }
+        if (mVideoRecorder != null) {
+            throw new IllegalStateException("Already recording.");
+        }
+        final VideoRecorder recorder = new VideoRecorder(file,
+                VideoRecorder.hasAudioPermission(mPreview.getView().getContext()));
+        mCamera.unlock();
+        final MediaRecorder mediaRecorder = recorder.getMediaRecorder();
+        mediaRecorder.setCamera(mCamera);
+        mediaRecorder.setVideoSource(MediaRecorder.VideoSource.CAMERA);
+        try {
+            recorder.prepare(VideoRecorder.getProfile(mCameraId), chooseVideoSize(),
+                    calcCameraRotation(mDisplayOrientation));
+            recorder.start();
+        } catch (IOException | RuntimeException e) {
+            recorder.stop();
+            mCamera.lock();
+            throw new RuntimeException("Failed to start recording to " + file, e);
+        }
+        mVideoRecorder = recorder;
+    }
+
+    @Override
+    boolean stopRecording() {
+        if (mVideoRecorder == null) {
+            return false;
         }
+        final boolean recorded = mVideoRecorder.stop();
+        mVideoRecorder = null;
+        mCamera.lock();
+        return recorded;
+    }
+
+    @Override
+    boolean isRecording() {
+        return mVideoRecorder != null;
+    }
+
+    /**
+     * Takes a picture while recording. The preview, and hence the recording, keeps running, and
+     * the focus is left to the continuous mode.
+     */
+    private void takeVideoSnapshot() {
+        mCamera.takePicture(null, null, null, new Camera.PictureCallback() {
+            @Override
+            public void onPictureTaken(byte[] data, Camera camera) {
+                deliverPicture(data);
+                takeNextPicture();
+            }
+        });
     }
 
     @Override
@@ -274,7 +610,14 @@ class Camera1 extends CameraViewImpl {
             releaseCamera();
         }
         mCamera = Camera.open(mCameraId);
+        setCameraState(CameraState.OPENED);
         mCameraParameters = mCamera.getParameters();
+        mDefaultJpegQuality = mCameraParameters.getJpegQuality();
+        final Camera.Size thumbnailSize = mCameraParameters.getJpegThumbnailSize();
+        mDefaultJpegThumbnailSize = thumbnailSize != null
+                ? new Size(thumbnailSize.width, thumbnailSize.height) : null;
+        mDefaultJpegThumbnailQuality = mCameraParameters.getJpegThumbnailQuality();
+        mCameraParameters.getPreviewFpsRange(mDefaultPreviewFpsRange);
         // Supported preview sizes
         mPreviewSizes.clear();
         for (Camera.Size size : mCameraParameters.getSupportedPreviewSizes()) {
@@ -285,6 +628,13 @@ class Camera1 extends CameraViewImpl {
         for (Camera.Size size : mCameraParameters.getSupportedPictureSizes()) {
             mPictureSizes.add(new Size(size.width, size.height));
         }
+        // Only keep the ratios that can be used for both preview and pictures
+        final SizeMap.Snapshot pictureSizes = mPictureSizes.snapshot();
+        for (AspectRatio ratio : mPreviewSizes.ratios()) {
+            if (pictureSizes.closest(ratio, mAspectRatioTolerance) == null) {
+                mPreviewSizes.remove(ratio);
+            }
+        }
         // AspectRatio
         if (mAspectRatio == null) {
             mAspectRatio = Constants.DEFAULT_ASPECT_RATIO;
@@ -294,28 +644,38 @@ class Camera1 extends CameraViewImpl {
         mCallback.onCameraOpened();
     }
 
-    private AspectRatio chooseAspectRatio() {
-        AspectRatio r = null;
-        for (AspectRatio ratio : mPreviewSizes.ratios()) {
-            r = ratio;
-            if (ratio.equals(Constants.DEFAULT_ASPECT_RATIO)) {
-                return ratio;
-            }
+    /**
+     * Applies the camera parameters once for the changes requested until it runs. This is
+     * deferred while a picture is being taken, when many devices reject new parameters.
+     */
+    private void requestConfigure() {
+        mCommands.enqueue(COMMAND_CONFIGURE, mConfigure);
+    }
+
+    private void configure() {
+        if (!isCameraOpened()) {
+            return;
+        }
+        if (mCameraState == CameraState.CAPTURING) {
+            // Stopping the preview would drop the picture
+            mConfigurePending = true;
+            return;
         }
-        return r;
+        if (mSurfacePending) {
+            mSurfacePending = false;
+            setUpPreview();
+        }
+        adjustCameraParameters();
     }
 
     void adjustCameraParameters() {
-        SortedSet<Size> sizes = mPreviewSizes.sizes(mAspectRatio);
-        if (sizes == null) { // Not supported
-            mAspectRatio = chooseAspectRatio();
-            sizes = mPreviewSizes.sizes(mAspectRatio);
-        }
-        Size size = chooseOptimalSize(sizes);
+        // Use the supported ratio closest to the requested one, even when it is out of tolerance
+        mAspectRatio = mPreviewSizes.snapshot().closest(mAspectRatio, Float.POSITIVE_INFINITY);
+        Size size = chooseOptimalSize(mPreviewSizes.snapshot());
 
         // Always re-apply camera parameters
         // Largest picture size in this ratio
-        final Size pictureSize = mPictureSizes.sizes(mAspectRatio).last();
+        final Size pictureSize = choosePictureSize();
         if (mShowingPreview) {
             mCamera.stopPreview();
         }
@@ -324,43 +684,121 @@ class Camera1 extends CameraViewImpl {
         mCameraParameters.setRotation(calcCameraRotation(mDisplayOrientation));
         setAutoFocusInternal(mAutoFocus);
         setFlashInternal(mFlash);
+        setFrameRateInternal(mFrameRateRange);
+        setJpegInternal();
         mCamera.setParameters(mCameraParameters);
         if (mShowingPreview) {
             mCamera.startPreview();
+            setCameraState(CameraState.STREAMING);
         }
     }
 
-    @SuppressWarnings("SuspiciousNameCombination")
-    private Size chooseOptimalSize(SortedSet<Size> sizes) {
+    private Size chooseOptimalSize(SizeMap.Snapshot sizes) {
+        if (mPreviewSizeSelector != null) {
+            return SizeSelectors.select(mPreviewSizeSelector,
+                    collectCandidates(sizes.sizes(mAspectRatio)), getDesiredSize());
+        }
         if (!mPreview.isReady()) { // Not yet laid out
-            return sizes.first(); // Return the smallest size
+            return sizes.smallest(mAspectRatio);
+        }
+        final Size desired = getDesiredSize();
+        // Pick the smallest of those big enough
+        final Size size = sizes.ceiling(mAspectRatio, desired.getWidth(), desired.getHeight());
+        if (size != null) {
+            return size;
+        }
+        // If no size is big enough, pick the largest one.
+        return sizes.largest(mAspectRatio);
+    }
+
+    /**
+     * @return The largest picture size in the current aspect ratio, unless
+     * {@link #mPictureSizeSelector} chooses otherwise.
+     */
+    private Size choosePictureSize() {
+        final SizeMap.Snapshot sizes = mPictureSizes.snapshot();
+        AspectRatio ratio = sizes.closest(mAspectRatio, mAspectRatioTolerance);
+        if (ratio == null) {
+            // The tolerance was lowered after the preview ratios were matched on opening
+            ratio = sizes.closest(mAspectRatio, Float.POSITIVE_INFINITY);
+        }
+        if (mPictureSizeSelector != null) {
+            return SizeSelectors.select(mPictureSizeSelector,
+                    collectCandidates(sizes.sizes(ratio)), getDesiredSize());
+        }
+        return sizes.largest(ratio);
+    }
+
+    /**
+     * @return The video size closest to the profile of the camera in the current aspect ratio.
+     * Cameras without separate video sizes record at the preview size.
+     */
+    private Size chooseVideoSize() {
+        final List<Camera.Size> videoSizes = mCameraParameters.getSupportedVideoSizes();
+        if (videoSizes == null) {
+            final Camera.Size size = mCameraParameters.getPreviewSize();
+            return new Size(size.width, size.height);
+        }
+        final SizeMap sizes = new SizeMap();
+        for (Camera.Size size : videoSizes) {
+            sizes.add(new Size(size.width, size.height));
+        }
+        final CamcorderProfile profile = VideoRecorder.getProfile(mCameraId);
+        final Size size = VideoRecorder.chooseSize(sizes.snapshot(), mAspectRatio,
+                profile.videoFrameWidth, profile.videoFrameHeight);
+        return size != null ? size : new Size(profile.videoFrameWidth, profile.videoFrameHeight);
+    }
+
+    /**
+     * @return The preview surface size in the orientation of the camera, or 0x0 if it is not
+     * laid out yet.
+     */
+    @SuppressWarnings("SuspiciousNameCombination")
+    private Size getDesiredSize() {
+        if (!mPreview.isReady()) {
+            return new Size(0, 0);
         }
-        int desiredWidth;
-        int desiredHeight;
         final int surfaceWidth = mPreview.getWidth();
         final int surfaceHeight = mPreview.getHeight();
         if (isLandscape(mDisplayOrientation)) {
-            desiredWidth = surfaceHeight;
-            desiredHeight = surfaceWidth;
+            return new Size(surfaceHeight, surfaceWidth);
         } else {
-            desiredWidth = surfaceWidth;
-            desiredHeight = surfaceHeight;
+            return new Size(surfaceWidth, surfaceHeight);
         }
-        Size result = null;
-        for (Size size : sizes) { // Iterate from small to large
-            if (desiredWidth <= size.getWidth() && desiredHeight <= size.getHeight()) {
-                return size;
+    }
 
+    /**
+     * Pairs the {@code sizes} with the highest preview frame rate of the camera; Camera1 does not
+     * tell the frame rate of each size.
+     */
+    private List<SizeSelector.Candidate> collectCandidates(List<Size> sizes) {
+        int maxFrameRate = 0;
+        final List<int[]> ranges = mCameraParameters.getSupportedPreviewFpsRange();
+        if (ranges != null) {
+            for (int[] range : ranges) {
+                maxFrameRate = Math.max(maxFrameRate,
+                        range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000);
             }
-            result = size;
         }
-        return result;
+        if (maxFrameRate == 0) {
+            maxFrameRate = DEFAULT_FRAME_RATE;
+        }
+        final List<SizeSelector.Candidate> candidates = new ArrayList<>(sizes.size());
+        for (Size size : sizes) {
+            candidates.add(new SizeSelector.Candidate(size, maxFrameRate));
+        }
+        return candidates;
     }
 
     private void releaseCamera() {
         if (mCamera != null) {
             mCamera.release();
             mCamera = null;
+            if (mCameraState != CameraState.CLOSING) {
+                // Released to open another camera
+                setCameraState(CameraState.CLOSING);
+            }
+            setCameraState(CameraState.CLOSED);
             mCallback.onCameraClosed();
         }
     }
@@ -437,6 +875,30 @@ class Camera1 extends CameraViewImpl {
         }
     }
 
+    /**
+     * Puts the JPEG settings in {@link #mCameraParameters}; they are applied with the others.
+     */
+    private void setJpegInternal() {
+        mCameraParameters.setJpegQuality(mJpegQuality != 0 ? mJpegQuality : mDefaultJpegQuality);
+        mCameraParameters.setJpegThumbnailQuality(mJpegThumbnailQuality != 0
+                ? mJpegThumbnailQuality : mDefaultJpegThumbnailQuality);
+        Size thumbnailSize = mDefaultJpegThumbnailSize;
+        if (mJpegThumbnailSize != null) {
+            final List<Size> supported = new ArrayList<>();
+            final List<Camera.Size> sizes = mCameraParameters.getSupportedJpegThumbnailSizes();
+            if (sizes != null) {
+                for (Camera.Size size : sizes) {
+                    supported.add(new Size(size.width, size.height));
+                }
+            }
+            thumbnailSize = chooseThumbnailSize(mJpegThumbnailSize, supported);
+        }
+        if (thumbnailSize != null) {
+            mCameraParameters.setJpegThumbnailSize(thumbnailSize.getWidth(),
+                    thumbnailSize.getHeight());
+        }
+    }
+
     /**
      * @return {@code true} if {@link #mCameraParameters} was modified.
      */
@@ -462,4 +924,49 @@ class Camera1 extends CameraViewImpl {
         }
     }
 
+    /**
+     * Applies the supported preview fps range closest to {@code range}, or the default one if it
+     * is {@code null}.
+     *
+     * @return {@code true} if {@link #mCameraParameters} was modified.
+     */
+    private boolean setFrameRateInternal(FrameRateRange range) {
+        mFrameRateRange = range;
+        if (!isCameraOpened()) {
+            return false;
+        }
+        if (range == null) {
+            // Go back to the range the camera opened with
+            if (mDefaultPreviewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] <= 0) {
+                return false;
+            }
+            mCameraParameters.setPreviewFpsRange(
+                    mDefaultPreviewFpsRange[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                    mDefaultPreviewFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+            return true;
+        }
+        final List<int[]> ranges = mCameraParameters.getSupportedPreviewFpsRange();
+        if (ranges == null || ranges.isEmpty()) {
+            return false;
+        }
+        final List<FrameRateRange> supported = new ArrayList<>(ranges.size());
+        for (int[] r : ranges) {
+            supported.add(toFrameRateRange(r));
+        }
+        final int[] chosen = ranges.get(
+                supported.indexOf(FrameRateRange.closest(range, supported)));
+        mCameraParameters.setPreviewFpsRange(chosen[Camera.Parameters.PREVIEW_FPS_MIN_INDEX],
+                chosen[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]);
+        return true;
+    }
+
+    /**
+     * Converts a range from {@link Camera.Parameters}, which is scaled by 1000.
+     */
+    private static FrameRateRange toFrameRateRange(int[] range) {
+        return new FrameRateRange(
+                Math.max(1, range[Camera.Parameters.PREVIEW_FPS_MIN_INDEX] / 1000),
+                Math.max(1, range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX] / 1000));
+    }
+
 }
@@ -20,6 +20,7 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Matrix;
 import android.graphics.SurfaceTexture;
+import android.support.annotation.VisibleForTesting;
 import android.view.Surface;
 import android.view.TextureView;
 import android.view.View;
@@ -32,6 +33,14 @@ class TextureViewPreview extends PreviewImpl {
 
     private int mDisplayOrientation;
 
+    /** The surface of {@link #mSurfaceTexture}; created once per texture and released with it. */
+    private Surface mSurface;
+
+    private SurfaceTexture mSurfaceTexture;
+
+    /** The number of surfaces created so far. */
+    private int mCreatedSurfaceCount;
+
     TextureViewPreview(Context context, ViewGroup parent) {
         final View view = View.inflate(context, R.layout.texture_view, parent);
         mTextureView = view.findViewById(R.id.texture_view);
@@ -54,15 +63,22 @@ class TextureViewPreview extends PreviewImpl {
             @Override
             public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
                 setSize(0, 0);
+                releaseSurface();
                 return true;
             }
 
             @Override
             public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+                dispatchFrameDisplayed(surface.getTimestamp());
             }
         });
     }
 
+    @Override
+    boolean reportsFrames() {
+        return true;
+    }
+
     // This method is called only from Camera2.
     @TargetApi(15)
     @Override
@@ -72,7 +88,27 @@ class TextureViewPreview extends PreviewImpl {
 
     @Override
     Surface getSurface() {
-        return new Surface(mTextureView.getSurfaceTexture());
+        final SurfaceTexture texture = mTextureView.getSurfaceTexture();
+        if (mSurface == null || mSurfaceTexture != texture) {
+            releaseSurface();
+            mSurface = new Surface(texture);
+            mSurfaceTexture = texture;
+            mCreatedSurfaceCount++;
+        }
+        return mSurface;
+    }
+
+    private void releaseSurface() {
+        if (mSurface != null) {
+            mSurface.release();
+            mSurface = null;
+            mSurfaceTexture = null;
+        }
+    }
+
+    @VisibleForTesting
+    int getCreatedSurfaceCount() {
+        return mCreatedSurfaceCount;
     }
 
     @Override
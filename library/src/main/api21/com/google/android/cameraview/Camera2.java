@@ -24,21 +24,31 @@ import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.CamcorderProfile;
 import android.media.Image;
 import android.media.ImageReader;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.support.annotation.NonNull;
 import android.util.Log;
+import android.util.Range;
 import android.util.SparseIntArray;
 import android.view.Surface;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("MissingPermission")
 @TargetApi(21)
@@ -63,60 +73,77 @@ class Camera2 extends CameraViewImpl {
      */
     private static final int MAX_PREVIEW_HEIGHT = 1080;
 
-    private final CameraManager mCameraManager;
+    /** The frame rate assumed when the camera does not report any. */
+    private static final int DEFAULT_FRAME_RATE = 30;
 
-    private final CameraDevice.StateCallback mCameraDeviceCallback
-            = new CameraDevice.StateCallback() {
+    /** Whether any camera is above the LEGACY level; {@code null} until it is known. */
+    private static Boolean sUsable;
 
-        @Override
-        public void onOpened(@NonNull CameraDevice camera) {
-            mCamera = camera;
-            mCallback.onCameraOpened();
-            startCaptureSession();
-        }
+    /** The image readers opened by any instance that are not closed yet; for soak tests. */
+    private static final AtomicInteger sOpenImageReaders = new AtomicInteger();
 
-        @Override
-        public void onClosed(@NonNull CameraDevice camera) {
-            mCallback.onCameraClosed();
-        }
+    /** The tag of the repeating preview request, so that its frames are told from triggers. */
+    private static final Object PREVIEW_TAG = new Object();
+
+    /** The thread the still images are copied out of their readers on, shared by instances. */
+    private static Handler sImageHandler;
+
+    private final CameraManager mCameraManager;
 
+    /** The callback of the latest camera device to open; the others are closed as they open. */
+    private DeviceCallback mDeviceCallback;
+
+    private final Runnable mReopen = new Runnable() {
         @Override
-        public void onDisconnected(@NonNull CameraDevice camera) {
-            mCamera = null;
+        public void run() {
+            if (isCameraOpened() || mCameraState == CameraState.OPENING) {
+                stop();
+                start();
+            }
         }
+    };
 
+    private final Runnable mConfigureSession = new Runnable() {
         @Override
-        public void onError(@NonNull CameraDevice camera, int error) {
-            Log.e(TAG, "onError: " + camera.getId() + " (" + error + ")");
-            mCamera = null;
+        public void run() {
+            configureSession();
         }
-
     };
 
+    /** Whether to configure the session again once it is done configuring or capturing. */
+    private boolean mSessionPending;
+
+    /** Whether {@link #mImageReader} is to be recreated on the next configuration. */
+    private boolean mImageReaderPending;
+
     private final CameraCaptureSession.StateCallback mSessionCallback
             = new CameraCaptureSession.StateCallback() {
 
         @Override
         public void onConfigured(@NonNull CameraCaptureSession session) {
-            if (mCamera == null) {
+            if (!onSessionConfigured(session)) {
                 return;
             }
-            mCaptureSession = session;
             updateAutoFocus();
             updateFlash();
+            updateFrameRate();
             try {
-                mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
-                        mCaptureCallback, null);
+                if (mVideoRecorder != null) {
+                    mVideoRecorder.start();
+                }
+                setRepeatingPreviewRequest();
             } catch (CameraAccessException e) {
                 Log.e(TAG, "Failed to start camera preview because it couldn't access camera", e);
             } catch (IllegalStateException e) {
                 Log.e(TAG, "Failed to start camera preview.", e);
             }
+            mStillCapture.takePendingPictures();
         }
 
         @Override
         public void onConfigureFailed(@NonNull CameraCaptureSession session) {
             Log.e(TAG, "Failed to configure capture session.");
+            onSessionConfigureFailed(session);
         }
 
         @Override
@@ -128,51 +155,198 @@ class Camera2 extends CameraViewImpl {
 
     };
 
-    PictureCaptureCallback mCaptureCallback = new PictureCaptureCallback() {
+    final StillCapture mStillCapture = new StillCapture(new StillCapture.Session() {
 
         @Override
-        public void onPrecaptureRequired() {
-            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
-                    CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
-            setState(STATE_PRECAPTURE);
-            try {
-                mCaptureSession.capture(mPreviewRequestBuilder.build(), this, null);
-                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
-                        CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
-            } catch (CameraAccessException e) {
-                Log.e(TAG, "Failed to run precapture sequence.", e);
+        public boolean isStreaming() {
+            return mCameraState == CameraState.STREAMING;
+        }
+
+        @Override
+        public boolean isRecording() {
+            return mVideoRecorder != null;
+        }
+
+        @Override
+        public boolean isAutoFocus() {
+            return mAutoFocus;
+        }
+
+        @Override
+        public int getOutputOrientation() {
+            return calcOutputOrientation();
+        }
+
+        @Override
+        public void startCapture() {
+            setCameraState(CameraState.CAPTURING);
+        }
+
+        @Override
+        public void lockFocus() throws CameraAccessException {
+            Camera2.this.lockFocus();
+        }
+
+        @Override
+        public void startPrecapture() throws CameraAccessException {
+            Camera2.this.startPrecapture();
+        }
+
+        @Override
+        public void captureBurst(List<StillCapture.Picture> pictures)
+                throws CameraAccessException {
+            captureStillPicture(pictures);
+        }
+
+        @Override
+        public void captureVideoSnapshot(StillCapture.Picture picture)
+                throws CameraAccessException {
+            Camera2.this.captureVideoSnapshot(picture);
+        }
+
+        @Override
+        public void finishCapture() {
+            unlockFocus();
+        }
+
+    }, new StillCapture.Callback() {
+
+        @Override
+        public void onPictureTaken(byte[] data) {
+            mCallback.onPictureTaken(data);
+        }
+
+    });
+
+    CameraCaptureSession.CaptureCallback mCaptureCallback
+            = new CameraCaptureSession.CaptureCallback() {
+
+        @Override
+        public void onCaptureProgressed(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, @NonNull CaptureResult partialResult) {
+            onStillCaptureResult(partialResult);
+        }
+
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, long timestamp, long frameNumber) {
+            if (isPreviewFrame(request)) {
+                mPreview.onCameraFrame(timestamp);
+            }
+            if (request.getTag() instanceof StillCapture.Picture) {
+                // A video snapshot
+                mStillCapture.onCaptureStarted((StillCapture.Picture) request.getTag(),
+                        timestamp);
             }
         }
 
         @Override
-        public void onReady() {
-            captureStillPicture();
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            onStillCaptureResult(result);
+            if (request.getTag() instanceof StillCapture.Picture) {
+                onPictureCompleted((StillCapture.Picture) request.getTag(), result);
+                return;
+            }
+            Range<Integer> range = result.get(CaptureResult.CONTROL_AE_TARGET_FPS_RANGE);
+            if (range == null) {
+                mAppliedFrameRateRange = null;
+            } else if (mAppliedFrameRateRange == null ||
+                    mAppliedFrameRateRange.getMin() != range.getLower() ||
+                    mAppliedFrameRateRange.getMax() != range.getUpper()) {
+                mAppliedFrameRateRange = new FrameRateRange(range.getLower(), range.getUpper());
+            }
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+            if (request.getTag() instanceof StillCapture.Picture) {
+                mStillCapture.onCaptureFailed((StillCapture.Picture) request.getTag(),
+                        failure.getReason(), failure.wasImageCaptured());
+            }
         }
 
     };
 
+    /**
+     * Copies the still images on {@link #getImageHandler()}, so that a large JPEG or the NV21
+     * conversion of a YUV image does not hold up the main thread, and hands the copies over to
+     * it.
+     */
     private final ImageReader.OnImageAvailableListener mOnImageAvailableListener
             = new ImageReader.OnImageAvailableListener() {
 
         @Override
-        public void onImageAvailable(ImageReader reader) {
-            try (Image image = reader.acquireNextImage()) {
-                Image.Plane[] planes = image.getPlanes();
-                if (planes.length > 0) {
-                    ByteBuffer buffer = planes[0].getBuffer();
-                    byte[] data = new byte[buffer.remaining()];
-                    buffer.get(data);
-                    mCallback.onPictureTaken(data);
+        public void onImageAvailable(final ImageReader reader) {
+            final long timestamp;
+            final Size size;
+            final int format;
+            final byte[] data;
+            // The reader may be closed on the main thread meanwhile, freeing the image
+            synchronized (reader) {
+                final Image image;
+                try {
+                    image = reader.acquireNextImage();
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "Failed to acquire a picture.", e);
+                    return;
+                }
+                if (image == null) {
+                    return;
+                }
+                try {
+                    timestamp = image.getTimestamp();
+                    size = new Size(image.getWidth(), image.getHeight());
+                    format = image.getFormat();
+                    if (format == ImageFormat.YUV_420_888) {
+                        data = YuvJpegEncoder.toNv21(image);
+                    } else {
+                        final ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                        data = new byte[buffer.remaining()];
+                        buffer.get(data);
+                    }
+                } finally {
+                    image.close();
                 }
             }
+            mCommands.enqueue(CommandQueue.NO_KEY, new Runnable() {
+                @Override
+                public void run() {
+                    if (reader != mImageReader) {
+                        // Closed along with the pictures it was taking
+                        return;
+                    }
+                    if (format == ImageFormat.YUV_420_888) {
+                        mJpegEncoder.encode(timestamp, data, size, mJpegQuality);
+                    } else {
+                        mStillCapture.onImage(timestamp, data, size);
+                    }
+                }
+            });
         }
 
     };
 
+    private final YuvJpegEncoder mJpegEncoder = new YuvJpegEncoder(mCommands,
+            new YuvJpegEncoder.Callback() {
+
+                @Override
+                public void onJpegEncoded(long timestamp, byte[] data, Size size) {
+                    mStillCapture.onImage(timestamp, data, size);
+                }
+
+                @Override
+                public void onJpegFailed(long timestamp, Exception e) {
+                    Log.e(TAG, "Failed to encode a picture.", e);
+                    mStillCapture.onImageFailed(timestamp, e);
+                }
+
+            });
 
     private String mCameraId;
 
-    private CameraCharacteristics mCameraCharacteristics;
+    CameraCharacteristics mCameraCharacteristics;
 
     CameraDevice mCamera;
 
@@ -180,12 +354,44 @@ class Camera2 extends CameraViewImpl {
 
     CaptureRequest.Builder mPreviewRequestBuilder;
 
+    /** The preview surface of the current session. */
+    private Surface mPreviewSurface;
+
     private ImageReader mImageReader;
 
     private final SizeMap mPreviewSizes = new SizeMap();
 
     private final SizeMap mPictureSizes = new SizeMap();
 
+    private final SizeMap mVideoSizes = new SizeMap();
+
+    /** The sizes of {@link ImageFormat#YUV_420_888} stills, for {@link #mYuvCaptureEnabled}. */
+    private final SizeMap mYuvSizes = new SizeMap();
+
+    /** The sizes of RAW pictures; empty if the camera cannot capture RAW. */
+    private final SizeMap mRawSizes = new SizeMap();
+
+    /** The RAW output while {@link #mRawEnabled}. */
+    private RawCapture mRawCapture;
+
+    /** Whether the RAW output is configured in the current session. */
+    private boolean mRawInSession;
+
+    /** The recorder while recording. */
+    VideoRecorder mVideoRecorder;
+
+    /** Whether {@link #mVideoRecorder} reads from a surface reserved in the session. */
+    boolean mRecordingOnReservedSurface;
+
+    /** The video size of {@link #mVideoRecorder}. */
+    private Size mVideoSize;
+
+    /**
+     * The largest still size next to the recorder surface in the session, or {@code null} if
+     * there is none. LIMITED devices only guarantee a JPEG output up to the RECORD size there.
+     */
+    private Size mStillSizeLimit;
+
     private int mFacing;
 
     private AspectRatio mAspectRatio = Constants.DEFAULT_ASPECT_RATIO;
@@ -196,13 +402,78 @@ class Camera2 extends CameraViewImpl {
 
     private int mDisplayOrientation;
 
+    /** The range reported by the latest preview frame. */
+    private FrameRateRange mAppliedFrameRateRange;
+
+    /**
+     * Tells whether this implementation can be used on the device, that is, whether any camera is
+     * above the LEGACY hardware level. The result is cached for the process, as it does not
+     * change, so that the implementation can be chosen before the preview is created.
+     *
+     * @return {@code false} if all the cameras are LEGACY; {@code true} if any is not, or if it
+     * cannot be told, in which case {@link #start()} decides.
+     */
+    static boolean isUsable(Context context) {
+        if (sUsable == null) {
+            final CameraManager manager =
+                    (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+            try {
+                boolean usable = false;
+                for (String id : manager.getCameraIdList()) {
+                    Integer level = manager.getCameraCharacteristics(id).get(
+                            CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+                    if (level != null &&
+                            level != CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
+                        usable = true;
+                        break;
+                    }
+                }
+                sUsable = usable;
+            } catch (CameraAccessException e) {
+                Log.w(TAG, "Failed to get the hardware levels of cameras.", e);
+                return true;
+            }
+        }
+        return sUsable;
+    }
+
+    static ImageReader openImageReader(Size size, int format, int maxImages) {
+        final ImageReader reader = ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                format, maxImages);
+        sOpenImageReaders.incrementAndGet();
+        return reader;
+    }
+
+    static void closeImageReader(ImageReader reader) {
+        synchronized (reader) {
+            reader.close();
+        }
+        sOpenImageReaders.decrementAndGet();
+    }
+
+    private static synchronized Handler getImageHandler() {
+        if (sImageHandler == null) {
+            final HandlerThread thread = new HandlerThread("CameraView-Images");
+            thread.start();
+            sImageHandler = new Handler(thread.getLooper());
+        }
+        return sImageHandler;
+    }
+
+    /**
+     * @return The number of image readers that are open across all the instances.
+     */
+    static int getOpenImageReaderCount() {
+        return sOpenImageReaders.get();
+    }
+
     Camera2(Callback callback, PreviewImpl preview, Context context) {
         super(callback, preview);
         mCameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
         mPreview.setCallback(new PreviewImpl.Callback() {
             @Override
             public void onSurfaceChanged() {
-                startCaptureSession();
+                restartCaptureSession();
             }
         });
     }
@@ -220,18 +491,90 @@ class Camera2 extends CameraViewImpl {
 
     @Override
     void stop() {
+        stopRecording();
+        mCommands.cancel(COMMAND_REOPEN);
+        mCommands.cancel(COMMAND_CONFIGURE);
+        mSessionPending = false;
+        mStillCapture.abort();
+        mJpegEncoder.reset();
         if (mCaptureSession != null) {
             mCaptureSession.close();
             mCaptureSession = null;
         }
         if (mCamera != null) {
+            setCameraState(CameraState.CLOSING);
             mCamera.close();
             mCamera = null;
+        } else if (mCameraState == CameraState.OPENING) {
+            // The device is closed as soon as it opens
+            setCameraState(CameraState.CLOSING);
         }
         if (mImageReader != null) {
-            mImageReader.close();
+            closeImageReader(mImageReader);
             mImageReader = null;
         }
+        if (mRawCapture != null) {
+            mRawCapture.close();
+            mRawCapture = null;
+        }
+        mAppliedFrameRateRange = null;
+        mPreviewPaused = false;
+    }
+
+    @Override
+    void pausePreview() {
+        if (mPreviewPaused) {
+            return;
+        }
+        if (mVideoRecorder != null) {
+            throw new IllegalStateException("Cannot pause the preview while recording.");
+        }
+        mPreviewPaused = true;
+        if (mCaptureSession != null) {
+            try {
+                mCaptureSession.stopRepeating();
+            } catch (CameraAccessException e) {
+                Log.e(TAG, "Failed to pause the preview.", e);
+            }
+        }
+    }
+
+    @Override
+    void resumePreview() {
+        if (!mPreviewPaused) {
+            return;
+        }
+        mPreviewPaused = false;
+        if (mCaptureSession != null) {
+            try {
+                setRepeatingPreviewRequest();
+            } catch (CameraAccessException e) {
+                Log.e(TAG, "Failed to resume the preview.", e);
+            }
+        }
+    }
+
+    @Override
+    boolean detachPreview() {
+        if (mCamera == null) {
+            return false;
+        }
+        // The recorder, if any, is added back to the next session
+        mCommands.cancel(COMMAND_CONFIGURE);
+        mSessionPending = false;
+        if (mCaptureSession != null) {
+            mCaptureSession.close();
+            mCaptureSession = null;
+        }
+        setCameraState(CameraState.OPENED);
+        return true;
+    }
+
+    @Override
+    void attachPreview(Callback callback, PreviewImpl preview) {
+        super.attachPreview(callback, preview);
+        // Otherwise, the session starts when the surface is ready
+        restartCaptureSession();
     }
 
     @Override
@@ -245,9 +588,8 @@ class Camera2 extends CameraViewImpl {
             return;
         }
         mFacing = facing;
-        if (isCameraOpened()) {
-            stop();
-            start();
+        if (isCameraOpened() || mCameraState == CameraState.OPENING) {
+            mCommands.enqueue(COMMAND_REOPEN, mReopen);
         }
     }
 
@@ -263,18 +605,18 @@ class Camera2 extends CameraViewImpl {
 
     @Override
     boolean setAspectRatio(AspectRatio ratio) {
-        if (ratio == null || ratio.equals(mAspectRatio) ||
-                !mPreviewSizes.ratios().contains(ratio)) {
-            // TODO: Better error handling
+        if (ratio == null || ratio.equals(mAspectRatio)) {
             return false;
         }
-        mAspectRatio = ratio;
-        prepareImageReader();
-        if (mCaptureSession != null) {
-            mCaptureSession.close();
-            mCaptureSession = null;
-            startCaptureSession();
+        final AspectRatio supported = mPreviewSizes.snapshot()
+                .closest(ratio, mAspectRatioTolerance);
+        if (supported == null || supported.equals(mAspectRatio)) {
+            // TODO: Better error handling
+            return false;
         }
+        mAspectRatio = supported;
+        mImageReaderPending = true;
+        restartCaptureSession();
         return true;
     }
 
@@ -283,6 +625,45 @@ class Camera2 extends CameraViewImpl {
         return mAspectRatio;
     }
 
+    @Override
+    void setPreviewSizeSelector(SizeSelector selector) {
+        super.setPreviewSizeSelector(selector);
+        restartCaptureSession();
+    }
+
+    @Override
+    void setPictureSizeSelector(SizeSelector selector) {
+        super.setPictureSizeSelector(selector);
+        if (mImageReader != null) {
+            mImageReaderPending = true;
+            restartCaptureSession();
+        }
+    }
+
+    @Override
+    void setFrameRateRange(FrameRateRange range) {
+        super.setFrameRateRange(range);
+        if (mCaptureSession == null) {
+            return;
+        }
+        if (range == null) {
+            // The template default has been overwritten; start over with a new request.
+            restartCaptureSession();
+            return;
+        }
+        updateFrameRate();
+        try {
+            setRepeatingPreviewRequest();
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Failed to update the frame rate.", e);
+        }
+    }
+
+    @Override
+    FrameRateRange getAppliedFrameRateRange() {
+        return mAppliedFrameRateRange;
+    }
+
     @Override
     void setAutoFocus(boolean autoFocus) {
         if (mAutoFocus == autoFocus) {
@@ -293,8 +674,7 @@ class Camera2 extends CameraViewImpl {
             updateAutoFocus();
             if (mCaptureSession != null) {
                 try {
-                    mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
-                            mCaptureCallback, null);
+                    setRepeatingPreviewRequest();
                 } catch (CameraAccessException e) {
                     mAutoFocus = !mAutoFocus; // Revert
                 }
@@ -318,8 +698,7 @@ class Camera2 extends CameraViewImpl {
             updateFlash();
             if (mCaptureSession != null) {
                 try {
-                    mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(),
-                            mCaptureCallback, null);
+                    setRepeatingPreviewRequest();
                 } catch (CameraAccessException e) {
                     mFlash = saved; // Revert
                 }
@@ -333,12 +712,171 @@ class Camera2 extends CameraViewImpl {
     }
 
     @Override
-    void takePicture() {
-        if (mAutoFocus) {
-            lockFocus();
-        } else {
-            captureStillPicture();
+    void takePicture(PictureFuture future) {
+        if (mCameraState == CameraState.CLOSED || mCameraState == CameraState.CLOSING) {
+            throw new IllegalStateException(
+                    "Camera is not ready. Call start() before takePicture().");
+        }
+        mStillCapture.takePicture(future);
+    }
+
+    @Override
+    void setYuvCaptureEnabled(boolean enabled) {
+        if (mYuvCaptureEnabled == enabled) {
+            return;
+        }
+        super.setYuvCaptureEnabled(enabled);
+        if (mImageReader != null) {
+            mImageReaderPending = true;
+            restartCaptureSession();
+        }
+    }
+
+    @Override
+    boolean isRawSupported() {
+        return !mRawSizes.isEmpty();
+    }
+
+    @Override
+    void setRawEnabled(boolean enabled) {
+        if (mRawEnabled == enabled) {
+            return;
+        }
+        super.setRawEnabled(enabled);
+        if (mImageReader != null) {
+            mImageReaderPending = true;
+            restartCaptureSession();
+        }
+    }
+
+    @Override
+    void takeRawPicture(OutputStream output, PictureFuture future) {
+        if (!isRawSupported()) {
+            throw new UnsupportedOperationException("RAW capture is not supported.");
+        }
+        if (!mRawEnabled) {
+            throw new IllegalStateException(
+                    "RAW capture is not enabled. Call setRawCaptureEnabled(true) first.");
+        }
+        if (mVideoRecorder != null) {
+            throw new IllegalStateException("RAW pictures cannot be taken while recording.");
+        }
+        if (mCameraState != CameraState.STREAMING || !mRawInSession) {
+            throw new IllegalStateException("Camera is not ready to take a RAW picture.");
+        }
+        final Object tag = mRawCapture.newRequest(output, future, calcOutputOrientation());
+        try {
+            final CaptureRequest.Builder builder = mCamera.createCaptureRequest(
+                    CameraDevice.TEMPLATE_STILL_CAPTURE);
+            builder.addTarget(mRawCapture.getSurface());
+            builder.set(CaptureRequest.CONTROL_AF_MODE,
+                    mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE));
+            builder.set(CaptureRequest.CONTROL_AE_MODE,
+                    mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AE_MODE));
+            builder.set(CaptureRequest.FLASH_MODE,
+                    mPreviewRequestBuilder.get(CaptureRequest.FLASH_MODE));
+            if (mFrameRateRange != null) {
+                builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                        mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE));
+            }
+            builder.setTag(tag);
+            mCaptureSession.capture(builder.build(), mRawCapture.getCaptureCallback(), null);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Cannot capture a RAW picture.", e);
+            mRawCapture.cancelRequest(tag);
+            future.setException(e);
+        }
+    }
+
+    @Override
+    void startRecording(File file) {
+        if (mCaptureSession == null) {
+            throw new IllegalStateException(
+                    "Camera is not ready. Call start() before startRecording().");
+        }
+        if (mVideoRecorder != null) {
+            throw new IllegalStateException("Already recording.");
+        }
+        final Size size = chooseVideoSize();
+        final VideoRecorder recorder = new VideoRecorder(file,
+                VideoRecorder.hasAudioPermission(mPreview.getView().getContext()));
+        recorder.getMediaRecorder().setVideoSource(MediaRecorder.VideoSource.SURFACE);
+        final boolean reserved = useReservedRecorderSurface(recorder.getMediaRecorder(), size);
+        try {
+            recorder.prepare(getCamcorderProfile(), size, calcOutputOrientation());
+        } catch (IOException | RuntimeException e) {
+            recorder.stop();
+            throw new RuntimeException("Failed to prepare recording to " + file, e);
+        }
+        mVideoRecorder = recorder;
+        mVideoSize = size;
+        mRecordingOnReservedSurface = reserved;
+        if (!reserved) {
+            // The recorder surface is new to the camera; the recorder starts once it is configured
+            restartCaptureSession();
+            return;
         }
+        try {
+            createPreviewRequestBuilder();
+            updateAutoFocus();
+            updateFlash();
+            updateFrameRate();
+            recorder.start();
+            setRepeatingPreviewRequest();
+        } catch (CameraAccessException | RuntimeException e) {
+            mVideoRecorder = null;
+            recorder.stop();
+            throw new RuntimeException("Failed to start recording to " + file, e);
+        }
+    }
+
+    @Override
+    boolean stopRecording() {
+        if (mVideoRecorder == null) {
+            return false;
+        }
+        final VideoRecorder recorder = mVideoRecorder;
+        mVideoRecorder = null;
+        // Stop feeding the encoder before stopping it
+        if (mCaptureSession != null) {
+            try {
+                if (mRecordingOnReservedSurface) {
+                    createPreviewRequestBuilder();
+                    updateAutoFocus();
+                    updateFlash();
+                    updateFrameRate();
+                    setRepeatingPreviewRequest();
+                } else {
+                    mCaptureSession.stopRepeating();
+                }
+            } catch (CameraAccessException e) {
+                Log.e(TAG, "Failed to stop feeding the recorder.", e);
+            }
+        }
+        final boolean recorded = recorder.stop();
+        if (!mRecordingOnReservedSurface) {
+            // The session still has the surface of the released recorder
+            restartCaptureSession();
+        }
+        mRecordingOnReservedSurface = false;
+        return recorded;
+    }
+
+    @Override
+    boolean isRecording() {
+        return mVideoRecorder != null;
+    }
+
+    @Override
+    void setRecordingSurfaceReserved(boolean reserved) {
+        if (mRecordingSurfaceReserved == reserved) {
+            return;
+        }
+        if (mVideoRecorder != null) {
+            throw new IllegalStateException("Cannot change the reservation while recording.");
+        }
+        super.setRecordingSurfaceReserved(reserved);
+        restartCaptureSession();
     }
 
     @Override
@@ -426,15 +964,32 @@ class Camera2 extends CameraViewImpl {
         }
         mPictureSizes.clear();
         collectPictureSizes(mPictureSizes, map);
+        mVideoSizes.clear();
+        for (android.util.Size size : map.getOutputSizes(MediaRecorder.class)) {
+            mVideoSizes.add(new Size(size.getWidth(), size.getHeight()));
+        }
+        mYuvSizes.clear();
+        for (android.util.Size size : map.getOutputSizes(ImageFormat.YUV_420_888)) {
+            mYuvSizes.add(new Size(size.getWidth(), size.getHeight()));
+        }
+        mRawSizes.clear();
+        if (RawCapture.isSupported(mCameraCharacteristics)) {
+            final android.util.Size[] sizes = map.getOutputSizes(ImageFormat.RAW_SENSOR);
+            if (sizes != null) {
+                for (android.util.Size size : sizes) {
+                    mRawSizes.add(new Size(size.getWidth(), size.getHeight()));
+                }
+            }
+        }
+        final SizeMap.Snapshot pictureSizes = mPictureSizes.snapshot();
         for (AspectRatio ratio : mPreviewSizes.ratios()) {
-            if (!mPictureSizes.ratios().contains(ratio)) {
+            if (pictureSizes.closest(ratio, mAspectRatioTolerance) == null) {
                 mPreviewSizes.remove(ratio);
             }
         }
 
-        if (!mPreviewSizes.ratios().contains(mAspectRatio)) {
-            mAspectRatio = mPreviewSizes.ratios().iterator().next();
-        }
+        // Use the supported ratio closest to the requested one, even when it is out of tolerance
+        mAspectRatio = mPreviewSizes.snapshot().closest(mAspectRatio, Float.POSITIVE_INFINITY);
     }
 
     protected void collectPictureSizes(SizeMap sizes, StreamConfigurationMap map) {
@@ -444,29 +999,76 @@ class Camera2 extends CameraViewImpl {
     }
 
     private void prepareImageReader() {
+        mImageReaderPending = false;
+        openStillReader();
+        if (mRawCapture != null) {
+            mRawCapture.close();
+            mRawCapture = null;
+        }
+        if (mRawEnabled && !mRawSizes.isEmpty()) {
+            // The largest RAW size in the ratio closest to the preview, usually the full sensor
+            final SizeMap.Snapshot rawSizes = mRawSizes.snapshot();
+            final Size rawSize = rawSizes.largest(
+                    rawSizes.closest(mAspectRatio, Float.POSITIVE_INFINITY));
+            mRawCapture = new RawCapture(mCameraCharacteristics, rawSize, mCommands);
+        }
+    }
+
+    /**
+     * Opens {@link #mImageReader} for the stills, within {@link #mStillSizeLimit} if any.
+     */
+    private void openStillReader() {
         if (mImageReader != null) {
-            mImageReader.close();
+            closeImageReader(mImageReader);
+        }
+        // YUV stills are encoded to JPEG by YuvJpegEncoder rather than the camera
+        final boolean yuv = mYuvCaptureEnabled && !mYuvSizes.isEmpty();
+        final int format = yuv ? ImageFormat.YUV_420_888 : ImageFormat.JPEG;
+        final SizeMap.Snapshot pictureSizes = (yuv ? mYuvSizes : mPictureSizes).snapshot();
+        // The preview ratios are only matched against the JPEG sizes
+        AspectRatio ratio = pictureSizes.closest(mAspectRatio,
+                yuv ? Float.POSITIVE_INFINITY : mAspectRatioTolerance);
+        if (ratio == null) {
+            // The tolerance was lowered after the preview ratios were matched on opening
+            ratio = pictureSizes.closest(mAspectRatio, Float.POSITIVE_INFINITY);
         }
-        Size largest = mPictureSizes.sizes(mAspectRatio).last();
-        mImageReader = ImageReader.newInstance(largest.getWidth(), largest.getHeight(),
-                ImageFormat.JPEG, /* maxImages */ 2);
-        mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, null);
+        Size size;
+        if (mPictureSizeSelector != null) {
+            size = SizeSelectors.select(mPictureSizeSelector,
+                    collectCandidates(pictureSizes.sizes(ratio), format),
+                    getSurfaceSize());
+        } else {
+            size = pictureSizes.largest(ratio);
+        }
+        final Size limit = mStillSizeLimit;
+        if (limit != null
+                && (size.getWidth() > limit.getWidth() || size.getHeight() > limit.getHeight())) {
+            size = pictureSizes.floor(ratio, limit.getWidth(), limit.getHeight());
+            if (size == null) {
+                size = limit;
+            }
+        }
+        mImageReader = openImageReader(size, format, /* maxImages */ 2);
+        mImageReader.setOnImageAvailableListener(mOnImageAvailableListener, getImageHandler());
     }
 
     /**
      * <p>Starts opening a camera device.</p>
-     * <p>The result will be processed in {@link #mCameraDeviceCallback}.</p>
+     * <p>The result will be processed in {@link #mDeviceCallback}.</p>
      */
     private void startOpeningCamera() {
+        mDeviceCallback = new DeviceCallback();
+        setCameraState(CameraState.OPENING);
         try {
-            mCameraManager.openCamera(mCameraId, mCameraDeviceCallback, null);
+            mCameraManager.openCamera(mCameraId, mDeviceCallback, null);
         } catch (CameraAccessException e) {
             throw new RuntimeException("Failed to open camera: " + mCameraId, e);
         }
     }
 
     /**
-     * <p>Starts a capture session for camera preview.</p>
+     * <p>Starts a capture session for camera preview. This is only called by
+     * {@link #configureSession()}; use {@link #restartCaptureSession()} instead.</p>
      * <p>This rewrites {@link #mPreviewRequestBuilder}.</p>
      * <p>The result will be continuously processed in {@link #mSessionCallback}.</p>
      */
@@ -476,43 +1078,264 @@ class Camera2 extends CameraViewImpl {
         }
         Size previewSize = chooseOptimalSize();
         mPreview.setBufferSize(previewSize.getWidth(), previewSize.getHeight());
-        Surface surface = mPreview.getSurface();
+        mPreviewSurface = mPreview.getSurface();
+        final Surface recorderSurface = getRecorderSurface();
+        final Size stillSizeLimit = recorderSurface != null ? getRecorderSurfaceSize() : null;
+        if (stillSizeLimit == null ? mStillSizeLimit != null
+                : !stillSizeLimit.equals(mStillSizeLimit)) {
+            mStillSizeLimit = stillSizeLimit;
+            openStillReader();
+        }
+        final List<Surface> outputs = new ArrayList<>(3);
+        outputs.add(mPreviewSurface);
+        outputs.add(mImageReader.getSurface());
+        if (recorderSurface != null) {
+            outputs.add(recorderSurface);
+        } else if (mRawCapture != null) {
+            // Devices only guarantee three outputs; RAW is given up while recording
+            outputs.add(mRawCapture.getSurface());
+        }
+        mRawInSession = recorderSurface == null && mRawCapture != null;
         try {
-            mPreviewRequestBuilder = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
-            mPreviewRequestBuilder.addTarget(surface);
-            mCamera.createCaptureSession(Arrays.asList(surface, mImageReader.getSurface()),
-                    mSessionCallback, null);
+            createPreviewRequestBuilder();
+            mCamera.createCaptureSession(outputs, mSessionCallback, null);
+            setCameraState(CameraState.CONFIGURING);
         } catch (CameraAccessException e) {
             throw new RuntimeException("Failed to start camera session");
         }
     }
 
+    /**
+     * Creates {@link #mPreviewRequestBuilder} for the preview, and for the recorder while
+     * recording.
+     */
+    private void createPreviewRequestBuilder() throws CameraAccessException {
+        if (mVideoRecorder == null) {
+            mPreviewRequestBuilder = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            mPreviewRequestBuilder.addTarget(mPreviewSurface);
+        } else {
+            mPreviewRequestBuilder = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+            mPreviewRequestBuilder.addTarget(mPreviewSurface);
+            mPreviewRequestBuilder.addTarget(getRecorderSurface());
+        }
+    }
+
+    /**
+     * @return The surface of the recorder to configure in the session, or {@code null} if there
+     * is none.
+     */
+    Surface getRecorderSurface() {
+        return mVideoRecorder != null ? mVideoRecorder.getMediaRecorder().getSurface() : null;
+    }
+
+    /**
+     * @return The size of the surface returned by {@link #getRecorderSurface()}.
+     */
+    Size getRecorderSurfaceSize() {
+        return mVideoRecorder != null ? mVideoSize : null;
+    }
+
+    /**
+     * Lets the {@code recorder} read from a surface already configured in the session, so that
+     * recording starts without restarting the session.
+     *
+     * @return {@code false} if there is no such surface of the {@code size}.
+     */
+    boolean useReservedRecorderSurface(MediaRecorder recorder, Size size) {
+        return false;
+    }
+
+    /**
+     * @return The video size closest to the camcorder profile in the current aspect ratio.
+     */
+    Size chooseVideoSize() {
+        final CamcorderProfile profile = getCamcorderProfile();
+        final Size size = VideoRecorder.chooseSize(mVideoSizes.snapshot(), mAspectRatio,
+                profile.videoFrameWidth, profile.videoFrameHeight);
+        return size != null ? size : new Size(profile.videoFrameWidth, profile.videoFrameHeight);
+    }
+
+    CamcorderProfile getCamcorderProfile() {
+        int cameraId;
+        try {
+            cameraId = Integer.parseInt(mCameraId);
+        } catch (NumberFormatException e) {
+            // Camcorder profiles are only indexed by the numeric IDs
+            cameraId = -1;
+        }
+        return VideoRecorder.getProfile(cameraId);
+    }
+
+    /**
+     * Requests a new capture session with the current configuration. The requests made until it
+     * runs are coalesced, and those made while a session is configuring or capturing wait for it.
+     */
+    void restartCaptureSession() {
+        mCommands.enqueue(COMMAND_CONFIGURE, mConfigureSession);
+    }
+
+    /**
+     * Closes the current capture session, if any, and starts a new one when the camera is ready
+     * for it.
+     */
+    private void configureSession() {
+        switch (mCameraState) {
+            case CameraState.OPENED:
+            case CameraState.STREAMING:
+                break;
+            case CameraState.CONFIGURING:
+            case CameraState.CAPTURING:
+                mSessionPending = true;
+                return;
+            default:
+                // The session is started once the camera is opened
+                return;
+        }
+        if (mCaptureSession != null) {
+            mCaptureSession.close();
+            mCaptureSession = null;
+        }
+        setCameraState(CameraState.OPENED);
+        if (mImageReaderPending) {
+            prepareImageReader();
+        }
+        startCaptureSession();
+    }
+
+    /**
+     * Adopts a session that has been configured, unless it has been superseded while being
+     * configured.
+     *
+     * @return {@code true} if the session is to start streaming; {@code false} if it is closed
+     * or about to be replaced.
+     */
+    boolean onSessionConfigured(CameraCaptureSession session) {
+        if (mCameraState != CameraState.CONFIGURING || session.getDevice() != mCamera) {
+            session.close();
+            return false;
+        }
+        mCaptureSession = session;
+        setCameraState(CameraState.STREAMING);
+        if (mSessionPending) {
+            mSessionPending = false;
+            restartCaptureSession();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the session that failed is the current one.
+     */
+    boolean onSessionConfigureFailed(CameraCaptureSession session) {
+        if (mCameraState != CameraState.CONFIGURING || session.getDevice() != mCamera) {
+            return false;
+        }
+        setCameraState(CameraState.OPENED);
+        if (mSessionPending) {
+            mSessionPending = false;
+            restartCaptureSession();
+        }
+        return true;
+    }
+
+    /**
+     * Sets {@link #mPreviewRequestBuilder} as the repeating request of {@link #mCaptureSession}.
+     * This does nothing while the preview is paused or a still picture is being captured; the
+     * builder is applied once they are over.
+     */
+    void setRepeatingPreviewRequest() throws CameraAccessException {
+        if (mPreviewPaused || mCameraState == CameraState.CAPTURING) {
+            return;
+        }
+        mCaptureSession.setRepeatingRequest(buildPreviewRequest(), mCaptureCallback, null);
+    }
+
+    /**
+     * Builds the repeating request from {@link #mPreviewRequestBuilder}, tagged so that
+     * {@link #isPreviewFrame(CaptureRequest)} counts its captures. The trigger requests built
+     * from the same builder are left untagged.
+     */
+    CaptureRequest buildPreviewRequest() {
+        mPreviewRequestBuilder.setTag(PREVIEW_TAG);
+        try {
+            return mPreviewRequestBuilder.build();
+        } finally {
+            mPreviewRequestBuilder.setTag(null);
+        }
+    }
+
+    /**
+     * @return {@code true} if the capture of the {@code request} is a frame of the preview, rather
+     * than of a focus or metering trigger, a still picture or a RAW picture.
+     */
+    boolean isPreviewFrame(CaptureRequest request) {
+        return request.getTag() == PREVIEW_TAG;
+    }
+
     /**
      * Chooses the optimal preview size based on {@link #mPreviewSizes} and the surface size.
      *
      * @return The picked size for camera preview.
      */
     private Size chooseOptimalSize() {
-        int surfaceLonger, surfaceShorter;
+        final Size surface = getSurfaceSize();
+        SizeMap.Snapshot candidates = mPreviewSizes.snapshot();
+        if (mPreviewSizeSelector != null) {
+            return SizeSelectors.select(mPreviewSizeSelector,
+                    collectCandidates(candidates.sizes(mAspectRatio), mPreview.getOutputClass()),
+                    surface);
+        }
+
+        // Pick the smallest of those big enough
+        Size size = candidates.ceiling(mAspectRatio, surface.getWidth(), surface.getHeight());
+        if (size != null) {
+            return size;
+        }
+        // If no size is big enough, pick the largest one.
+        return candidates.largest(mAspectRatio);
+    }
+
+    /**
+     * @return The size of the preview surface with the longer side as the width.
+     */
+    private Size getSurfaceSize() {
         final int surfaceWidth = mPreview.getWidth();
         final int surfaceHeight = mPreview.getHeight();
         if (surfaceWidth < surfaceHeight) {
-            surfaceLonger = surfaceHeight;
-            surfaceShorter = surfaceWidth;
+            return new Size(surfaceHeight, surfaceWidth);
         } else {
-            surfaceLonger = surfaceWidth;
-            surfaceShorter = surfaceHeight;
+            return new Size(surfaceWidth, surfaceHeight);
         }
-        SortedSet<Size> candidates = mPreviewSizes.sizes(mAspectRatio);
+    }
 
-        // Pick the smallest of those big enough
-        for (Size size : candidates) {
-            if (size.getWidth() >= surfaceLonger && size.getHeight() >= surfaceShorter) {
-                return size;
+    /**
+     * Pairs the {@code sizes} with the highest frame rate each of them can be streamed at.
+     *
+     * @param output Either an image format such as {@link ImageFormat#JPEG} or a class accepted by
+     *               {@link StreamConfigurationMap#getOutputSizes(Class)}.
+     */
+    @SuppressWarnings("unchecked")
+    private List<SizeSelector.Candidate> collectCandidates(List<Size> sizes, Object output) {
+        final StreamConfigurationMap map = mCameraCharacteristics.get(
+                CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        final List<SizeSelector.Candidate> candidates = new ArrayList<>(sizes.size());
+        for (Size size : sizes) {
+            final android.util.Size s = new android.util.Size(size.getWidth(), size.getHeight());
+            long duration = 0;
+            if (map != null) {
+                try {
+                    duration = output instanceof Class
+                            ? map.getOutputMinFrameDuration((Class) output, s)
+                            : map.getOutputMinFrameDuration((Integer) output, s);
+                } catch (IllegalArgumentException e) {
+                    // The size is not listed for the output; use the default
+                }
             }
+            candidates.add(new SizeSelector.Candidate(size, duration > 0
+                    ? (int) (1000000000L / duration) : DEFAULT_FRAME_RATE));
         }
-        // If no size is big enough, pick the largest one.
-        return candidates.last();
+        return candidates;
     }
 
     /**
@@ -529,8 +1352,9 @@ class Camera2 extends CameraViewImpl {
                 mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
                         CaptureRequest.CONTROL_AF_MODE_OFF);
             } else {
-                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
-                        CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
+                mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, mVideoRecorder != null
+                        ? CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_VIDEO
+                        : CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE);
             }
         } else {
             mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
@@ -576,30 +1400,81 @@ class Camera2 extends CameraViewImpl {
         }
     }
 
+    /**
+     * Updates the internal state of the frame rate to the supported range closest to
+     * {@link #mFrameRateRange}. The template default is kept when no range is requested.
+     */
+    void updateFrameRate() {
+        if (mFrameRateRange == null) {
+            return;
+        }
+        final Range<Integer>[] ranges = mCameraCharacteristics.get(
+                CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (ranges == null || ranges.length == 0) {
+            return;
+        }
+        final List<FrameRateRange> supported = new ArrayList<>(ranges.length);
+        for (Range<Integer> range : ranges) {
+            supported.add(new FrameRateRange(range.getLower(), range.getUpper()));
+        }
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                ranges[supported.indexOf(FrameRateRange.closest(mFrameRateRange, supported))]);
+    }
+
     /**
      * Locks the focus as the first step for a still image capture.
      */
-    private void lockFocus() {
+    private void lockFocus() throws CameraAccessException {
         mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
                 CaptureRequest.CONTROL_AF_TRIGGER_START);
         try {
-            mCaptureCallback.setState(PictureCaptureCallback.STATE_LOCKING);
             mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, null);
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to lock focus.", e);
+            throw e;
         }
     }
 
     /**
-     * Captures a still picture.
+     * Runs the precapture metering when the exposure has not converged with the focus locked.
      */
-    void captureStillPicture() {
+    private void startPrecapture() throws CameraAccessException {
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
+                CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
+        try {
+            mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, null);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Failed to run precapture sequence.", e);
+            throw e;
+        }
+        mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
+                CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
+    }
+
+    private void onStillCaptureResult(CaptureResult result) {
+        if (mStillCapture.getState() == StillCaptureSequence.STATE_PREVIEW) {
+            return;
+        }
+        mStillCapture.onPreviewResult(result.get(CaptureResult.CONTROL_AF_STATE),
+                result.get(CaptureResult.CONTROL_AE_STATE));
+    }
+
+    /**
+     * Captures the still {@code pictures} in one burst, with the focus and exposure locked.
+     */
+    void captureStillPicture(List<StillCapture.Picture> pictures)
+            throws CameraAccessException {
         try {
             CaptureRequest.Builder captureRequestBuilder = mCamera.createCaptureRequest(
                     CameraDevice.TEMPLATE_STILL_CAPTURE);
             captureRequestBuilder.addTarget(mImageReader.getSurface());
             captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE,
                     mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE));
+            applyJpegSettings(captureRequestBuilder);
+            if (mFrameRateRange != null) {
+                captureRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                        mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE));
+            }
             switch (mFlash) {
                 case Constants.FLASH_OFF:
                     captureRequestBuilder.set(CaptureRequest.CONTROL_AE_MODE,
@@ -626,135 +1501,214 @@ class Camera2 extends CameraViewImpl {
                             CaptureRequest.CONTROL_AE_MODE_ON_AUTO_FLASH);
                     break;
             }
-            // Calculate JPEG orientation.
-            @SuppressWarnings("ConstantConditions")
-            int sensorOrientation = mCameraCharacteristics.get(
-                    CameraCharacteristics.SENSOR_ORIENTATION);
-            captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION,
-                    (sensorOrientation +
-                            mDisplayOrientation * (mFacing == Constants.FACING_FRONT ? 1 : -1) +
-                            360) % 360);
-            // Stop preview and capture a still picture.
+            final List<CaptureRequest> requests = new ArrayList<>(pictures.size());
+            for (StillCapture.Picture picture : pictures) {
+                captureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, picture.orientation);
+                captureRequestBuilder.setTag(picture);
+                requests.add(captureRequestBuilder.build());
+            }
+            // Stop preview and capture the still pictures.
             mCaptureSession.stopRepeating();
-            mCaptureSession.capture(captureRequestBuilder.build(),
-                    new CameraCaptureSession.CaptureCallback() {
-                        @Override
-                        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
-                                @NonNull CaptureRequest request,
-                                @NonNull TotalCaptureResult result) {
-                            unlockFocus();
-                        }
-                    }, null);
+            mCaptureSession.captureBurst(requests, new CameraCaptureSession.CaptureCallback() {
+
+                @Override
+                public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                        @NonNull CaptureRequest request, long timestamp, long frameNumber) {
+                    mStillCapture.onCaptureStarted((StillCapture.Picture) request.getTag(),
+                            timestamp);
+                }
+
+                @Override
+                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                        @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+                    onPictureCompleted((StillCapture.Picture) request.getTag(), result);
+                }
+
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                        @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+                    mStillCapture.onCaptureFailed((StillCapture.Picture) request.getTag(),
+                            failure.getReason(), failure.wasImageCaptured());
+                }
+
+            }, null);
         } catch (CameraAccessException e) {
             Log.e(TAG, "Cannot capture a still picture.", e);
+            throw e;
+        }
+    }
+
+    /**
+     * Captures a still picture while recording. The record request keeps repeating, and the
+     * snapshot frame goes to the preview and the recorder as well, so neither of them misses a
+     * frame. Focus and exposure are not locked, as that would show in the video.
+     */
+    private void captureVideoSnapshot(StillCapture.Picture picture)
+            throws CameraAccessException {
+        try {
+            final CaptureRequest.Builder builder = mCamera.createCaptureRequest(
+                    CameraDevice.TEMPLATE_VIDEO_SNAPSHOT);
+            builder.addTarget(mPreviewSurface);
+            builder.addTarget(getRecorderSurface());
+            builder.addTarget(mImageReader.getSurface());
+            builder.set(CaptureRequest.CONTROL_AF_MODE,
+                    mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AF_MODE));
+            builder.set(CaptureRequest.CONTROL_AE_MODE,
+                    mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AE_MODE));
+            builder.set(CaptureRequest.FLASH_MODE,
+                    mPreviewRequestBuilder.get(CaptureRequest.FLASH_MODE));
+            if (mFrameRateRange != null) {
+                builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                        mPreviewRequestBuilder.get(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE));
+            }
+            builder.set(CaptureRequest.JPEG_ORIENTATION, picture.orientation);
+            applyJpegSettings(builder);
+            builder.setTag(picture);
+            mCaptureSession.capture(builder.build(), mCaptureCallback, null);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Cannot capture a video snapshot.", e);
+            throw e;
         }
     }
 
+    /**
+     * Applies the JPEG settings chosen by the app to a still capture {@code builder}.
+     */
+    private void applyJpegSettings(CaptureRequest.Builder builder) {
+        if (mJpegQuality != 0) {
+            builder.set(CaptureRequest.JPEG_QUALITY, (byte) mJpegQuality);
+        }
+        if (mJpegThumbnailQuality != 0) {
+            builder.set(CaptureRequest.JPEG_THUMBNAIL_QUALITY, (byte) mJpegThumbnailQuality);
+        }
+        if (mJpegThumbnailSize != null) {
+            final List<Size> supported = new ArrayList<>();
+            final android.util.Size[] sizes = mCameraCharacteristics.get(
+                    CameraCharacteristics.JPEG_AVAILABLE_THUMBNAIL_SIZES);
+            if (sizes != null) {
+                for (android.util.Size size : sizes) {
+                    supported.add(new Size(size.getWidth(), size.getHeight()));
+                }
+            }
+            final Size size = chooseThumbnailSize(mJpegThumbnailSize, supported);
+            builder.set(CaptureRequest.JPEG_THUMBNAIL_SIZE,
+                    new android.util.Size(size.getWidth(), size.getHeight()));
+        }
+    }
+
+    /**
+     * Reports the metadata of a still {@code picture} to {@link #mStillCapture}.
+     */
+    void onPictureCompleted(StillCapture.Picture picture, TotalCaptureResult result) {
+        final Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        final Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        final Integer sensitivity = result.get(CaptureResult.SENSOR_SENSITIVITY);
+        mStillCapture.onCaptureCompleted(picture, timestamp != null ? timestamp : 0,
+                exposureTime != null ? exposureTime : 0, sensitivity != null ? sensitivity : 0);
+    }
+
+    /**
+     * @return The clockwise rotation of captured images and videos for them to be upright on the
+     * display, in degrees.
+     */
+    int calcOutputOrientation() {
+        @SuppressWarnings("ConstantConditions")
+        int sensorOrientation = mCameraCharacteristics.get(
+                CameraCharacteristics.SENSOR_ORIENTATION);
+        return (sensorOrientation +
+                mDisplayOrientation * (mFacing == Constants.FACING_FRONT ? 1 : -1) + 360) % 360;
+    }
+
     /**
      * Unlocks the auto-focus and restart camera preview. This is supposed to be called after
      * capturing a still picture.
      */
     void unlockFocus() {
+        if (mCameraState != CameraState.CAPTURING) {
+            // The session was closed during the capture
+            return;
+        }
         mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
                 CaptureRequest.CONTROL_AF_TRIGGER_CANCEL);
+        setCameraState(CameraState.STREAMING);
         try {
             mCaptureSession.capture(mPreviewRequestBuilder.build(), mCaptureCallback, null);
             updateAutoFocus();
             updateFlash();
+            updateFrameRate();
             mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER,
                     CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
-            mCaptureSession.setRepeatingRequest(mPreviewRequestBuilder.build(), mCaptureCallback,
-                    null);
-            mCaptureCallback.setState(PictureCaptureCallback.STATE_PREVIEW);
+            setRepeatingPreviewRequest();
         } catch (CameraAccessException e) {
             Log.e(TAG, "Failed to restart camera preview.", e);
         }
+        // Run what waited for the capture
+        if (mSessionPending) {
+            mSessionPending = false;
+            restartCaptureSession();
+        }
     }
 
     /**
-     * A {@link CameraCaptureSession.CaptureCallback} for capturing a still picture.
+     * Tracks a camera device from opening to closing. A device that opens after another one has
+     * been requested, or after {@link #stop()}, is closed right away.
      */
-    private static abstract class PictureCaptureCallback
-            extends CameraCaptureSession.CaptureCallback {
+    private class DeviceCallback extends CameraDevice.StateCallback {
 
-        static final int STATE_PREVIEW = 0;
-        static final int STATE_LOCKING = 1;
-        static final int STATE_LOCKED = 2;
-        static final int STATE_PRECAPTURE = 3;
-        static final int STATE_WAITING = 4;
-        static final int STATE_CAPTURING = 5;
+        /** Whether {@link Callback#onCameraOpened()} has been called for this device. */
+        private boolean mOpened;
 
-        private int mState;
+        DeviceCallback() {
+        }
 
-        PictureCaptureCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice camera) {
+            if (mDeviceCallback != this || mCameraState != CameraState.OPENING) {
+                camera.close();
+                return;
+            }
+            mCamera = camera;
+            mOpened = true;
+            setCameraState(CameraState.OPENED);
+            mCallback.onCameraOpened();
+            restartCaptureSession();
         }
 
-        void setState(int state) {
-            mState = state;
+        @Override
+        public void onClosed(@NonNull CameraDevice camera) {
+            if (mDeviceCallback == this && mCameraState == CameraState.CLOSING) {
+                setCameraState(CameraState.CLOSED);
+            }
+            if (mOpened) {
+                mOpened = false;
+                mCallback.onCameraClosed();
+            }
         }
 
         @Override
-        public void onCaptureProgressed(@NonNull CameraCaptureSession session,
-                @NonNull CaptureRequest request, @NonNull CaptureResult partialResult) {
-            process(partialResult);
+        public void onDisconnected(@NonNull CameraDevice camera) {
+            release(camera);
         }
 
         @Override
-        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
-                @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
-            process(result);
+        public void onError(@NonNull CameraDevice camera, int error) {
+            Log.e(TAG, "onError: " + camera.getId() + " (" + error + ")");
+            release(camera);
         }
 
-        private void process(@NonNull CaptureResult result) {
-            switch (mState) {
-                case STATE_LOCKING: {
-                    Integer af = result.get(CaptureResult.CONTROL_AF_STATE);
-                    if (af == null) {
-                        break;
-                    }
-                    if (af == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED ||
-                            af == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED) {
-                        Integer ae = result.get(CaptureResult.CONTROL_AE_STATE);
-                        if (ae == null || ae == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
-                            setState(STATE_CAPTURING);
-                            onReady();
-                        } else {
-                            setState(STATE_LOCKED);
-                            onPrecaptureRequired();
-                        }
-                    }
-                    break;
-                }
-                case STATE_PRECAPTURE: {
-                    Integer ae = result.get(CaptureResult.CONTROL_AE_STATE);
-                    if (ae == null || ae == CaptureResult.CONTROL_AE_STATE_PRECAPTURE ||
-                            ae == CaptureRequest.CONTROL_AE_STATE_FLASH_REQUIRED ||
-                            ae == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
-                        setState(STATE_WAITING);
-                    }
-                    break;
-                }
-                case STATE_WAITING: {
-                    Integer ae = result.get(CaptureResult.CONTROL_AE_STATE);
-                    if (ae == null || ae != CaptureResult.CONTROL_AE_STATE_PRECAPTURE) {
-                        setState(STATE_CAPTURING);
-                        onReady();
-                    }
-                    break;
+        private void release(CameraDevice camera) {
+            if (mDeviceCallback == this) {
+                mCamera = null;
+                mCaptureSession = null;
+                mSessionPending = false;
+                mStillCapture.abort();
+                if (mCameraState != CameraState.CLOSED) {
+                    setCameraState(CameraState.CLOSING);
                 }
             }
+            camera.close();
         }
 
-        /**
-         * Called when it is ready to take a still picture.
-         */
-        public abstract void onReady();
-
-        /**
-         * Called when it is necessary to run the precapture sequence.
-         */
-        public abstract void onPrecaptureRequired();
-
     }
 
 }
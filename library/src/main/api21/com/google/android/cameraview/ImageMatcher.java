@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Pairs the images of an {@link android.media.ImageReader} with the capture requests they were
+ * taken for, by the sensor timestamp both of them carry. An image may arrive before or after the
+ * capture of its request is reported, and the images of failed captures are dropped.
+ *
+ * @param <R> The type of the requests.
+ * @param <I> The type of the images.
+ */
+class ImageMatcher<R, I> {
+
+    interface Callback<R, I> {
+
+        /** Called once the capture of the {@code request} is completed and its image arrived. */
+        void onMatched(R request, I image);
+
+        /** Called with an image that no request is waiting for. */
+        void onDropped(I image);
+
+    }
+
+    private final Callback<R, I> mCallback;
+
+    /** The requests waiting for their result or image, in the order they were made. */
+    private final ArrayList<Entry<R>> mEntries = new ArrayList<>();
+
+    /** The images that arrived before their results, by timestamp. */
+    private final HashMap<Long, I> mImages = new HashMap<>();
+
+    /** The timestamps of failed captures whose images may still arrive, to be dropped. */
+    private final HashSet<Long> mFailedTimestamps = new HashSet<>();
+
+    ImageMatcher(Callback<R, I> callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Adds a {@code request} whose capture is about to be submitted.
+     */
+    void add(R request) {
+        mEntries.add(new Entry<>(request));
+    }
+
+    boolean contains(R request) {
+        return find(request) != null;
+    }
+
+    /**
+     * Forgets the {@code request}, as its capture could not be submitted.
+     */
+    boolean remove(R request) {
+        final Entry<R> entry = find(request);
+        if (entry == null) {
+            return false;
+        }
+        mEntries.remove(entry);
+        return true;
+    }
+
+    /**
+     * @return The number of requests waiting for their result or image.
+     */
+    int size() {
+        return mEntries.size();
+    }
+
+    void onStarted(R request, long timestamp) {
+        final Entry<R> entry = find(request);
+        if (entry != null) {
+            entry.started = true;
+            entry.timestamp = timestamp;
+            dropUnclaimedImages();
+        }
+    }
+
+    void onCompleted(R request, long timestamp) {
+        final Entry<R> entry = find(request);
+        if (entry == null) {
+            return;
+        }
+        entry.started = true;
+        entry.timestamp = timestamp;
+        entry.completed = true;
+        final I image = mImages.remove(timestamp);
+        if (image != null) {
+            mEntries.remove(entry);
+            mCallback.onMatched(request, image);
+        }
+        dropUnclaimedImages();
+    }
+
+    /**
+     * Forgets the {@code request} whose capture failed, and drops its image if one was captured.
+     *
+     * @return {@code false} if the request was not waiting.
+     */
+    boolean onFailed(R request, boolean imageCaptured) {
+        final Entry<R> entry = find(request);
+        if (entry == null) {
+            return false;
+        }
+        mEntries.remove(entry);
+        if (imageCaptured && entry.started) {
+            // The image is of no use, and holds a buffer of the reader
+            final I image = mImages.remove(entry.timestamp);
+            if (image != null) {
+                mCallback.onDropped(image);
+            } else {
+                mFailedTimestamps.add(entry.timestamp);
+            }
+        }
+        dropUnclaimedImages();
+        return true;
+    }
+
+    void onImage(long timestamp, I image) {
+        if (mFailedTimestamps.remove(timestamp)) {
+            mCallback.onDropped(image);
+            return;
+        }
+        for (Entry<R> entry : mEntries) {
+            if (entry.started && entry.timestamp == timestamp) {
+                if (entry.completed) {
+                    mEntries.remove(entry);
+                    mCallback.onMatched(entry.request, image);
+                } else {
+                    mImages.put(timestamp, image);
+                }
+                return;
+            }
+        }
+        if (hasUnstarted()) {
+            // The capture of the image is reported later
+            mImages.put(timestamp, image);
+        } else {
+            mCallback.onDropped(image);
+        }
+    }
+
+    /**
+     * Forgets the earliest request whose image has not arrived, as the next image of the reader
+     * could not be acquired.
+     *
+     * @return The request whose image is lost, or {@code null} if none is waiting for one.
+     */
+    R onImageLost() {
+        for (Entry<R> entry : mEntries) {
+            if (!(entry.started && mImages.containsKey(entry.timestamp))) {
+                mEntries.remove(entry);
+                return entry.request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops the images that arrived, and forgets all the requests.
+     *
+     * @return The requests that were waiting.
+     */
+    List<R> clear() {
+        final List<R> requests = new ArrayList<>(mEntries.size());
+        for (Entry<R> entry : mEntries) {
+            requests.add(entry.request);
+        }
+        mEntries.clear();
+        for (I image : mImages.values()) {
+            mCallback.onDropped(image);
+        }
+        mImages.clear();
+        mFailedTimestamps.clear();
+        return requests;
+    }
+
+    private Entry<R> find(R request) {
+        for (Entry<R> entry : mEntries) {
+            if (entry.request == request) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasUnstarted() {
+        for (Entry<R> entry : mEntries) {
+            if (!entry.started) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the images held for a capture to be reported, once every capture is.
+     */
+    private void dropUnclaimedImages() {
+        if (mImages.isEmpty() || hasUnstarted()) {
+            return;
+        }
+        final Iterator<Long> timestamps = mImages.keySet().iterator();
+        while (timestamps.hasNext()) {
+            final long timestamp = timestamps.next();
+            if (!isClaimed(timestamp)) {
+                final I image = mImages.get(timestamp);
+                timestamps.remove();
+                mCallback.onDropped(image);
+            }
+        }
+    }
+
+    private boolean isClaimed(long timestamp) {
+        for (Entry<R> entry : mEntries) {
+            if (entry.started && entry.timestamp == timestamp) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Entry<R> {
+
+        final R request;
+
+        /** Whether {@link #timestamp} is known. */
+        boolean started;
+
+        long timestamp;
+
+        boolean completed;
+
+        Entry(R request) {
+            this.request = request;
+        }
+
+    }
+
+}
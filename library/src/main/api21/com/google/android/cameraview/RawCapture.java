@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.DngCreator;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.ExifInterface;
+import android.media.Image;
+import android.media.ImageReader;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The RAW output of a {@link Camera2} session. Each RAW image is paired with its capture result
+ * by the sensor timestamp, and written as DNG to the stream of its request on a background
+ * thread, without holding the file on the heap.
+ */
+@TargetApi(21)
+class RawCapture {
+
+    private static final String TAG = "RawCapture";
+
+    /** Images are held until they are written; this bounds the RAW pictures in flight. */
+    private static final int MAX_IMAGES = 3;
+
+    private static ExecutorService sWriter;
+
+    private final CameraCharacteristics mCharacteristics;
+
+    private final CommandQueue mCommands;
+
+    private final ImageReader mReader;
+
+    private final Size mSize;
+
+    /** The requests waiting for their result or image. */
+    private final ImageMatcher<Request, Image> mRequests = new ImageMatcher<>(
+            new ImageMatcher.Callback<Request, Image>() {
+
+                @Override
+                public void onMatched(Request request, Image image) {
+                    write(request, image);
+                }
+
+                @Override
+                public void onDropped(Image image) {
+                    image.close();
+                }
+
+            });
+
+    /** The number of images being written. */
+    private int mWrites;
+
+    private boolean mClosed;
+
+    private final ImageReader.OnImageAvailableListener mOnImageAvailableListener
+            = new ImageReader.OnImageAvailableListener() {
+
+        @Override
+        public void onImageAvailable(ImageReader reader) {
+            final Image image;
+            try {
+                image = reader.acquireNextImage();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Too many RAW images are being written; dropping one.", e);
+                final Request lost = mRequests.onImageLost();
+                if (lost != null) {
+                    lost.future.setException(new IllegalStateException(
+                            "The RAW image was dropped.", e));
+                }
+                return;
+            }
+            if (image != null) {
+                mRequests.onImage(image.getTimestamp(), image);
+            }
+        }
+
+    };
+
+    private final CameraCaptureSession.CaptureCallback mCaptureCallback
+            = new CameraCaptureSession.CaptureCallback() {
+
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, long timestamp, long frameNumber) {
+            mRequests.onStarted((Request) request.getTag(), timestamp);
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, @NonNull TotalCaptureResult result) {
+            final Request raw = (Request) request.getTag();
+            if (!mRequests.contains(raw)) {
+                return;
+            }
+            final Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+            raw.result = result;
+            raw.timestamp = timestamp != null ? timestamp : 0;
+            mRequests.onCompleted(raw, raw.timestamp);
+        }
+
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                @NonNull CaptureRequest request, @NonNull CaptureFailure failure) {
+            final Request raw = (Request) request.getTag();
+            if (mRequests.onFailed(raw, failure.wasImageCaptured())) {
+                raw.future.setException(new IllegalStateException(
+                        "Failed to capture a RAW picture: " + failure.getReason()));
+            }
+        }
+
+    };
+
+    RawCapture(CameraCharacteristics characteristics, Size size, CommandQueue commands) {
+        mCharacteristics = characteristics;
+        mCommands = commands;
+        mSize = size;
+        mReader = Camera2.openImageReader(size, ImageFormat.RAW_SENSOR, MAX_IMAGES);
+        mReader.setOnImageAvailableListener(mOnImageAvailableListener, null);
+    }
+
+    /**
+     * @return {@code true} if the {@code characteristics} list the RAW capability.
+     */
+    static boolean isSupported(CameraCharacteristics characteristics) {
+        final int[] capabilities = characteristics.get(
+                CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        if (capabilities == null) {
+            return false;
+        }
+        for (int capability : capabilities) {
+            if (capability == CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES_RAW) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Surface getSurface() {
+        return mReader.getSurface();
+    }
+
+    CameraCaptureSession.CaptureCallback getCaptureCallback() {
+        return mCaptureCallback;
+    }
+
+    /**
+     * Registers a RAW picture to be written to {@code output}.
+     *
+     * @return The tag to set on the capture request.
+     * @throws RejectedExecutionException when the images of the pictures in flight would not
+     *                                    fit in the reader.
+     */
+    Object newRequest(OutputStream output, PictureFuture future, int orientation) {
+        if (mRequests.size() + mWrites >= MAX_IMAGES) {
+            throw new RejectedExecutionException(
+                    "Too many RAW pictures are in flight; wait for one to be done.");
+        }
+        final Request request = new Request(output, future, orientation);
+        mRequests.add(request);
+        return request;
+    }
+
+    /**
+     * Forgets the request of a capture that could not be submitted.
+     */
+    void cancelRequest(Object tag) {
+        mRequests.remove((Request) tag);
+    }
+
+    /**
+     * Fails the pictures in flight, and releases the reader once the images being written are
+     * done.
+     */
+    void close() {
+        mClosed = true;
+        for (Request request : mRequests.clear()) {
+            request.future.setException(CameraViewImpl.newPictureAbortedException());
+        }
+        if (mWrites == 0) {
+            Camera2.closeImageReader(mReader);
+        }
+    }
+
+    private void write(final Request request, final Image image) {
+        mWrites++;
+        getWriter().execute(new Runnable() {
+            @Override
+            public void run() {
+                Exception failure = null;
+                DngCreator creator = null;
+                try {
+                    creator = new DngCreator(mCharacteristics, request.result);
+                    creator.setOrientation(toExifOrientation(request.orientation));
+                    creator.writeImage(request.output, image);
+                    request.output.flush();
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                } finally {
+                    if (creator != null) {
+                        creator.close();
+                    }
+                }
+                final Exception exception = failure;
+                mCommands.enqueue(CommandQueue.NO_KEY, new Runnable() {
+                    @Override
+                    public void run() {
+                        image.close();
+                        mWrites--;
+                        if (mClosed && mWrites == 0) {
+                            Camera2.closeImageReader(mReader);
+                        }
+                        if (exception != null) {
+                            request.future.setException(exception);
+                        } else {
+                            request.future.set(newResult(request));
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private PictureResult newResult(Request request) {
+        final Long exposureTime = request.result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+        final Integer sensitivity = request.result.get(CaptureResult.SENSOR_SENSITIVITY);
+        return new PictureResult(null, mSize, request.orientation, request.timestamp,
+                exposureTime != null ? exposureTime : 0,
+                sensitivity != null ? sensitivity : 0);
+    }
+
+    static int toExifOrientation(int degrees) {
+        switch (degrees) {
+            case 90:
+                return ExifInterface.ORIENTATION_ROTATE_90;
+            case 180:
+                return ExifInterface.ORIENTATION_ROTATE_180;
+            case 270:
+                return ExifInterface.ORIENTATION_ROTATE_270;
+            default:
+                return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static synchronized Executor getWriter() {
+        if (sWriter == null) {
+            sWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "CameraView-DngWriter");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sWriter;
+    }
+
+    private static class Request {
+
+        final OutputStream output;
+
+        final PictureFuture future;
+
+        final int orientation;
+
+        TotalCaptureResult result;
+
+        long timestamp;
+
+        Request(OutputStream output, PictureFuture future, int orientation) {
+            this.output = output;
+            this.future = future;
+            this.orientation = orientation;
+        }
+
+    }
+
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.hardware.camera2.CameraAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The still pictures of a {@link Camera2} session, from the request to the delivery. It runs the
+ * {@link StillCaptureSequence} for a picture, captures the ones requested meanwhile in the same
+ * burst, pairs each image with its capture result by their sensor timestamp, and takes the
+ * pictures that waited for the session once it streams again.
+ *
+ * <p>The camera is only reached through {@link Session}, so that the pictures can be driven by
+ * scripted sessions in tests.</p>
+ */
+class StillCapture {
+
+    /**
+     * The camera device, the capture session and the still image reader, as used to take
+     * pictures. The results of the requests are reported back to the {@link StillCapture}.
+     */
+    interface Session {
+
+        /** @return {@code true} if the preview is streaming, so that a picture can be taken. */
+        boolean isStreaming();
+
+        /** @return {@code true} if it is recording, so that pictures are video snapshots. */
+        boolean isRecording();
+
+        boolean isAutoFocus();
+
+        /** @return The clockwise rotation of the pictures for them to be upright, in degrees. */
+        int getOutputOrientation();
+
+        /** Holds off reconfiguring the session until {@link #finishCapture()}. */
+        void startCapture();
+
+        /** Triggers the auto-focus; the results go to {@link #onPreviewResult}. */
+        void lockFocus() throws CameraAccessException;
+
+        /** Triggers the precapture metering; the results go to {@link #onPreviewResult}. */
+        void startPrecapture() throws CameraAccessException;
+
+        /**
+         * Stops the preview and captures the {@code pictures} in one burst. Each of them is
+         * reported to {@link #onCaptureStarted} and then to {@link #onCaptureCompleted} or
+         * {@link #onCaptureFailed}, and its image to {@link #onImage} or
+         * {@link #onImageFailed}.
+         */
+        void captureBurst(List<Picture> pictures) throws CameraAccessException;
+
+        /** Captures the {@code picture} while recording, reported as in a burst. */
+        void captureVideoSnapshot(Picture picture) throws CameraAccessException;
+
+        /**
+         * Unlocks the focus and resumes the preview after a burst. The session may be restarted
+         * instead, if it was reconfigured meanwhile.
+         */
+        void finishCapture();
+
+    }
+
+    interface Callback {
+
+        void onPictureTaken(byte[] data);
+
+    }
+
+    private final Session mSession;
+
+    private final Callback mCallback;
+
+    private final StillCaptureSequence mSequence = new StillCaptureSequence(
+            new StillCaptureSequence.Requests() {
+
+                @Override
+                public void lockFocus() {
+                    try {
+                        mSession.lockFocus();
+                    } catch (CameraAccessException e) {
+                        failCapture(e);
+                    }
+                }
+
+                @Override
+                public void startPrecapture() {
+                    try {
+                        mSession.startPrecapture();
+                    } catch (CameraAccessException e) {
+                        failCapture(e);
+                    }
+                }
+
+                @Override
+                public void capture() {
+                    captureBurst();
+                }
+
+            });
+
+    /** The picture the sequence is run for. */
+    private PictureFuture mPictureFuture;
+
+    /** The pictures requested until the session is streaming. */
+    private final ArrayList<PictureFuture> mPendingPictures = new ArrayList<>();
+
+    /** The pictures requested from the camera, waiting for their images and metadata. */
+    private final ImageMatcher<Picture, Jpeg> mInFlightPictures = new ImageMatcher<>(
+            new ImageMatcher.Callback<Picture, Jpeg>() {
+
+                @Override
+                public void onMatched(Picture picture, Jpeg jpeg) {
+                    deliverPicture(picture, jpeg);
+                }
+
+                @Override
+                public void onDropped(Jpeg jpeg) {
+                    // The image of a failed or aborted capture
+                }
+
+            });
+
+    /** The pictures of the current burst that are not reported yet. */
+    private final ArrayList<Picture> mBurst = new ArrayList<>();
+
+    StillCapture(Session session, Callback callback) {
+        mSession = session;
+        mCallback = callback;
+    }
+
+    /**
+     * @return The state of the {@link StillCaptureSequence}.
+     */
+    int getState() {
+        return mSequence.getState();
+    }
+
+    /**
+     * Takes a picture now if the session is streaming, or once it is.
+     */
+    void takePicture(PictureFuture future) {
+        if (!mSession.isStreaming()) {
+            mPendingPictures.add(future);
+            return;
+        }
+        if (mSession.isRecording()) {
+            captureVideoSnapshot(future);
+            return;
+        }
+        mPictureFuture = future;
+        mSession.startCapture();
+        mSequence.start(mSession.isAutoFocus());
+    }
+
+    /**
+     * Takes the pictures requested while the session was not streaming, as long as it streams.
+     */
+    void takePendingPictures() {
+        while (!mPendingPictures.isEmpty() && mSession.isStreaming()) {
+            final PictureFuture future = mPendingPictures.remove(0);
+            try {
+                takePicture(future);
+            } catch (RuntimeException e) {
+                future.setException(e);
+            }
+        }
+    }
+
+    /**
+     * Advances the sequence with a result of the preview, complete or partial.
+     */
+    void onPreviewResult(Integer af, Integer ae) {
+        if (mSequence.getState() != StillCaptureSequence.STATE_PREVIEW) {
+            mSequence.onResult(af, ae);
+        }
+    }
+
+    void onCaptureStarted(Picture picture, long timestamp) {
+        mInFlightPictures.onStarted(picture, timestamp);
+    }
+
+    void onCaptureCompleted(Picture picture, long timestamp, long exposureTime,
+            int sensitivity) {
+        picture.timestamp = timestamp;
+        picture.exposureTime = exposureTime;
+        picture.sensitivity = sensitivity;
+        mInFlightPictures.onCompleted(picture, timestamp);
+        onReported(picture);
+    }
+
+    void onCaptureFailed(Picture picture, int reason, boolean imageCaptured) {
+        if (mInFlightPictures.onFailed(picture, imageCaptured)) {
+            picture.future.setException(new IllegalStateException(
+                    "Failed to capture a picture: " + reason));
+        }
+        onReported(picture);
+    }
+
+    /**
+     * Delivers the picture whose capture has the same sensor {@code timestamp} as the image, once
+     * its metadata has arrived as well.
+     */
+    void onImage(long timestamp, byte[] data, Size size) {
+        mInFlightPictures.onImage(timestamp, new Jpeg(data, size, null));
+    }
+
+    /**
+     * Fails the picture whose image, of the sensor {@code timestamp}, could not be made.
+     */
+    void onImageFailed(long timestamp, Exception e) {
+        mInFlightPictures.onImage(timestamp, new Jpeg(null, null, e));
+    }
+
+    /**
+     * Fails all the pictures, as the camera is closed.
+     */
+    void abort() {
+        mSequence.reset();
+        mBurst.clear();
+        if (mPictureFuture != null) {
+            mPictureFuture.setException(CameraViewImpl.newPictureAbortedException());
+            mPictureFuture = null;
+        }
+        for (PictureFuture future : mPendingPictures) {
+            future.setException(CameraViewImpl.newPictureAbortedException());
+        }
+        mPendingPictures.clear();
+        // The images still to come are dropped
+        for (Picture picture : mInFlightPictures.clear()) {
+            picture.future.setException(CameraViewImpl.newPictureAbortedException());
+        }
+    }
+
+    /**
+     * Captures the picture of the sequence, along with the ones requested while it ran.
+     */
+    private void captureBurst() {
+        final int orientation = mSession.getOutputOrientation();
+        final List<Picture> pictures = new ArrayList<>();
+        pictures.add(new Picture(
+                mPictureFuture != null ? mPictureFuture : new PictureFuture(), orientation));
+        mPictureFuture = null;
+        // The pictures requested while focusing are taken in the same burst, under the same lock
+        for (PictureFuture future : mPendingPictures) {
+            if (!future.isDone()) {
+                pictures.add(new Picture(future, orientation));
+            }
+        }
+        mPendingPictures.clear();
+        for (Picture picture : pictures) {
+            mInFlightPictures.add(picture);
+        }
+        mBurst.addAll(pictures);
+        try {
+            mSession.captureBurst(pictures);
+        } catch (CameraAccessException e) {
+            for (Picture picture : pictures) {
+                mInFlightPictures.remove(picture);
+                picture.future.setException(e);
+            }
+            mBurst.clear();
+            finishCapture();
+        }
+    }
+
+    private void captureVideoSnapshot(PictureFuture future) {
+        final Picture picture = new Picture(future, mSession.getOutputOrientation());
+        mInFlightPictures.add(picture);
+        try {
+            mSession.captureVideoSnapshot(picture);
+        } catch (CameraAccessException e) {
+            mInFlightPictures.remove(picture);
+            future.setException(e);
+        }
+    }
+
+    /**
+     * Fails the picture of the sequence, which cannot go on.
+     */
+    private void failCapture(Exception e) {
+        if (mPictureFuture != null) {
+            mPictureFuture.setException(e);
+            mPictureFuture = null;
+        }
+        finishCapture();
+    }
+
+    /**
+     * Finishes the burst once all its pictures are reported.
+     */
+    private void onReported(Picture picture) {
+        if (mBurst.remove(picture) && mBurst.isEmpty()) {
+            finishCapture();
+        }
+    }
+
+    private void finishCapture() {
+        mSequence.reset();
+        mSession.finishCapture();
+        takePendingPictures();
+    }
+
+    /**
+     * Delivers the {@code picture}, now that both its image and its metadata have arrived.
+     */
+    private void deliverPicture(Picture picture, Jpeg jpeg) {
+        if (jpeg.exception != null) {
+            picture.future.setException(jpeg.exception);
+            return;
+        }
+        picture.future.set(new PictureResult(jpeg.data, jpeg.size, picture.orientation,
+                picture.timestamp, picture.exposureTime, picture.sensitivity));
+        mCallback.onPictureTaken(jpeg.data);
+    }
+
+    /**
+     * A picture requested from the camera, waiting for its image and its metadata.
+     */
+    static class Picture {
+
+        final PictureFuture future;
+
+        final int orientation;
+
+        long timestamp;
+
+        long exposureTime;
+
+        int sensitivity;
+
+        Picture(PictureFuture future, int orientation) {
+            this.future = future;
+            this.orientation = orientation;
+        }
+
+    }
+
+    /**
+     * The JPEG image of a picture, or the reason it could not be made.
+     */
+    private static class Jpeg {
+
+        final byte[] data;
+
+        final Size size;
+
+        final Exception exception;
+
+        Jpeg(byte[] data, Size size, Exception exception) {
+            this.data = data;
+            this.size = size;
+            this.exception = exception;
+        }
+
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.hardware.camera2.CaptureResult;
+
+/**
+ * The steps of taking a still picture with the 3A routines of Camera2: locking the focus, running
+ * the precapture metering when the exposure has not converged, and capturing. It only reacts to
+ * the AF and AE states of the capture results and issues the requests through {@link Requests},
+ * so that it can be driven by scripted states in tests.
+ *
+ * <p>The picture is only taken once the focus is locked and the precapture is done, however long
+ * they take in low light or with the flash.</p>
+ */
+class StillCaptureSequence {
+
+    /** Issues the requests of the sequence to the capture session. */
+    interface Requests {
+
+        /** Triggers the auto-focus, and reports the results to the sequence. */
+        void lockFocus();
+
+        /** Triggers the precapture metering, and reports the results to the sequence. */
+        void startPrecapture();
+
+        /** Captures the still picture. */
+        void capture();
+
+    }
+
+    static final int STATE_PREVIEW = 0;
+    static final int STATE_LOCKING = 1;
+    static final int STATE_PRECAPTURE = 2;
+    static final int STATE_WAITING = 3;
+    static final int STATE_CAPTURING = 4;
+
+    private final Requests mRequests;
+
+    private int mState = STATE_PREVIEW;
+
+    StillCaptureSequence(Requests requests) {
+        mRequests = requests;
+    }
+
+    int getState() {
+        return mState;
+    }
+
+    /**
+     * Starts taking a picture, locking the focus first if {@code autoFocus} is on.
+     */
+    void start(boolean autoFocus) {
+        if (autoFocus) {
+            mState = STATE_LOCKING;
+            mRequests.lockFocus();
+        } else {
+            capture();
+        }
+    }
+
+    /**
+     * Goes back to the preview, ignoring the results of a sequence in progress.
+     */
+    void reset() {
+        mState = STATE_PREVIEW;
+    }
+
+    /**
+     * Advances the sequence with a result of the session, complete or partial.
+     *
+     * @param af The {@link CaptureResult#CONTROL_AF_STATE}, if reported.
+     * @param ae The {@link CaptureResult#CONTROL_AE_STATE}, if reported.
+     */
+    void onResult(Integer af, Integer ae) {
+        switch (mState) {
+            case STATE_LOCKING: {
+                if (af == null) {
+                    break;
+                }
+                if (af == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED ||
+                        af == CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED) {
+                    if (ae == null || ae == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
+                        capture();
+                    } else {
+                        mState = STATE_PRECAPTURE;
+                        mRequests.startPrecapture();
+                    }
+                }
+                break;
+            }
+            case STATE_PRECAPTURE: {
+                if (ae == null || ae == CaptureResult.CONTROL_AE_STATE_PRECAPTURE ||
+                        ae == CaptureResult.CONTROL_AE_STATE_FLASH_REQUIRED ||
+                        ae == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
+                    mState = STATE_WAITING;
+                }
+                break;
+            }
+            case STATE_WAITING: {
+                if (ae == null || ae != CaptureResult.CONTROL_AE_STATE_PRECAPTURE) {
+                    capture();
+                }
+                break;
+            }
+        }
+    }
+
+    private void capture() {
+        mState = STATE_CAPTURING;
+        mRequests.capture();
+    }
+
+}
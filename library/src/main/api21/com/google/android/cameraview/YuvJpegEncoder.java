@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes {@link ImageFormat#YUV_420_888} stills to JPEG on a pool of worker threads, one per
+ * core, so that the pictures of a burst are encoded at once instead of one after another in the
+ * camera HAL. The pictures are delivered on the main thread in the order they were submitted.
+ */
+@TargetApi(21)
+class YuvJpegEncoder {
+
+    /**
+     * Receives the pictures, along with the sensor timestamp of the image they were encoded from.
+     */
+    interface Callback {
+
+        void onJpegEncoded(long timestamp, byte[] data, Size size);
+
+        void onJpegFailed(long timestamp, Exception e);
+
+    }
+
+    /** The quality used when the app has not chosen one. */
+    static final int DEFAULT_QUALITY = 95;
+
+    private static ExecutorService sPool;
+
+    private final CommandQueue mCommands;
+
+    private final Callback mCallback;
+
+    /** The encoded pictures waiting for the ones submitted before them, by sequence. */
+    private final HashMap<Long, Result> mResults = new HashMap<>();
+
+    private long mNextSequence;
+
+    private long mDeliverSequence;
+
+    /** Incremented by {@link #reset()} to drop the pictures still being encoded. */
+    private int mGeneration;
+
+    YuvJpegEncoder(CommandQueue commands, Callback callback) {
+        mCommands = commands;
+        mCallback = callback;
+    }
+
+    /**
+     * Encodes an image copied by {@link #toNv21(Image)} in the background.
+     *
+     * @param timestamp The sensor timestamp of the image.
+     * @param quality   The JPEG quality, or 0 for {@link #DEFAULT_QUALITY}.
+     */
+    void encode(final long timestamp, final byte[] nv21, final Size size, int quality) {
+        final int q = quality != 0 ? quality : DEFAULT_QUALITY;
+        final long sequence = mNextSequence++;
+        final int generation = mGeneration;
+        getPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] data = null;
+                Exception failure = null;
+                try {
+                    data = compress(nv21, size, q);
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+                final Result result = new Result(timestamp, data, size, failure);
+                mCommands.enqueue(CommandQueue.NO_KEY, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            mResults.put(sequence, result);
+                            deliver();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops the pictures that are still being encoded.
+     */
+    void reset() {
+        mGeneration++;
+        mResults.clear();
+        mDeliverSequence = mNextSequence;
+    }
+
+    private void deliver() {
+        Result result;
+        while ((result = mResults.remove(mDeliverSequence)) != null) {
+            mDeliverSequence++;
+            if (result.data != null) {
+                mCallback.onJpegEncoded(result.timestamp, result.data, result.size);
+            } else {
+                mCallback.onJpegFailed(result.timestamp, result.exception);
+            }
+        }
+    }
+
+    private static byte[] compress(byte[] nv21, Size size, int quality) {
+        final int width = size.getWidth();
+        final int height = size.getHeight();
+        final YuvImage image = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream(width * height / 4);
+        if (!image.compressToJpeg(new Rect(0, 0, width, height), quality, output)) {
+            throw new IllegalStateException("Failed to encode a " + size + " picture.");
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Converts a {@link ImageFormat#YUV_420_888} image to NV21, whatever the strides of its
+     * planes, so that it can be closed right away. It may be called on any thread.
+     */
+    static byte[] toNv21(Image image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final Image.Plane[] planes = image.getPlanes();
+        final byte[] nv21 = new byte[width * height * 3 / 2];
+        copyPlane(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                width, height, nv21, 0, 1);
+        // NV21 interleaves the chroma planes, V first
+        final int chroma = width * height;
+        copyPlane(planes[2].getBuffer(), planes[2].getRowStride(), planes[2].getPixelStride(),
+                width / 2, height / 2, nv21, chroma, 2);
+        copyPlane(planes[1].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                width / 2, height / 2, nv21, chroma + 1, 2);
+        return nv21;
+    }
+
+    /**
+     * Copies a plane of {@code width} by {@code height} samples to {@code out}, starting at
+     * {@code offset} and writing every {@code outPixelStride} bytes.
+     */
+    static void copyPlane(ByteBuffer buffer, int rowStride, int pixelStride, int width,
+            int height, byte[] out, int offset, int outPixelStride) {
+        final byte[] row = new byte[rowStride];
+        for (int y = 0; y < height; y++) {
+            buffer.position(y * rowStride);
+            final int start = offset + y * width * outPixelStride;
+            if (pixelStride == 1 && outPixelStride == 1) {
+                buffer.get(out, start, width);
+                continue;
+            }
+            // The last row may end right after its last sample
+            final int length = Math.min(rowStride, buffer.limit() - y * rowStride);
+            buffer.get(row, 0, length);
+            for (int x = 0; x < width; x++) {
+                out[start + x * outPixelStride] = row[x * pixelStride];
+            }
+        }
+    }
+
+    private static synchronized Executor getPool() {
+        if (sPool == null) {
+            final int threads = Runtime.getRuntime().availableProcessors();
+            sPool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    final Thread thread = new Thread(runnable,
+                            "CameraView-JpegEncoder-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sPool;
+    }
+
+    private static class Result {
+
+        final long timestamp;
+
+        final byte[] data;
+
+        final Size size;
+
+        final Exception exception;
+
+        Result(long timestamp, byte[] data, Size size, Exception exception) {
+            this.timestamp = timestamp;
+            this.data = data;
+            this.size = size;
+            this.exception = exception;
+        }
+
+    }
+
+}
@@ -19,12 +19,86 @@ package com.google.android.cameraview;
 import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraConstrainedHighSpeedCaptureSession;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.MediaCodec;
+import android.media.MediaRecorder;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.util.Range;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 
 @TargetApi(23)
 class Camera2Api23 extends Camera2 {
 
+    private static final String TAG = "Camera2Api23";
+
+    /** The requested frame rate of the high-speed session; 0 for a regular session. */
+    private int mHighSpeedFrameRate;
+
+    /** The extra output of the high-speed session, such as an encoder input surface. */
+    private Surface mHighSpeedOutput;
+
+    /** The configuration of the current high-speed session. */
+    private HighSpeedConfiguration mHighSpeedConfiguration;
+
+    /** The persistent encoder input surface kept in the session while reserved. */
+    private Surface mReservedSurface;
+
+    /** The video size {@link #mReservedSurface} is allocated for. */
+    private Size mReservedSurfaceSize;
+
+    private final CameraCaptureSession.StateCallback mHighSpeedSessionCallback
+            = new CameraCaptureSession.StateCallback() {
+
+        @Override
+        public void onConfigured(@NonNull CameraCaptureSession session) {
+            if (!onSessionConfigured(session)) {
+                return;
+            }
+            try {
+                setRepeatingPreviewRequest();
+            } catch (CameraAccessException e) {
+                Log.e(TAG, "Failed to start high-speed preview because it couldn't access camera",
+                        e);
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                Log.e(TAG, "Failed to start high-speed preview.", e);
+            }
+        }
+
+        @Override
+        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+            if (!onSessionConfigureFailed(session)) {
+                return;
+            }
+            Log.e(TAG, "Failed to configure high-speed session; falling back to a regular one.");
+            mHighSpeedFrameRate = 0;
+            mHighSpeedOutput = null;
+            mHighSpeedConfiguration = null;
+            restartCaptureSession();
+        }
+
+        @Override
+        public void onClosed(@NonNull CameraCaptureSession session) {
+            if (mCaptureSession != null && mCaptureSession.equals(session)) {
+                mCaptureSession = null;
+            }
+        }
+
+    };
+
     Camera2Api23(Callback callback, PreviewImpl preview, Context context) {
         super(callback, preview, context);
     }
@@ -43,4 +117,341 @@ class Camera2Api23 extends Camera2 {
         }
     }
 
+    @Override
+    void stop() {
+        // The extra output is usually owned by an encoder that does not outlive this session
+        mHighSpeedFrameRate = 0;
+        mHighSpeedOutput = null;
+        mHighSpeedConfiguration = null;
+        super.stop();
+        releaseReservedSurface();
+    }
+
+    @Override
+    void startRecording(File file) {
+        if (mHighSpeedFrameRate != 0) {
+            throw new IllegalStateException("Use the output of the high-speed mode to record.");
+        }
+        super.startRecording(file);
+    }
+
+    @Override
+    void setRecordingSurfaceReserved(boolean reserved) {
+        super.setRecordingSurfaceReserved(reserved);
+        if (!reserved && mVideoRecorder == null) {
+            releaseReservedSurface();
+        }
+    }
+
+    /**
+     * Provides a persistent input surface while reserved. It stays in the session between
+     * recordings, so that starting and stopping one does not reconfigure the camera.
+     */
+    @Override
+    Surface getRecorderSurface() {
+        if (!mRecordingSurfaceReserved) {
+            return super.getRecorderSurface();
+        }
+        if (mVideoRecorder != null) {
+            // Keep feeding the current recording
+            return mRecordingOnReservedSurface ? mReservedSurface : super.getRecorderSurface();
+        }
+        final Size size = chooseVideoSize();
+        if (mReservedSurface == null || !size.equals(mReservedSurfaceSize)) {
+            releaseReservedSurface();
+            mReservedSurface = createReservedSurface(size);
+            mReservedSurfaceSize = mReservedSurface != null ? size : null;
+            if (mReservedSurface == null) {
+                return super.getRecorderSurface();
+            }
+        }
+        return mReservedSurface;
+    }
+
+    @Override
+    Size getRecorderSurfaceSize() {
+        if (mReservedSurface != null && (mVideoRecorder == null || mRecordingOnReservedSurface)) {
+            return mReservedSurfaceSize;
+        }
+        return super.getRecorderSurfaceSize();
+    }
+
+    @Override
+    boolean useReservedRecorderSurface(MediaRecorder recorder, Size size) {
+        if (mReservedSurface == null || !size.equals(mReservedSurfaceSize)) {
+            return false;
+        }
+        recorder.setInputSurface(mReservedSurface);
+        return true;
+    }
+
+    /**
+     * Creates a persistent input surface, and lets a throwaway recorder allocate its buffers for
+     * the {@code size} before the camera sees it.
+     *
+     * @return The surface, or {@code null} if it cannot be prepared.
+     */
+    private Surface createReservedSurface(Size size) {
+        final Surface surface = MediaCodec.createPersistentInputSurface();
+        File file = null;
+        try {
+            file = File.createTempFile("reserve", ".mp4",
+                    mPreview.getView().getContext().getCacheDir());
+            final VideoRecorder recorder = new VideoRecorder(file, false);
+            recorder.getMediaRecorder().setVideoSource(MediaRecorder.VideoSource.SURFACE);
+            recorder.getMediaRecorder().setInputSurface(surface);
+            try {
+                recorder.prepare(getCamcorderProfile(), size, 0);
+            } finally {
+                recorder.stop();
+            }
+            return surface;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to reserve a recorder surface.", e);
+            surface.release();
+            if (file != null && file.exists() && !file.delete()) {
+                Log.w(TAG, "Failed to delete " + file);
+            }
+            return null;
+        }
+    }
+
+    private void releaseReservedSurface() {
+        if (mReservedSurface != null) {
+            mReservedSurface.release();
+            mReservedSurface = null;
+            mReservedSurfaceSize = null;
+        }
+    }
+
+    @Override
+    Size getHighSpeedSize(int frameRate) {
+        if (!isCameraOpened()) {
+            return null;
+        }
+        HighSpeedConfiguration configuration = chooseHighSpeedConfiguration(frameRate, true);
+        return configuration == null ? null : configuration.size;
+    }
+
+    @Override
+    boolean setHighSpeedMode(int frameRate, Surface output) {
+        if (frameRate == 0) {
+            if (mHighSpeedFrameRate != 0) {
+                mHighSpeedFrameRate = 0;
+                mHighSpeedOutput = null;
+                mHighSpeedConfiguration = null;
+                restartCaptureSession();
+            }
+            return true;
+        }
+        if (!isCameraOpened()) {
+            throw new IllegalStateException(
+                    "Camera is not ready. Call start() before setHighSpeedMode().");
+        }
+        if (chooseHighSpeedConfiguration(frameRate, output != null) == null) {
+            return false;
+        }
+        mHighSpeedFrameRate = frameRate;
+        mHighSpeedOutput = output;
+        restartCaptureSession();
+        return true;
+    }
+
+    @Override
+    int getHighSpeedFrameRate() {
+        return mHighSpeedFrameRate;
+    }
+
+    @Override
+    void takePicture(PictureFuture future) {
+        if (mHighSpeedFrameRate != 0) {
+            throw new IllegalStateException("Still capture is not available in high-speed mode.");
+        }
+        super.takePicture(future);
+    }
+
+    @Override
+    void takeRawPicture(OutputStream output, PictureFuture future) {
+        if (mHighSpeedFrameRate != 0) {
+            throw new IllegalStateException("RAW capture is not available in high-speed mode.");
+        }
+        super.takeRawPicture(output, future);
+    }
+
+    /**
+     * <p>Starts a constrained high-speed session when one is requested. Otherwise, or when the
+     * current camera cannot stream at the requested rate, starts a regular session.</p>
+     * <p>The preview surface and the optional extra output receive the same frames.</p>
+     */
+    @Override
+    void startCaptureSession() {
+        if (mHighSpeedFrameRate == 0) {
+            super.startCaptureSession();
+            return;
+        }
+        if (!isCameraOpened() || !mPreview.isReady()) {
+            return;
+        }
+        mHighSpeedConfiguration = chooseHighSpeedConfiguration(mHighSpeedFrameRate,
+                mHighSpeedOutput != null);
+        if (mHighSpeedConfiguration == null) {
+            // This can happen after switching to a camera without high-speed capture.
+            Log.w(TAG, "High-speed capture at " + mHighSpeedFrameRate +
+                    " fps is not supported; falling back to a regular session.");
+            mHighSpeedFrameRate = 0;
+            mHighSpeedOutput = null;
+            super.startCaptureSession();
+            return;
+        }
+        final Size size = mHighSpeedConfiguration.size;
+        mPreview.setBufferSize(size.getWidth(), size.getHeight());
+        final List<Surface> outputs = new ArrayList<>(2);
+        outputs.add(mPreview.getSurface());
+        if (mHighSpeedOutput != null) {
+            outputs.add(mHighSpeedOutput);
+        }
+        try {
+            mPreviewRequestBuilder = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+            for (Surface output : outputs) {
+                mPreviewRequestBuilder.addTarget(output);
+            }
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                    mHighSpeedConfiguration.fpsRange);
+            mCamera.createConstrainedHighSpeedCaptureSession(outputs, mHighSpeedSessionCallback,
+                    null);
+            setCameraState(CameraState.CONFIGURING);
+        } catch (CameraAccessException e) {
+            throw new RuntimeException("Failed to start high-speed camera session");
+        }
+    }
+
+    /**
+     * High-speed sessions only accept bursts created by
+     * {@link CameraConstrainedHighSpeedCaptureSession#createHighSpeedRequestList(CaptureRequest)}.
+     */
+    @Override
+    void setRepeatingPreviewRequest() throws CameraAccessException {
+        if (mPreviewPaused) {
+            return;
+        }
+        if (mCaptureSession instanceof CameraConstrainedHighSpeedCaptureSession) {
+            CameraConstrainedHighSpeedCaptureSession session =
+                    (CameraConstrainedHighSpeedCaptureSession) mCaptureSession;
+            session.setRepeatingBurst(
+                    session.createHighSpeedRequestList(buildPreviewRequest()),
+                    mCaptureCallback, null);
+        } else {
+            super.setRepeatingPreviewRequest();
+        }
+    }
+
+    /**
+     * The requests of a high-speed burst are not guaranteed to keep the tag of the request they
+     * were created from; only the preview burst is captured in a high-speed session, though.
+     */
+    @Override
+    boolean isPreviewFrame(CaptureRequest request) {
+        return mCaptureSession instanceof CameraConstrainedHighSpeedCaptureSession
+                || super.isPreviewFrame(request);
+    }
+
+    @Override
+    void updateFrameRate() {
+        if (mHighSpeedConfiguration != null &&
+                mCaptureSession instanceof CameraConstrainedHighSpeedCaptureSession) {
+            // The range is dictated by the high-speed configuration.
+            mPreviewRequestBuilder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE,
+                    mHighSpeedConfiguration.fpsRange);
+            return;
+        }
+        super.updateFrameRate();
+    }
+
+    /**
+     * Chooses the high-speed video size and fps range for {@code frameRate}. Sizes matching the
+     * current aspect ratio are preferred, and then larger ones.
+     *
+     * @param fixed {@code true} to require a fixed fps range, which is necessary when frames are
+     *              also sent to an encoder. Otherwise, a variable range is preferred for preview.
+     * @return The configuration, or {@code null} if high-speed capture at the rate is not
+     * supported.
+     */
+    private HighSpeedConfiguration chooseHighSpeedConfiguration(int frameRate, boolean fixed) {
+        if (!isHighSpeedSupported()) {
+            return null;
+        }
+        final StreamConfigurationMap map = mCameraCharacteristics.get(
+                CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (map == null) {
+            return null;
+        }
+        final AspectRatio ratio = getAspectRatio();
+        HighSpeedConfiguration result = null;
+        boolean resultMatchesRatio = false;
+        for (android.util.Size s : map.getHighSpeedVideoSizes()) {
+            final Range<Integer> range = chooseFpsRange(map.getHighSpeedVideoFpsRangesFor(s),
+                    frameRate, fixed);
+            if (range == null) {
+                continue;
+            }
+            final Size size = new Size(s.getWidth(), s.getHeight());
+            final float value = AspectRatio.of(s.getWidth(), s.getHeight()).toFloat();
+            final boolean matchesRatio = ratio != null &&
+                    Math.abs(value - ratio.toFloat()) <= ratio.toFloat() * mAspectRatioTolerance;
+            if (result == null || (matchesRatio && !resultMatchesRatio) ||
+                    (matchesRatio == resultMatchesRatio && size.compareTo(result.size) > 0)) {
+                result = new HighSpeedConfiguration(size, range);
+                resultMatchesRatio = matchesRatio;
+            }
+        }
+        return result;
+    }
+
+    private static Range<Integer> chooseFpsRange(Range<Integer>[] ranges, int frameRate,
+            boolean fixed) {
+        Range<Integer> result = null;
+        for (Range<Integer> range : ranges) {
+            if (range.getUpper() != frameRate) {
+                continue;
+            }
+            final boolean isFixed = range.getLower().equals(range.getUpper());
+            if (isFixed == fixed) {
+                return range;
+            }
+            if (!fixed) {
+                // A fixed range also works for preview
+                result = range;
+            }
+        }
+        return result;
+    }
+
+    private boolean isHighSpeedSupported() {
+        final int[] capabilities = mCameraCharacteristics.get(
+                CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES);
+        if (capabilities == null) {
+            return false;
+        }
+        for (int capability : capabilities) {
+            if (capability == CameraCharacteristics
+                    .REQUEST_AVAILABLE_CAPABILITIES_CONSTRAINED_HIGH_SPEED_VIDEO) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class HighSpeedConfiguration {
+
+        final Size size;
+
+        final Range<Integer> fpsRange;
+
+        HighSpeedConfiguration(Size size, Range<Integer> fpsRange) {
+            this.size = size;
+            this.fpsRange = fpsRange;
+        }
+
+    }
+
 }
@@ -19,15 +19,30 @@ package com.google.android.cameraview;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
-import android.support.v4.util.SparseArrayCompat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Immutable class for describing proportional relationship between width and height.
  */
 public class AspectRatio implements Comparable<AspectRatio>, Parcelable {
 
-    private final static SparseArrayCompat<SparseArrayCompat<AspectRatio>> sCache
-            = new SparseArrayCompat<>(16);
+    /** The number of slots in {@link #sCache}; a power of two. */
+    static final int CACHE_CAPACITY = 1024;
+
+    /** How many slots are probed before an instance replaces one of them; a power of two. */
+    private static final int CACHE_MAX_PROBES = 16;
+
+    /**
+     * Interned instances in an open-addressed table keyed by the packed (x, y) pair. Slots are
+     * swapped atomically, so lookups need no lock.
+     */
+    private final static AtomicReferenceArray<AspectRatio> sCache
+            = new AtomicReferenceArray<>(CACHE_CAPACITY);
+
+    /** Picks the probed slot to replace when all of them hold other ratios. */
+    private final static AtomicInteger sEvictions = new AtomicInteger();
 
     private final int mX;
     private final int mY;
@@ -36,6 +51,10 @@ public class AspectRatio implements Comparable<AspectRatio>, Parcelable {
      * Returns an instance of {@link AspectRatio} specified by {@code x} and {@code y} values.
      * The values {@code x} and {@code} will be reduced by their greatest common divider.
      *
+     * <p>This method is thread-safe. The same instance is returned for the same ratio as long as
+     * it stays in the internal cache; when the cache is full around a ratio, it replaces one of
+     * the other ratios there, which get equal but distinct instances the next time.</p>
+     *
      * @param x The width
      * @param y The height
      * @return An instance of {@link AspectRatio}
@@ -44,20 +63,43 @@ public class AspectRatio implements Comparable<AspectRatio>, Parcelable {
         int gcd = gcd(x, y);
         x /= gcd;
         y /= gcd;
-        SparseArrayCompat<AspectRatio> arrayX = sCache.get(x);
-        if (arrayX == null) {
-            AspectRatio ratio = new AspectRatio(x, y);
-            arrayX = new SparseArrayCompat<>();
-            arrayX.put(y, ratio);
-            sCache.put(x, arrayX);
-            return ratio;
-        } else {
-            AspectRatio ratio = arrayX.get(y);
+        final long h = pack(x, y) * 0x9E3779B97F4A7C15L;
+        final int home = (int) (h ^ (h >>> 32)) & (CACHE_CAPACITY - 1);
+        int slot = home;
+        AspectRatio created = null;
+        for (int probe = 0; probe < CACHE_MAX_PROBES; probe++) {
+            AspectRatio ratio = sCache.get(slot);
             if (ratio == null) {
-                ratio = new AspectRatio(x, y);
-                arrayX.put(y, ratio);
+                if (created == null) {
+                    created = new AspectRatio(x, y);
+                }
+                if (sCache.compareAndSet(slot, null, created)) {
+                    return created;
+                }
+                // Another thread has just filled this slot; it may hold the same ratio.
+                ratio = sCache.get(slot);
             }
-            return ratio;
+            if (ratio != null && ratio.mX == x && ratio.mY == y) {
+                return ratio;
+            }
+            slot = (slot + 1) & (CACHE_CAPACITY - 1);
+        }
+        // The cache is full around this ratio; it takes the place of one of the others.
+        if (created == null) {
+            created = new AspectRatio(x, y);
+        }
+        slot = (home + (sEvictions.getAndIncrement() & (CACHE_MAX_PROBES - 1)))
+                & (CACHE_CAPACITY - 1);
+        sCache.set(slot, created);
+        return created;
+    }
+
+    /**
+     * Empties the cache of interned instances; for tests.
+     */
+    static void clearCache() {
+        for (int i = 0; i < CACHE_CAPACITY; i++) {
+            sCache.set(i, null);
         }
     }
 
@@ -150,7 +192,14 @@ public class AspectRatio implements Comparable<AspectRatio>, Parcelable {
         return AspectRatio.of(mY, mX);
     }
 
-    private static int gcd(int a, int b) {
+    /**
+     * Packs a reduced {@code (x, y)} pair into a single {@code long} key.
+     */
+    static long pack(int x, int y) {
+        return ((long) x << Integer.SIZE) | (y & 0xFFFFFFFFL);
+    }
+
+    static int gcd(int a, int b) {
         while (b != 0) {
             int c = b;
             b = a % b;
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * The states a {@link CameraViewImpl} goes through. A camera moves forward through them, except
+ * that it goes back to {@link #OPENED} to reconfigure and to {@link #STREAMING} after a capture.
+ * The moves allowed are listed by {@link #canMove(int, int)}.
+ */
+final class CameraState {
+
+    /** No camera device is open. */
+    static final int CLOSED = 0;
+
+    /** A camera device is being opened. */
+    static final int OPENING = 1;
+
+    /** The camera device is open, but it is not streaming, e.g. the preview is not ready. */
+    static final int OPENED = 2;
+
+    /** The outputs of the camera device are being configured. */
+    static final int CONFIGURING = 3;
+
+    /** The camera device is streaming frames to the preview. */
+    static final int STREAMING = 4;
+
+    /** A still picture is being captured. */
+    static final int CAPTURING = 5;
+
+    /** The camera device is being closed. */
+    static final int CLOSING = 6;
+
+    /**
+     * @return {@code true} if a camera in the state {@code from} can move to the state {@code to}.
+     * Staying in the same state is always allowed.
+     */
+    static boolean canMove(int from, int to) {
+        if (from == to) {
+            return true;
+        }
+        switch (from) {
+            case CLOSED:
+                // Camera1 opens the device synchronously
+                return to == OPENING || to == OPENED;
+            case OPENING:
+                return to == OPENED || to == CLOSING;
+            case OPENED:
+                return to == CONFIGURING || to == STREAMING || to == CAPTURING
+                        || to == CLOSING;
+            case CONFIGURING:
+                return to == OPENED || to == STREAMING || to == CLOSING;
+            case STREAMING:
+                return to == OPENED || to == CAPTURING || to == CLOSING;
+            case CAPTURING:
+                return to == OPENED || to == STREAMING || to == CLOSING;
+            case CLOSING:
+                // Camera2 may open the next device before the last one reports it is closed
+                return to == CLOSED || to == OPENING;
+            default:
+                return false;
+        }
+    }
+
+    static String nameOf(int state) {
+        switch (state) {
+            case CLOSED:
+                return "CLOSED";
+            case OPENING:
+                return "OPENING";
+            case OPENED:
+                return "OPENED";
+            case CONFIGURING:
+                return "CONFIGURING";
+            case STREAMING:
+                return "STREAMING";
+            case CAPTURING:
+                return "CAPTURING";
+            case CLOSING:
+                return "CLOSING";
+            default:
+                return "UNKNOWN(" + state + ")";
+        }
+    }
+
+    private CameraState() {
+    }
+
+}
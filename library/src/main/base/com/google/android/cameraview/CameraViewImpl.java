@@ -16,25 +16,135 @@
 
 package com.google.android.cameraview;
 
+import android.os.Looper;
+import android.view.Surface;
 import android.view.View;
 
+import java.io.File;
+import java.io.OutputStream;
+import java.util.List;
 import java.util.Set;
 
 abstract class CameraViewImpl {
 
-    protected final Callback mCallback;
+    /** The key of {@link #mCommands} to close and open the camera again. */
+    static final int COMMAND_REOPEN = 1;
 
-    protected final PreviewImpl mPreview;
+    /** The key of {@link #mCommands} to apply the configuration of the preview and outputs. */
+    static final int COMMAND_CONFIGURE = 2;
+
+    protected Callback mCallback;
+
+    protected PreviewImpl mPreview;
+
+    /**
+     * The difference allowed between a requested aspect ratio and a supported one, relative to
+     * the requested one.
+     */
+    protected float mAspectRatioTolerance = Constants.DEFAULT_ASPECT_RATIO_TOLERANCE;
+
+    /** Chooses the preview size; {@code null} for the smallest size covering the surface. */
+    protected SizeSelector mPreviewSizeSelector;
+
+    /** Chooses the picture size; {@code null} for the largest size. */
+    protected SizeSelector mPictureSizeSelector;
+
+    /** The frame rate range requested by the app; {@code null} for the camera default. */
+    protected FrameRateRange mFrameRateRange;
+
+    /** Whether to keep an encoder input surface in the session for quick recording starts. */
+    protected boolean mRecordingSurfaceReserved;
+
+    /** Whether to keep a RAW output in the session, where the camera supports it. */
+    protected boolean mRawEnabled;
+
+    /** The JPEG quality from 1 to 100, or 0 for the camera default. */
+    protected int mJpegQuality;
+
+    /** The size of the EXIF thumbnail, or {@code null} for the camera default. */
+    protected Size mJpegThumbnailSize;
+
+    /** The JPEG quality of the EXIF thumbnail from 1 to 100, or 0 for the camera default. */
+    protected int mJpegThumbnailQuality;
+
+    /** Whether to capture stills as YUV and encode them to JPEG in software, where supported. */
+    protected boolean mYuvCaptureEnabled;
+
+    /** Whether the preview is paused while the camera stays open; cleared by {@link #stop()}. */
+    protected boolean mPreviewPaused;
+
+    /** Serializes the operations that must not interleave with the callbacks of the camera. */
+    protected final CommandQueue mCommands;
+
+    /** One of the {@link CameraState}s. */
+    protected int mCameraState = CameraState.CLOSED;
 
     CameraViewImpl(Callback callback, PreviewImpl preview) {
+        this(callback, preview, new CommandQueue(Looper.getMainLooper()));
+    }
+
+    CameraViewImpl(Callback callback, PreviewImpl preview, CommandQueue commands) {
         mCallback = callback;
         mPreview = preview;
+        mCommands = commands;
+    }
+
+    CommandQueue getCommandQueue() {
+        return mCommands;
+    }
+
+    int getCameraState() {
+        return mCameraState;
+    }
+
+    /**
+     * @throws IllegalStateException if the camera cannot move from its state to the
+     *                               {@code state}.
+     */
+    void setCameraState(int state) {
+        if (!CameraState.canMove(mCameraState, state)) {
+            throw new IllegalStateException("Cannot move the camera from "
+                    + CameraState.nameOf(mCameraState) + " to " + CameraState.nameOf(state));
+        }
+        mCameraState = state;
     }
 
     View getView() {
         return mPreview.getView();
     }
 
+    PreviewImpl getPreview() {
+        return mPreview;
+    }
+
+    /**
+     * Stops showing the preview while keeping the camera open, so that it can be moved to
+     * another preview with {@link #attachPreview}.
+     *
+     * @return {@code false} if the camera cannot be kept open in the current state.
+     */
+    boolean detachPreview() {
+        return false;
+    }
+
+    /**
+     * Moves this to the {@code preview} and the {@code callback} of another view. The preview is
+     * shown once the surface of the {@code preview} is ready.
+     */
+    void attachPreview(Callback callback, PreviewImpl preview) {
+        mCallback = callback;
+        preview.setCallback(mPreview.getCallback());
+        mPreview = preview;
+    }
+
+    PreviewStats getPreviewStats() {
+        return mPreview.getStats();
+    }
+
+    void resetPreviewStats() {
+        mPreview.resetStats();
+    }
+
     /**
      * @return {@code true} if the implementation was able to start the camera session.
      */
@@ -44,6 +154,20 @@ abstract class CameraViewImpl {
 
     abstract boolean isCameraOpened();
 
+    /**
+     * Stops streaming frames while keeping the camera open. This also applies to a camera that is
+     * still opening.
+     *
+     * @throws IllegalStateException when it is recording.
+     */
+    abstract void pausePreview();
+
+    abstract void resumePreview();
+
+    boolean isPreviewPaused() {
+        return mPreviewPaused;
+    }
+
     abstract void setFacing(int facing);
 
     abstract int getFacing();
@@ -57,6 +181,44 @@ abstract class CameraViewImpl {
 
     abstract AspectRatio getAspectRatio();
 
+    void setAspectRatioTolerance(float tolerance) {
+        mAspectRatioTolerance = tolerance;
+    }
+
+    float getAspectRatioTolerance() {
+        return mAspectRatioTolerance;
+    }
+
+    void setPreviewSizeSelector(SizeSelector selector) {
+        mPreviewSizeSelector = selector;
+    }
+
+    SizeSelector getPreviewSizeSelector() {
+        return mPreviewSizeSelector;
+    }
+
+    void setPictureSizeSelector(SizeSelector selector) {
+        mPictureSizeSelector = selector;
+    }
+
+    SizeSelector getPictureSizeSelector() {
+        return mPictureSizeSelector;
+    }
+
+    void setFrameRateRange(FrameRateRange range) {
+        mFrameRateRange = range;
+    }
+
+    FrameRateRange getFrameRateRange() {
+        return mFrameRateRange;
+    }
+
+    /**
+     * @return The frame rate range actually applied to the camera, or {@code null} if the camera
+     * default is used.
+     */
+    abstract FrameRateRange getAppliedFrameRateRange();
+
     abstract void setAutoFocus(boolean autoFocus);
 
     abstract boolean getAutoFocus();
@@ -65,7 +227,144 @@ abstract class CameraViewImpl {
 
     abstract int getFlash();
 
-    abstract void takePicture();
+    /**
+     * Takes a picture, and completes the {@code future} with it in addition to calling
+     * {@link Callback#onPictureTaken(byte[])}. Pictures requested while one is being taken are
+     * taken one after another.
+     */
+    abstract void takePicture(PictureFuture future);
+
+    /**
+     * @return The exception to fail the pictures that are not taken because the camera is closed.
+     */
+    static Exception newPictureAbortedException() {
+        return new IllegalStateException("The camera was closed before the picture was taken.");
+    }
+
+    /**
+     * Starts recording video to {@code file}.
+     *
+     * @throws IllegalStateException when the camera is not opened or it is already recording.
+     */
+    abstract void startRecording(File file);
+
+    /**
+     * Stops recording video. This does nothing if it is not recording.
+     *
+     * @return {@code true} if a video was recorded.
+     */
+    abstract boolean stopRecording();
+
+    abstract boolean isRecording();
+
+    void setRecordingSurfaceReserved(boolean reserved) {
+        mRecordingSurfaceReserved = reserved;
+    }
+
+    boolean isRecordingSurfaceReserved() {
+        return mRecordingSurfaceReserved;
+    }
+
+    /**
+     * @return The size a high-speed session would stream at {@code frameRate}, or {@code null}
+     * if high-speed capture at the rate is not supported.
+     */
+    Size getHighSpeedSize(int frameRate) {
+        return null;
+    }
+
+    /**
+     * Switches between a high-speed session and a regular one.
+     *
+     * @param frameRate The frame rate of the high-speed session, or 0 for a regular session.
+     * @param output    An extra output of the high-speed session, or {@code null}.
+     * @return {@code false} if high-speed capture at the rate is not supported.
+     */
+    boolean setHighSpeedMode(int frameRate, Surface output) {
+        return frameRate == 0;
+    }
+
+    /**
+     * @return The frame rate of the high-speed session, or 0 for a regular session.
+     */
+    int getHighSpeedFrameRate() {
+        return 0;
+    }
+
+    void setJpegQuality(int quality) {
+        mJpegQuality = quality;
+    }
+
+    int getJpegQuality() {
+        return mJpegQuality;
+    }
+
+    void setJpegThumbnailSize(Size size) {
+        mJpegThumbnailSize = size;
+    }
+
+    Size getJpegThumbnailSize() {
+        return mJpegThumbnailSize;
+    }
+
+    void setJpegThumbnailQuality(int quality) {
+        mJpegThumbnailQuality = quality;
+    }
+
+    int getJpegThumbnailQuality() {
+        return mJpegThumbnailQuality;
+    }
+
+    /**
+     * Chooses the largest of the {@code supported} thumbnail sizes that fits in the
+     * {@code requested} one, or 0x0, which leaves out the thumbnail, if none does.
+     */
+    static Size chooseThumbnailSize(Size requested, List<Size> supported) {
+        Size chosen = new Size(0, 0);
+        for (Size size : supported) {
+            if (size.getWidth() <= requested.getWidth()
+                    && size.getHeight() <= requested.getHeight()
+                    && size.getWidth() * size.getHeight()
+                    > chosen.getWidth() * chosen.getHeight()) {
+                chosen = size;
+            }
+        }
+        return chosen;
+    }
+
+    void setYuvCaptureEnabled(boolean enabled) {
+        mYuvCaptureEnabled = enabled;
+    }
+
+    boolean isYuvCaptureEnabled() {
+        return mYuvCaptureEnabled;
+    }
+
+    /**
+     * @return {@code true} if the current camera can capture RAW pictures.
+     */
+    boolean isRawSupported() {
+        return false;
+    }
+
+    void setRawEnabled(boolean enabled) {
+        mRawEnabled = enabled;
+    }
+
+    boolean isRawEnabled() {
+        return mRawEnabled;
+    }
+
+    /**
+     * Captures a RAW picture and writes it to {@code output} as DNG, off the main thread.
+     *
+     * @throws IllegalStateException         when the RAW output is not enabled or the camera is not
+     *                                       streaming.
+     * @throws UnsupportedOperationException when the camera cannot capture RAW pictures.
+     */
+    void takeRawPicture(OutputStream output, PictureFuture future) {
+        throw new UnsupportedOperationException("This camera cannot capture RAW pictures.");
+    }
 
     abstract void setDisplayOrientation(int displayOrientation);
 
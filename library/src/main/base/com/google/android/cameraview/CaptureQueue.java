@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Bounds the pictures requested and not yet done. What happens to a request beyond the bound is
+ * decided by the overflow policy, one of {@link Constants#CAPTURE_OVERFLOW_REJECT},
+ * {@link Constants#CAPTURE_OVERFLOW_COALESCE} and {@link Constants#CAPTURE_OVERFLOW_WAIT}.
+ * This is thread-safe.
+ */
+class CaptureQueue {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /** The pictures requested and not yet done, oldest first; guarded by {@code this}. */
+    private final ArrayList<PictureFuture> mOutstanding = new ArrayList<>();
+
+    private int mDepth = Integer.MAX_VALUE;
+
+    private int mOverflow = Constants.CAPTURE_OVERFLOW_REJECT;
+
+    synchronized void setLimit(int depth, int overflow) {
+        mDepth = depth;
+        mOverflow = overflow;
+        // Waiting requests may fit now
+        notifyAll();
+    }
+
+    synchronized int getDepth() {
+        return mDepth;
+    }
+
+    synchronized int getOverflow() {
+        return mOverflow;
+    }
+
+    synchronized int size() {
+        return mOutstanding.size();
+    }
+
+    /**
+     * Admits the picture of {@code future}, which is tracked until it is done.
+     *
+     * @param mayWait Whether the caller can be blocked until there is room.
+     * @return {@code future} if it is admitted, or a failed {@code future} if it is rejected, or
+     * the latest outstanding picture if it is coalesced with that one.
+     */
+    PictureFuture admit(final PictureFuture future, boolean mayWait) {
+        synchronized (this) {
+            while (mOutstanding.size() >= mDepth) {
+                if (mOverflow == Constants.CAPTURE_OVERFLOW_COALESCE) {
+                    return mOutstanding.get(mOutstanding.size() - 1);
+                }
+                if (mOverflow != Constants.CAPTURE_OVERFLOW_WAIT || !mayWait) {
+                    future.setException(new RejectedExecutionException(
+                            "Too many pictures requested; the capture queue holds " + mDepth));
+                    return future;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.setException(e);
+                    return future;
+                }
+            }
+            mOutstanding.add(future);
+        }
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                release(future);
+            }
+        }, DIRECT);
+        return future;
+    }
+
+    private synchronized void release(PictureFuture future) {
+        mOutstanding.remove(future);
+        notifyAll();
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+
+/**
+ * Runs the operations of a camera one at a time on a single thread, in the order they are
+ * requested. A command that has not run yet is replaced by a newer one with the same key, so that
+ * a burst of the same change is applied once.
+ */
+final class CommandQueue {
+
+    /** Runs the queue on the thread of the camera. */
+    interface Dispatcher {
+
+        boolean isCurrentThread();
+
+        void dispatch(Runnable runnable);
+
+    }
+
+    /** The key of commands that are never replaced. */
+    static final int NO_KEY = 0;
+
+    private final Dispatcher mDispatcher;
+
+    /** Guarded by {@code this}. */
+    private final ArrayList<Command> mPending = new ArrayList<>();
+
+    /** Whether {@link #mDrain} is dispatched; guarded by {@code this}. */
+    private boolean mDispatched;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    CommandQueue(Looper looper) {
+        this(new HandlerDispatcher(looper));
+    }
+
+    CommandQueue(Dispatcher dispatcher) {
+        mDispatcher = dispatcher;
+    }
+
+    /**
+     * @return The thread the commands run on.
+     */
+    Dispatcher getDispatcher() {
+        return mDispatcher;
+    }
+
+    /**
+     * @return {@code true} if this is called on the thread the commands run on.
+     */
+    boolean isCurrentThread() {
+        return mDispatcher.isCurrentThread();
+    }
+
+    /**
+     * Enqueues the {@code command} to run later, even when called on the thread of the queue. It
+     * takes the place of a pending command with the same {@code key}, if any.
+     *
+     * @return {@code false} if the {@code command} took the place of a pending one.
+     */
+    boolean enqueue(int key, Runnable command) {
+        synchronized (this) {
+            if (key != NO_KEY) {
+                for (int i = 0, size = mPending.size(); i < size; i++) {
+                    final Command pending = mPending.get(i);
+                    if (pending.key == key) {
+                        pending.runnable = command;
+                        return false;
+                    }
+                }
+            }
+            mPending.add(new Command(key, command));
+            if (mDispatched) {
+                return true;
+            }
+            mDispatched = true;
+        }
+        mDispatcher.dispatch(mDrain);
+        return true;
+    }
+
+    /**
+     * @return {@code true} if a command with the {@code key} is waiting to run.
+     */
+    synchronized boolean isPending(int key) {
+        for (int i = 0, size = mPending.size(); i < size; i++) {
+            if (mPending.get(i).key == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the pending command with the {@code key}, if any.
+     */
+    synchronized void cancel(int key) {
+        for (int i = 0, size = mPending.size(); i < size; i++) {
+            if (mPending.get(i).key == key) {
+                mPending.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs the pending commands, including those enqueued while running them.
+     */
+    void drain() {
+        while (true) {
+            final Command command;
+            synchronized (this) {
+                if (mPending.isEmpty()) {
+                    mDispatched = false;
+                    return;
+                }
+                command = mPending.remove(0);
+            }
+            command.runnable.run();
+        }
+    }
+
+    private static class Command {
+
+        final int key;
+
+        Runnable runnable;
+
+        Command(int key, Runnable runnable) {
+            this.key = key;
+            this.runnable = runnable;
+        }
+
+    }
+
+    private static class HandlerDispatcher implements Dispatcher {
+
+        private final Handler mHandler;
+
+        HandlerDispatcher(Looper looper) {
+            mHandler = new Handler(looper);
+        }
+
+        @Override
+        public boolean isCurrentThread() {
+            return mHandler.getLooper() == Looper.myLooper();
+        }
+
+        @Override
+        public void dispatch(Runnable runnable) {
+            mHandler.post(runnable);
+        }
+
+    }
+
+}
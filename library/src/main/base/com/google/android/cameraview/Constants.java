@@ -21,6 +21,9 @@ interface Constants {
 
     AspectRatio DEFAULT_ASPECT_RATIO = AspectRatio.of(4, 3);
 
+    /** Aspect ratios within 1% of the requested one are used as they are. */
+    float DEFAULT_ASPECT_RATIO_TOLERANCE = 0.01f;
+
     int FACING_BACK = 0;
     int FACING_FRONT = 1;
 
@@ -30,6 +33,14 @@ interface Constants {
     int FLASH_AUTO = 3;
     int FLASH_RED_EYE = 4;
 
+    int BACKEND_CAMERA1 = 1;
+    int BACKEND_CAMERA2 = 2;
+    int BACKEND_FAKE = 3;
+
+    int CAPTURE_OVERFLOW_REJECT = 0;
+    int CAPTURE_OVERFLOW_COALESCE = 1;
+    int CAPTURE_OVERFLOW_WAIT = 2;
+
     int LANDSCAPE_90 = 90;
     int LANDSCAPE_270 = 270;
 }
@@ -0,0 +1,559 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A camera without hardware. It streams frames of a flat color to the preview and takes
+ * synthetic JPEG pictures, with the sizes and the timing of a {@link FakeCameraProfile}, so that
+ * the code around a {@link CameraView} can be load tested anywhere, including on a JVM.
+ *
+ * <p>Like the hardware backends, it reopens when the facing changes and restarts the stream when
+ * the aspect ratio changes. Other ratios than the one of the profile are center crops of its
+ * sizes.</p>
+ */
+class FakeCamera extends CameraViewImpl {
+
+    /** Runs the work of the camera on its thread, and tells the time. */
+    interface Scheduler extends CommandQueue.Dispatcher {
+
+        void schedule(Runnable runnable, long delayMillis);
+
+        void cancel(Runnable runnable);
+
+        /** @return The time in the {@link SystemClock#elapsedRealtime()} base, in nanoseconds. */
+        long elapsedRealtimeNanos();
+
+    }
+
+    private static final String TAG = "FakeCamera";
+
+    private static final int SENSOR_ORIENTATION = 90;
+
+    /** The sensitivity reported for every picture. */
+    private static final int SENSITIVITY = 100;
+
+    /** The ratios supported besides the one of the profile, by cropping. */
+    private static final AspectRatio[] CROP_RATIOS = {
+            AspectRatio.of(4, 3), AspectRatio.of(16, 9), AspectRatio.of(1, 1)};
+
+    private final FakeCameraProfile mProfile;
+
+    /** A nominal size for each of {@link #getSupportedAspectRatios()}, to match ratios against. */
+    private final SizeMap.Snapshot mPreviewRatios;
+
+    private final Scheduler mScheduler;
+
+    /** The data of the pictures by size; built on the first picture of each size. */
+    private final HashMap<Size, byte[]> mJpegs = new HashMap<>();
+
+    private int mFacing;
+
+    private AspectRatio mAspectRatio;
+
+    private boolean mAutoFocus;
+
+    private int mFlash;
+
+    private int mDisplayOrientation;
+
+    private int mFrameCount;
+
+    /** The preview outputs streamed to and not detached yet; only ever 0 or 1 unless leaked. */
+    private int mPreviewOutputs;
+
+    /** Whether to restart the stream for a new aspect ratio once the picture is captured. */
+    private boolean mConfigurePending;
+
+    /** The picture being focused for. */
+    private PictureFuture mPictureFuture;
+
+    /** The size of {@link #mPictureFuture}, in the aspect ratio of when it was requested. */
+    private Size mPictureSize;
+
+    /** The pictures requested while the camera was not streaming or was taking another one. */
+    private final ArrayList<PictureFuture> mPendingPictures = new ArrayList<>();
+
+    /** The pictures captured and being encoded, in the order they were captured. */
+    private final ArrayList<Encode> mEncodes = new ArrayList<>();
+
+    private final Runnable mOpen = new Runnable() {
+        @Override
+        public void run() {
+            setCameraState(CameraState.OPENED);
+            mCallback.onCameraOpened();
+            startStreaming();
+        }
+    };
+
+    private final Runnable mReopen = new Runnable() {
+        @Override
+        public void run() {
+            if (mCameraState != CameraState.CLOSED) {
+                start();
+            }
+        }
+    };
+
+    private final Runnable mConfigure = new Runnable() {
+        @Override
+        public void run() {
+            configure();
+        }
+    };
+
+    private final Runnable mFrame = new Runnable() {
+        @Override
+        public void run() {
+            drawFrame();
+            mPreview.onCameraFrame(mScheduler.elapsedRealtimeNanos());
+            mScheduler.schedule(this, 1000 / mProfile.getFrameRate());
+        }
+    };
+
+    private final Runnable mCapture = new Runnable() {
+        @Override
+        public void run() {
+            final Encode encode = new Encode(mPictureFuture, mPictureSize,
+                    calcOutputOrientation(), mScheduler.elapsedRealtimeNanos());
+            mPictureFuture = null;
+            mEncodes.add(encode);
+            mScheduler.schedule(encode, mProfile.getEncodeMillis());
+            setCameraState(CameraState.STREAMING);
+            if (mConfigurePending) {
+                mConfigurePending = false;
+                configure();
+            }
+            takePendingPictures();
+        }
+    };
+
+    FakeCamera(Callback callback, PreviewImpl preview, FakeCameraProfile profile) {
+        this(callback, preview, profile, new HandlerScheduler(Looper.getMainLooper()));
+    }
+
+    FakeCamera(Callback callback, PreviewImpl preview, FakeCameraProfile profile,
+            Scheduler scheduler) {
+        super(callback, preview, new CommandQueue(scheduler));
+        mProfile = profile;
+        mScheduler = scheduler;
+        mAspectRatio = AspectRatio.of(profile.getPreviewSize().getWidth(),
+                profile.getPreviewSize().getHeight());
+        final SizeMap ratios = new SizeMap();
+        for (AspectRatio ratio : getSupportedAspectRatios()) {
+            ratios.add(new Size(ratio.getX(), ratio.getY()));
+        }
+        mPreviewRatios = ratios.snapshot();
+        mPreview.setCallback(new PreviewImpl.Callback() {
+            @Override
+            public void onSurfaceChanged() {
+                if (mCameraState == CameraState.STREAMING
+                        || mCameraState == CameraState.CAPTURING) {
+                    setBufferSize();
+                }
+            }
+        });
+    }
+
+    @Override
+    boolean start() {
+        if (mCameraState != CameraState.CLOSED) {
+            stop();
+        }
+        setCameraState(CameraState.OPENING);
+        mScheduler.schedule(mOpen, mProfile.getOpenMillis());
+        return true;
+    }
+
+    @Override
+    void stop() {
+        mCommands.cancel(COMMAND_REOPEN);
+        mCommands.cancel(COMMAND_CONFIGURE);
+        mConfigurePending = false;
+        mScheduler.cancel(mOpen);
+        stopStreaming();
+        mScheduler.cancel(mCapture);
+        abortPictures();
+        final boolean opened = isCameraOpened();
+        if (mCameraState != CameraState.CLOSED) {
+            setCameraState(CameraState.CLOSING);
+            setCameraState(CameraState.CLOSED);
+        }
+        mPreviewPaused = false;
+        if (opened) {
+            mCallback.onCameraClosed();
+        }
+    }
+
+    @Override
+    boolean isCameraOpened() {
+        switch (mCameraState) {
+            case CameraState.OPENED:
+            case CameraState.STREAMING:
+            case CameraState.CAPTURING:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    void pausePreview() {
+        if (mPreviewPaused) {
+            return;
+        }
+        mPreviewPaused = true;
+        if (mCameraState == CameraState.STREAMING) {
+            stopStreaming();
+            setCameraState(CameraState.OPENED);
+        }
+    }
+
+    @Override
+    void resumePreview() {
+        if (!mPreviewPaused) {
+            return;
+        }
+        mPreviewPaused = false;
+        if (mCameraState == CameraState.OPENED) {
+            startStreaming();
+        }
+    }
+
+    @Override
+    void setFacing(int facing) {
+        if (mFacing == facing) {
+            return;
+        }
+        mFacing = facing;
+        if (mCameraState != CameraState.CLOSED) {
+            mCommands.enqueue(COMMAND_REOPEN, mReopen);
+        }
+    }
+
+    @Override
+    int getFacing() {
+        return mFacing;
+    }
+
+    @Override
+    Set<AspectRatio> getSupportedAspectRatios() {
+        final Set<AspectRatio> ratios = new LinkedHashSet<>();
+        ratios.add(AspectRatio.of(mProfile.getPreviewSize().getWidth(),
+                mProfile.getPreviewSize().getHeight()));
+        for (AspectRatio ratio : CROP_RATIOS) {
+            ratios.add(ratio);
+        }
+        return ratios;
+    }
+
+    @Override
+    boolean setAspectRatio(AspectRatio ratio) {
+        if (ratio == null || ratio.equals(mAspectRatio)) {
+            return false;
+        }
+        // As in Camera2, the closest supported ratio within the tolerance is used
+        final AspectRatio supported = mPreviewRatios.closest(ratio, mAspectRatioTolerance);
+        if (supported == null || supported.equals(mAspectRatio)) {
+            return false;
+        }
+        mAspectRatio = supported;
+        if (isCameraOpened()) {
+            mCommands.enqueue(COMMAND_CONFIGURE, mConfigure);
+        }
+        return true;
+    }
+
+    @Override
+    AspectRatio getAspectRatio() {
+        return mAspectRatio;
+    }
+
+    @Override
+    FrameRateRange getAppliedFrameRateRange() {
+        if (!isCameraOpened()) {
+            return null;
+        }
+        return new FrameRateRange(mProfile.getFrameRate(), mProfile.getFrameRate());
+    }
+
+    @Override
+    void setAutoFocus(boolean autoFocus) {
+        mAutoFocus = autoFocus;
+    }
+
+    @Override
+    boolean getAutoFocus() {
+        return mAutoFocus;
+    }
+
+    @Override
+    void setFlash(int flash) {
+        mFlash = flash;
+    }
+
+    @Override
+    int getFlash() {
+        return mFlash;
+    }
+
+    /**
+     * Focuses for {@link FakeCameraProfile#getFocusMillis()} with auto-focus on, and captures the
+     * picture. Its data comes {@link FakeCameraProfile#getEncodeMillis()} later, while the next
+     * picture can already be focused for.
+     */
+    @Override
+    void takePicture(PictureFuture future) {
+        if (mCameraState == CameraState.CLOSED) {
+            throw new IllegalStateException(
+                    "Camera is not ready. Call start() before takePicture().");
+        }
+        if (mCameraState != CameraState.STREAMING) {
+            mPendingPictures.add(future);
+            return;
+        }
+        mPictureFuture = future;
+        mPictureSize = crop(mProfile.getPictureSize(), mAspectRatio);
+        setCameraState(CameraState.CAPTURING);
+        mScheduler.schedule(mCapture, mAutoFocus ? mProfile.getFocusMillis() : 0);
+    }
+
+    @Override
+    void startRecording(File file) {
+        throw new UnsupportedOperationException("The fake camera cannot record video.");
+    }
+
+    @Override
+    boolean stopRecording() {
+        return false;
+    }
+
+    @Override
+    boolean isRecording() {
+        return false;
+    }
+
+    @Override
+    void setDisplayOrientation(int displayOrientation) {
+        mDisplayOrientation = displayOrientation;
+        mPreview.setDisplayOrientation(displayOrientation);
+    }
+
+    private void startStreaming() {
+        if (mPreviewPaused) {
+            return;
+        }
+        setBufferSize();
+        mPreviewOutputs++;
+        setCameraState(CameraState.STREAMING);
+        mScheduler.schedule(mFrame, 0);
+        takePendingPictures();
+    }
+
+    /**
+     * Restarts the stream in the current aspect ratio, once the picture being taken is captured.
+     */
+    private void configure() {
+        if (mCameraState == CameraState.CAPTURING) {
+            mConfigurePending = true;
+            return;
+        }
+        if (mCameraState != CameraState.STREAMING) {
+            // Applied when the stream starts
+            return;
+        }
+        stopStreaming();
+        setCameraState(CameraState.OPENED);
+        startStreaming();
+    }
+
+    /**
+     * Detaches the preview output, if it is streamed to.
+     */
+    private void stopStreaming() {
+        mScheduler.cancel(mFrame);
+        if (mCameraState == CameraState.STREAMING || mCameraState == CameraState.CAPTURING) {
+            mPreviewOutputs--;
+        }
+    }
+
+    /**
+     * @return The number of preview outputs the camera streams to; for soak tests.
+     */
+    int getPreviewOutputCount() {
+        return mPreviewOutputs;
+    }
+
+    private void setBufferSize() {
+        final Size size = crop(mProfile.getPreviewSize(), mAspectRatio);
+        mPreview.setBufferSize(size.getWidth(), size.getHeight());
+    }
+
+    /**
+     * @return The largest size in {@code ratio} that fits in {@code size}.
+     */
+    static Size crop(Size size, AspectRatio ratio) {
+        final int width = size.getWidth();
+        final int height = size.getHeight();
+        if ((long) width * ratio.getY() > (long) height * ratio.getX()) {
+            return new Size(height * ratio.getX() / ratio.getY(), height);
+        }
+        return new Size(width, width * ratio.getY() / ratio.getX());
+    }
+
+    /**
+     * Fills the preview with a color that changes with every frame, so that a stalled preview
+     * shows.
+     */
+    private void drawFrame() {
+        final int gray = mFrameCount++ % 256;
+        if (!mPreview.isReady()) {
+            return;
+        }
+        final Surface surface = mPreview.getSurface();
+        if (surface == null || !surface.isValid()) {
+            return;
+        }
+        try {
+            final Canvas canvas = surface.lockCanvas(null);
+            canvas.drawColor(Color.rgb(gray, gray, gray));
+            surface.unlockCanvasAndPost(canvas);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to draw a preview frame.", e);
+        }
+    }
+
+    private void takePendingPictures() {
+        while (!mPendingPictures.isEmpty() && mCameraState == CameraState.STREAMING) {
+            final PictureFuture future = mPendingPictures.remove(0);
+            if (!future.isDone()) {
+                takePicture(future);
+            }
+        }
+    }
+
+    private void abortPictures() {
+        if (mPictureFuture != null) {
+            mPictureFuture.setException(newPictureAbortedException());
+            mPictureFuture = null;
+        }
+        for (PictureFuture future : mPendingPictures) {
+            future.setException(newPictureAbortedException());
+        }
+        mPendingPictures.clear();
+        for (Encode encode : mEncodes) {
+            mScheduler.cancel(encode);
+            encode.future.setException(newPictureAbortedException());
+        }
+        mEncodes.clear();
+    }
+
+    private int calcOutputOrientation() {
+        if (mFacing == Constants.FACING_FRONT) {
+            return (SENSOR_ORIENTATION + mDisplayOrientation) % 360;
+        }
+        return (SENSOR_ORIENTATION - mDisplayOrientation + 360) % 360;
+    }
+
+    private class Encode implements Runnable {
+
+        final PictureFuture future;
+
+        final Size size;
+
+        final int orientation;
+
+        final long timestamp;
+
+        Encode(PictureFuture future, Size size, int orientation, long timestamp) {
+            this.future = future;
+            this.size = size;
+            this.orientation = orientation;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public void run() {
+            mEncodes.remove(this);
+            if (future.isDone() && !future.isCancelled()) {
+                // Failed
+                return;
+            }
+            byte[] jpeg = mJpegs.get(size);
+            if (jpeg == null) {
+                jpeg = SyntheticJpeg.create(size.getWidth(), size.getHeight());
+                mJpegs.put(size, jpeg);
+            }
+            future.set(new PictureResult(jpeg, size, orientation, timestamp,
+                    1000000000L / mProfile.getFrameRate(), SENSITIVITY));
+            mCallback.onPictureTaken(jpeg);
+        }
+
+    }
+
+    private static class HandlerScheduler implements Scheduler {
+
+        private final Handler mHandler;
+
+        HandlerScheduler(Looper looper) {
+            mHandler = new Handler(looper);
+        }
+
+        @Override
+        public boolean isCurrentThread() {
+            return mHandler.getLooper() == Looper.myLooper();
+        }
+
+        @Override
+        public void dispatch(Runnable runnable) {
+            mHandler.post(runnable);
+        }
+
+        @Override
+        public void schedule(Runnable runnable, long delayMillis) {
+            mHandler.postDelayed(runnable, delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable runnable) {
+            mHandler.removeCallbacks(runnable);
+        }
+
+        @Override
+        public long elapsedRealtimeNanos() {
+            return Build.VERSION.SDK_INT >= 17
+                    ? SystemClock.elapsedRealtimeNanos()
+                    : SystemClock.elapsedRealtime() * 1000000L;
+        }
+
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Describes the synthetic camera that {@link CameraView}s use in place of the hardware when set
+ * with {@link CameraView#setFakeCameraProfile(FakeCameraProfile)}: the sizes of its frames, how
+ * fast it streams, and how long it takes to open, focus and encode pictures.
+ */
+public final class FakeCameraProfile {
+
+    private final Size mPreviewSize;
+
+    private final Size mPictureSize;
+
+    private final int mFrameRate;
+
+    private final long mOpenMillis;
+
+    private final long mFocusMillis;
+
+    private final long mEncodeMillis;
+
+    /**
+     * @param previewSize  The size of the preview frames.
+     * @param pictureSize  The size of the JPEG pictures.
+     * @param frameRate    The preview frame rate in frames per second.
+     * @param openMillis   The time it takes to open the camera.
+     * @param focusMillis  The time it takes to focus before a picture, with auto-focus on.
+     * @param encodeMillis The time from the capture of a picture to its JPEG data.
+     * @throws IllegalArgumentException when {@code frameRate} is not positive or a time is
+     *                                  negative.
+     */
+    public FakeCameraProfile(@NonNull Size previewSize, @NonNull Size pictureSize, int frameRate,
+            long openMillis, long focusMillis, long encodeMillis) {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("frameRate must be positive: " + frameRate);
+        }
+        if (openMillis < 0 || focusMillis < 0 || encodeMillis < 0) {
+            throw new IllegalArgumentException("Times must not be negative: " + openMillis + ", "
+                    + focusMillis + ", " + encodeMillis);
+        }
+        mPreviewSize = previewSize;
+        mPictureSize = pictureSize;
+        mFrameRate = frameRate;
+        mOpenMillis = openMillis;
+        mFocusMillis = focusMillis;
+        mEncodeMillis = encodeMillis;
+    }
+
+    @NonNull
+    public Size getPreviewSize() {
+        return mPreviewSize;
+    }
+
+    @NonNull
+    public Size getPictureSize() {
+        return mPictureSize;
+    }
+
+    public int getFrameRate() {
+        return mFrameRate;
+    }
+
+    public long getOpenMillis() {
+        return mOpenMillis;
+    }
+
+    public long getFocusMillis() {
+        return mFocusMillis;
+    }
+
+    public long getEncodeMillis() {
+        return mEncodeMillis;
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Immutable class for describing a range of frame rates, in frames per second.
+ */
+public class FrameRateRange {
+
+    private final int mMin;
+    private final int mMax;
+
+    /**
+     * Create a new immutable FrameRateRange instance.
+     *
+     * @param min The lower bound, in frames per second
+     * @param max The upper bound, in frames per second
+     * @throws IllegalArgumentException when {@code min} is not positive or is above {@code max}.
+     */
+    public FrameRateRange(int min, int max) {
+        if (min <= 0 || min > max) {
+            throw new IllegalArgumentException("Invalid frame rate range: [" + min + ", " + max +
+                    "]");
+        }
+        mMin = min;
+        mMax = max;
+    }
+
+    public int getMin() {
+        return mMin;
+    }
+
+    public int getMax() {
+        return mMax;
+    }
+
+    /**
+     * @return {@code true} if the frame rate never changes in this range.
+     */
+    public boolean isFixed() {
+        return mMin == mMax;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        }
+        if (this == o) {
+            return true;
+        }
+        if (o instanceof FrameRateRange) {
+            FrameRateRange range = (FrameRateRange) o;
+            return mMin == range.mMin && mMax == range.mMax;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + mMin + ", " + mMax + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        // assuming most frame rates are <2^16, doing a rotate will give us perfect hashing
+        return mMax ^ ((mMin << (Integer.SIZE / 2)) | (mMin >>> (Integer.SIZE / 2)));
+    }
+
+    /**
+     * Finds the supported range closest to the requested one: the one with the smallest total
+     * distance between the bounds. Ties are broken by the narrower range, which keeps the frame
+     * rate steadier.
+     *
+     * @param requested The range requested by the app.
+     * @param supported The ranges supported by the camera.
+     * @return The closest range, or {@code null} if {@code supported} is empty.
+     */
+    @Nullable
+    static FrameRateRange closest(@NonNull FrameRateRange requested,
+            @NonNull List<FrameRateRange> supported) {
+        FrameRateRange result = null;
+        int best = Integer.MAX_VALUE;
+        for (FrameRateRange range : supported) {
+            final int distance = Math.abs(range.mMin - requested.mMin) +
+                    Math.abs(range.mMax - requested.mMax);
+            if (distance < best || (distance == best &&
+                    range.mMax - range.mMin < result.mMax - result.mMin)) {
+                best = distance;
+                result = range;
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of {@link CameraView#takePictureAsync()}.
+ *
+ * <p>The picture is delivered on the main thread, so {@link #get()} must not be called on it
+ * before the picture is taken; use {@link #addListener(Runnable, Executor)} instead.</p>
+ */
+public final class PictureFuture implements Future<PictureResult> {
+
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    /** The listeners and their executors, one after another; guarded by {@code this}. */
+    private ArrayList<Object> mListeners = new ArrayList<>();
+
+    private PictureResult mResult;
+
+    private Throwable mException;
+
+    private boolean mCancelled;
+
+    /** The thread the picture is delivered on, or {@code null} if no thread is to be checked. */
+    private final CommandQueue.Dispatcher mDeliveryThread;
+
+    PictureFuture() {
+        this(null);
+    }
+
+    /**
+     * @param deliveryThread The thread the picture is delivered on, where {@link #get()} fails
+     *                       instead of waiting forever.
+     */
+    PictureFuture(CommandQueue.Dispatcher deliveryThread) {
+        mDeliveryThread = deliveryThread;
+    }
+
+    /**
+     * Runs the {@code listener} on the {@code executor} when this is done, or right away if it is
+     * done already.
+     */
+    public void addListener(@NonNull Runnable listener, @NonNull Executor executor) {
+        synchronized (this) {
+            if (mListeners != null) {
+                mListeners.add(listener);
+                mListeners.add(executor);
+                return;
+            }
+        }
+        executor.execute(listener);
+    }
+
+    /**
+     * Discards the picture once it is taken. The capture itself cannot be stopped.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return complete(null, null, true);
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mListeners == null;
+    }
+
+    @Override
+    public PictureResult get() throws InterruptedException, ExecutionException {
+        checkNotBlockingDeliveryThread();
+        mDone.await();
+        return report();
+    }
+
+    @Override
+    public PictureResult get(long timeout, @NonNull TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        checkNotBlockingDeliveryThread();
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return report();
+    }
+
+    boolean set(PictureResult result) {
+        return complete(result, null, false);
+    }
+
+    boolean setException(Throwable exception) {
+        return complete(null, exception, false);
+    }
+
+    /**
+     * @return {@code false} if this is done already.
+     */
+    private boolean complete(PictureResult result, Throwable exception, boolean cancelled) {
+        final ArrayList<Object> listeners;
+        synchronized (this) {
+            if (mListeners == null) {
+                return false;
+            }
+            listeners = mListeners;
+            mListeners = null;
+            mResult = result;
+            mException = exception;
+            mCancelled = cancelled;
+        }
+        mDone.countDown();
+        for (int i = 0; i < listeners.size(); i += 2) {
+            ((Executor) listeners.get(i + 1)).execute((Runnable) listeners.get(i));
+        }
+        return true;
+    }
+
+    private synchronized PictureResult report() throws ExecutionException {
+        if (mCancelled) {
+            throw new CancellationException();
+        }
+        if (mException != null) {
+            throw new ExecutionException(mException);
+        }
+        return mResult;
+    }
+
+    private void checkNotBlockingDeliveryThread() {
+        if (mDeliveryThread != null && mDeliveryThread.isCurrentThread() && !isDone()) {
+            throw new IllegalStateException("The picture is delivered on this thread; "
+                    + "waiting for it here never returns.");
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * A picture taken by {@link CameraView#takePictureAsync()} or
+ * {@link CameraView#takeRawPicture(java.io.OutputStream)}, with how it was captured.
+ */
+public final class PictureResult {
+
+    private final byte[] mData;
+
+    private final Size mSize;
+
+    private final int mOrientation;
+
+    private final long mTimestamp;
+
+    private final long mExposureTime;
+
+    private final int mSensitivity;
+
+    PictureResult(byte[] data, Size size, int orientation, long timestamp, long exposureTime,
+            int sensitivity) {
+        mData = data;
+        mSize = size;
+        mOrientation = orientation;
+        mTimestamp = timestamp;
+        mExposureTime = exposureTime;
+        mSensitivity = sensitivity;
+    }
+
+    /**
+     * @return The JPEG data. It is shared with the other receivers of the picture, and must not
+     * be modified. This is {@code null} for RAW pictures, which are written to their stream
+     * instead.
+     */
+    @Nullable
+    public byte[] getData() {
+        return mData;
+    }
+
+    /**
+     * @return The size of the picture as encoded, before the orientation is applied.
+     */
+    @NonNull
+    public Size getSize() {
+        return mSize;
+    }
+
+    /**
+     * @return The clockwise rotation requested for the picture to be upright, in degrees. The
+     * camera either rotates the pixels or records it in the EXIF orientation.
+     */
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+    /**
+     * @return The time the sensor started exposing the picture, in nanoseconds, or 0 if the
+     * camera does not report it. It is comparable with the timestamps of the preview frames.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * @return The exposure time, in nanoseconds, or 0 if the camera does not report it.
+     */
+    public long getExposureTime() {
+        return mExposureTime;
+    }
+
+    /**
+     * @return The sensitivity as an ISO value, or 0 if the camera does not report it.
+     */
+    public int getSensitivity() {
+        return mSensitivity;
+    }
+
+    @Override
+    public String toString() {
+        return "PictureResult{size=" + mSize + ", orientation=" + mOrientation
+                + ", timestamp=" + mTimestamp + ", exposureTime=" + mExposureTime
+                + ", sensitivity=" + mSensitivity + ", bytes=" + mData.length + "}";
+    }
+
+}
@@ -16,6 +16,8 @@
 
 package com.google.android.cameraview;
 
+import android.os.Build;
+import android.os.SystemClock;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.View;
@@ -36,10 +38,18 @@ abstract class PreviewImpl {
 
     private int mHeight;
 
+    private final PreviewStatsTracker mStatsTracker = new PreviewStatsTracker();
+
+    private volatile Runnable mFirstFrameCallback;
+
     void setCallback(Callback callback) {
         mCallback = callback;
     }
 
+    Callback getCallback() {
+        return mCallback;
+    }
+
     abstract Surface getSurface();
 
     abstract View getView();
@@ -54,6 +64,59 @@ abstract class PreviewImpl {
         mCallback.onSurfaceChanged();
     }
 
+    /**
+     * @return {@code true} if this preview reports its displayed frames with
+     * {@link #dispatchFrameDisplayed(long)}.
+     */
+    boolean reportsFrames() {
+        return false;
+    }
+
+    /**
+     * Called by the camera when it starts capturing a preview frame. This stands in for the
+     * displayed frames of previews that cannot report them.
+     */
+    void onCameraFrame(long sensorTimestamp) {
+        if (!reportsFrames()) {
+            recordFrame(sensorTimestamp);
+        }
+    }
+
+    protected void dispatchFrameDisplayed(long sensorTimestamp) {
+        recordFrame(sensorTimestamp);
+    }
+
+    /**
+     * Sets a callback to be run once on the next frame, on the thread that reports it.
+     *
+     * @param callback The callback, or {@code null} to cancel it.
+     */
+    void setFirstFrameCallback(Runnable callback) {
+        mFirstFrameCallback = callback;
+    }
+
+    private void recordFrame(long sensorTimestamp) {
+        final Runnable firstFrameCallback = mFirstFrameCallback;
+        if (firstFrameCallback != null) {
+            mFirstFrameCallback = null;
+            firstFrameCallback.run();
+        }
+        final long now = System.nanoTime();
+        final long realtime = Build.VERSION.SDK_INT >= 17
+                ? SystemClock.elapsedRealtimeNanos()
+                : SystemClock.elapsedRealtime() * 1000000L;
+        mStatsTracker.onFrame(now,
+                PreviewStatsTracker.latencyOf(sensorTimestamp, now, realtime));
+    }
+
+    PreviewStats getStats() {
+        return mStatsTracker.snapshot(System.nanoTime());
+    }
+
+    void resetStats() {
+        mStatsTracker.reset();
+    }
+
     SurfaceHolder getSurfaceHolder() {
         return null;
     }
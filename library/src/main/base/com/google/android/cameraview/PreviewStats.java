@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of the camera preview frames over the last couple of seconds.
+ */
+public final class PreviewStats {
+
+    /** The upper bounds of the frame interval buckets, in milliseconds. */
+    private static final int[] BUCKET_BOUNDS = {12, 20, 36, 50, 70, 100, Integer.MAX_VALUE};
+
+    private final int mFrameCount;
+
+    private final float mFrameRate;
+
+    private final float mMedianInterval;
+
+    private final float mMaxInterval;
+
+    private final int mLongFrameCount;
+
+    private final int[] mBucketCounts;
+
+    private final float mLatency;
+
+    PreviewStats(int frameCount, float frameRate, float medianInterval, float maxInterval,
+            int longFrameCount, int[] bucketCounts, float latency) {
+        mFrameCount = frameCount;
+        mFrameRate = frameRate;
+        mMedianInterval = medianInterval;
+        mMaxInterval = maxInterval;
+        mLongFrameCount = longFrameCount;
+        mBucketCounts = bucketCounts;
+        mLatency = latency;
+    }
+
+    /**
+     * @return The number of frames in the window.
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return The delivered frames per second.
+     */
+    public float getFrameRate() {
+        return mFrameRate;
+    }
+
+    /**
+     * @return The median interval between frames, in milliseconds, or 0 if there are less than
+     * two frames.
+     */
+    public float getMedianInterval() {
+        return mMedianInterval;
+    }
+
+    /**
+     * @return The longest interval between frames, in milliseconds.
+     */
+    public float getMaxInterval() {
+        return mMaxInterval;
+    }
+
+    /**
+     * @return The number of frames that came more than 1.5 times the median interval after the
+     * previous one.
+     */
+    public int getLongFrameCount() {
+        return mLongFrameCount;
+    }
+
+    /**
+     * @return The number of buckets in the frame interval histogram.
+     */
+    public int getBucketCount() {
+        return BUCKET_BOUNDS.length;
+    }
+
+    /**
+     * @return The exclusive upper bound of the {@code index}th bucket, in milliseconds. The last
+     * bucket is unbounded and returns {@link Integer#MAX_VALUE}.
+     */
+    public int getBucketUpperBound(int index) {
+        return BUCKET_BOUNDS[index];
+    }
+
+    /**
+     * @return The number of frame intervals in the {@code index}th bucket.
+     */
+    public int getBucketFrameCount(int index) {
+        return mBucketCounts[index];
+    }
+
+    /**
+     * @return The mean time from the sensor exposure of a frame to its display, in
+     * milliseconds, or {@link Float#NaN} if it is not known. For previews that do not report
+     * displayed frames, this is the time to when the camera reports the frame.
+     */
+    public float getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * @return The index of the bucket for an interval of {@code intervalNanos}.
+     */
+    static int bucketOf(long intervalNanos) {
+        final long millis = intervalNanos / 1000000L;
+        for (int i = 0; i < BUCKET_BOUNDS.length - 1; i++) {
+            if (millis < BUCKET_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS.length - 1;
+    }
+
+    static int[] newBucketCounts() {
+        return new int[BUCKET_BOUNDS.length];
+    }
+
+    @Override
+    public String toString() {
+        return "PreviewStats{frames=" + mFrameCount + ", fps=" + mFrameRate
+                + ", median=" + mMedianInterval + "ms, max=" + mMaxInterval
+                + "ms, long=" + mLongFrameCount + ", histogram=" + Arrays.toString(mBucketCounts)
+                + ", latency=" + mLatency + "ms}";
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.Arrays;
+
+/**
+ * Records the times of preview frames in a ring buffer and summarizes the recent ones into
+ * {@link PreviewStats}. Recording a frame does not allocate. This is not thread-safe; it is
+ * used on the main thread.
+ */
+class PreviewStatsTracker {
+
+    /** The length of the window the statistics cover. */
+    static final long WINDOW_NANOS = 2000000000L;
+
+    /** Enough for 240 fps over the window. */
+    private static final int CAPACITY = 512;
+
+    /** A frame is long when its interval is over this times the median interval. */
+    private static final float LONG_FRAME_FACTOR = 1.5f;
+
+    /** The largest plausible latency; anything above means the clocks do not match. */
+    private static final long MAX_LATENCY_NANOS = 1000000000L;
+
+    private final long[] mTimes = new long[CAPACITY];
+
+    private final long[] mLatencies = new long[CAPACITY];
+
+    /** The index of the next frame to record. */
+    private int mHead;
+
+    private int mCount;
+
+    /**
+     * @param timeNanos    The time the frame was delivered, in {@link System#nanoTime()}.
+     * @param latencyNanos The time from the sensor exposure to the delivery, or -1 if unknown.
+     */
+    void onFrame(long timeNanos, long latencyNanos) {
+        mTimes[mHead] = timeNanos;
+        mLatencies[mHead] = latencyNanos;
+        mHead = (mHead + 1) % CAPACITY;
+        if (mCount < CAPACITY) {
+            mCount++;
+        }
+    }
+
+    void reset() {
+        mHead = 0;
+        mCount = 0;
+    }
+
+    /**
+     * @param nowNanos The current time, in {@link System#nanoTime()}.
+     */
+    PreviewStats snapshot(long nowNanos) {
+        // Walk back from the newest frame to the oldest one in the window
+        int n = 0;
+        while (n < mCount && nowNanos - mTimes[indexOf(n)] <= WINDOW_NANOS) {
+            n++;
+        }
+        final int[] buckets = PreviewStats.newBucketCounts();
+        if (n == 0) {
+            return new PreviewStats(0, 0.f, 0.f, 0.f, 0, buckets, Float.NaN);
+        }
+        final long[] intervals = new long[n - 1];
+        long latencySum = 0;
+        int latencyCount = 0;
+        for (int i = 0; i < n; i++) {
+            final int index = indexOf(i);
+            if (i < n - 1) {
+                intervals[i] = mTimes[index] - mTimes[indexOf(i + 1)];
+                buckets[PreviewStats.bucketOf(intervals[i])]++;
+            }
+            if (mLatencies[index] >= 0) {
+                latencySum += mLatencies[index];
+                latencyCount++;
+            }
+        }
+        final float latency = latencyCount == 0 ? Float.NaN
+                : latencySum / (float) latencyCount / 1000000.f;
+        if (intervals.length == 0) {
+            return new PreviewStats(1, 0.f, 0.f, 0.f, 0, buckets, latency);
+        }
+        final long span = nowNanos - mTimes[indexOf(n - 1)];
+        final float frameRate = span > 0 ? (n - 1) * 1000000000.f / span : 0.f;
+        Arrays.sort(intervals);
+        final long median = intervals[intervals.length / 2];
+        int longFrames = 0;
+        for (int i = intervals.length - 1; i >= 0 && intervals[i] > median * LONG_FRAME_FACTOR;
+                i--) {
+            longFrames++;
+        }
+        return new PreviewStats(n, frameRate, median / 1000000.f,
+                intervals[intervals.length - 1] / 1000000.f, longFrames, buckets, latency);
+    }
+
+    /**
+     * @return The index of the {@code age}th newest frame.
+     */
+    private int indexOf(int age) {
+        return (mHead - 1 - age + CAPACITY) % CAPACITY;
+    }
+
+    /**
+     * Calculates the time from the sensor exposure of a frame to now. Camera timestamps are
+     * either in the monotonic clock or in the boot time clock depending on the device, and these
+     * usually differ by far more than a plausible latency, so the one that fits is used.
+     *
+     * @param sensorTimestamp The sensor timestamp of the frame, in nanoseconds.
+     * @param monotonicNanos  The current time in {@link System#nanoTime()}.
+     * @param realtimeNanos   The current time in the boot time clock.
+     * @return The latency in nanoseconds, or -1 if it cannot be told.
+     */
+    static long latencyOf(long sensorTimestamp, long monotonicNanos, long realtimeNanos) {
+        if (sensorTimestamp <= 0) {
+            return -1;
+        }
+        long latency = monotonicNanos - sensorTimestamp;
+        if (latency >= 0 && latency <= MAX_LATENCY_NANOS) {
+            return latency;
+        }
+        latency = realtimeNanos - sensorTimestamp;
+        if (latency >= 0 && latency <= MAX_LATENCY_NANOS) {
+            return latency;
+        }
+        return -1;
+    }
+
+}
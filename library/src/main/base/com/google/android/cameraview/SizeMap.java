@@ -16,18 +16,51 @@
 
 package com.google.android.cameraview;
 
-import android.support.v4.util.ArrayMap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
 /**
  * A collection class that automatically groups {@link Size}s by their {@link AspectRatio}s.
+ *
+ * <p>Ratios are looked up in an open-addressed hash table keyed by the packed, reduced
+ * {@code (x, y)} pair, so adding a size costs a single gcd regardless of how many ratios are
+ * already known. Every size under a ratio is an integer multiple of it, which means the sizes of
+ * a ratio can be stored as a sorted {@code int[]} of widths; ordering by width is the same as
+ * ordering by area.</p>
+ *
+ * <p>Ratios that are not exactly supported can be resolved to the closest supported one with
+ * {@link Snapshot#closest(AspectRatio, float)}; sensors often report sizes such as 1920x1088
+ * that are slightly off from the ratio an app asks for.</p>
+ *
+ * <p>This class is not thread-safe and is meant to be written by the camera implementation only.
+ * Readers should work on a {@link #snapshot()}, which is immutable.</p>
  */
 class SizeMap {
 
-    private final ArrayMap<AspectRatio, SortedSet<Size>> mRatios = new ArrayMap<>();
+    private static final int INITIAL_CAPACITY = 8;
+
+    private AspectRatio[] mRatios = new AspectRatio[INITIAL_CAPACITY];
+
+    private int[][] mWidths = new int[INITIAL_CAPACITY][];
+
+    private int[] mCounts = new int[INITIAL_CAPACITY];
+
+    private int mSize;
+
+    private long[] mKeys = new long[INITIAL_CAPACITY * 2];
+
+    /** Index + 1 of the ratio stored in the slot; 0 means the slot is empty. */
+    private int[] mSlots = new int[INITIAL_CAPACITY * 2];
+
+    /** Lazily built from the current content; {@code null} when it needs to be rebuilt. */
+    private volatile Snapshot mSnapshot;
 
     /**
      * Add a new {@link Size} to this collection.
@@ -36,21 +69,30 @@ class SizeMap {
      * @return {@code true} if it is added, {@code false} if it already exists and is not added.
      */
     public boolean add(Size size) {
-        for (AspectRatio ratio : mRatios.keySet()) {
-            if (ratio.matches(size)) {
-                final SortedSet<Size> sizes = mRatios.get(ratio);
-                if (sizes.contains(size)) {
-                    return false;
-                } else {
-                    sizes.add(size);
-                    return true;
-                }
-            }
-        }
-        // None of the existing ratio matches the provided size; add a new key
-        SortedSet<Size> sizes = new TreeSet<>();
-        sizes.add(size);
-        mRatios.put(AspectRatio.of(size.getWidth(), size.getHeight()), sizes);
+        final int width = size.getWidth();
+        final int height = size.getHeight();
+        final int gcd = AspectRatio.gcd(width, height);
+        final long key = AspectRatio.pack(width / gcd, height / gcd);
+        int index = find(mKeys, mSlots, key);
+        if (index < 0) {
+            // None of the existing ratio matches the provided size; add a new key
+            index = append(AspectRatio.of(width, height), key);
+        }
+        final int count = mCounts[index];
+        int[] widths = mWidths[index];
+        int position = Arrays.binarySearch(widths, 0, count, width);
+        if (position >= 0) {
+            return false;
+        }
+        position = -(position + 1);
+        if (count == widths.length) {
+            widths = Arrays.copyOf(widths, count * 2);
+            mWidths[index] = widths;
+        }
+        System.arraycopy(widths, position, widths, position + 1, count - position);
+        widths[position] = width;
+        mCounts[index] = count + 1;
+        mSnapshot = null;
         return true;
     }
 
@@ -60,23 +102,334 @@ class SizeMap {
      * @param ratio The aspect ratio to be removed.
      */
     public void remove(AspectRatio ratio) {
-        mRatios.remove(ratio);
+        final int index = find(mKeys, mSlots, AspectRatio.pack(ratio.getX(), ratio.getY()));
+        if (index < 0) {
+            return;
+        }
+        final int moved = mSize - index - 1;
+        System.arraycopy(mRatios, index + 1, mRatios, index, moved);
+        System.arraycopy(mWidths, index + 1, mWidths, index, moved);
+        System.arraycopy(mCounts, index + 1, mCounts, index, moved);
+        mSize--;
+        mRatios[mSize] = null;
+        mWidths[mSize] = null;
+        // Indices have shifted; re-hash what is left.
+        rehash(mSlots.length);
+        mSnapshot = null;
+    }
+
+    /**
+     * Returns an immutable copy of the current content. The same instance is returned until this
+     * map is modified again.
+     */
+    @NonNull
+    Snapshot snapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            final int[][] widths = new int[mSize][];
+            for (int i = 0; i < mSize; i++) {
+                widths[i] = Arrays.copyOf(mWidths[i], mCounts[i]);
+            }
+            snapshot = new Snapshot(Arrays.copyOf(mRatios, mSize), widths, mKeys.clone(),
+                    mSlots.clone());
+            mSnapshot = snapshot;
+        }
+        return snapshot;
     }
 
     Set<AspectRatio> ratios() {
-        return mRatios.keySet();
+        return snapshot().ratios();
+    }
+
+    @Nullable
+    List<Size> sizes(AspectRatio ratio) {
+        return snapshot().sizes(ratio);
     }
 
-    SortedSet<Size> sizes(AspectRatio ratio) {
-        return mRatios.get(ratio);
+    boolean contains(AspectRatio ratio) {
+        return snapshot().contains(ratio);
     }
 
     void clear() {
-        mRatios.clear();
+        Arrays.fill(mRatios, 0, mSize, null);
+        Arrays.fill(mWidths, 0, mSize, null);
+        Arrays.fill(mSlots, 0);
+        mSize = 0;
+        mSnapshot = null;
     }
 
     boolean isEmpty() {
-        return mRatios.isEmpty();
+        return mSize == 0;
+    }
+
+    private int append(AspectRatio ratio, long key) {
+        if (mSize == mRatios.length) {
+            final int capacity = mSize * 2;
+            mRatios = Arrays.copyOf(mRatios, capacity);
+            mWidths = Arrays.copyOf(mWidths, capacity);
+            mCounts = Arrays.copyOf(mCounts, capacity);
+        }
+        final int index = mSize++;
+        mRatios[index] = ratio;
+        mWidths[index] = new int[INITIAL_CAPACITY];
+        mCounts[index] = 0;
+        if (mSize * 2 > mSlots.length) {
+            rehash(mSlots.length * 2);
+        } else {
+            insert(mKeys, mSlots, key, index);
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        mKeys = new long[capacity];
+        mSlots = new int[capacity];
+        for (int i = 0; i < mSize; i++) {
+            insert(mKeys, mSlots, AspectRatio.pack(mRatios[i].getX(), mRatios[i].getY()), i);
+        }
+    }
+
+    private static void insert(long[] keys, int[] slots, long key, int index) {
+        final int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        slots[slot] = index + 1;
+    }
+
+    /**
+     * @return The index of the ratio with the packed {@code key}, or -1 if there is none.
+     */
+    private static int find(long[] keys, int[] slots, long key) {
+        final int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != 0) {
+            if (keys[slot] == key) {
+                return slots[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * An immutable view of a {@link SizeMap}. It can be shared between threads.
+     */
+    static final class Snapshot {
+
+        private final AspectRatio[] mRatios;
+
+        /** Sorted widths of each ratio; the height is {@code width * y / x}. */
+        private final int[][] mWidths;
+
+        private final long[] mKeys;
+
+        private final int[] mSlots;
+
+        /** All the ratios sorted by {@link AspectRatio#toFloat()}. */
+        private final AspectRatio[] mSortedRatios;
+
+        /** The float values of {@link #mSortedRatios}. */
+        private final float[] mSortedValues;
+
+        private final Set<AspectRatio> mRatioSet = new AbstractSet<AspectRatio>() {
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof AspectRatio && Snapshot.this.contains((AspectRatio) o);
+            }
+
+            @NonNull
+            @Override
+            public Iterator<AspectRatio> iterator() {
+                return Collections.unmodifiableList(Arrays.asList(mRatios)).iterator();
+            }
+
+            @Override
+            public int size() {
+                return mRatios.length;
+            }
+
+        };
+
+        Snapshot(AspectRatio[] ratios, int[][] widths, long[] keys, int[] slots) {
+            mRatios = ratios;
+            mWidths = widths;
+            mKeys = keys;
+            mSlots = slots;
+            mSortedRatios = ratios.clone();
+            Arrays.sort(mSortedRatios);
+            mSortedValues = new float[mSortedRatios.length];
+            for (int i = 0; i < mSortedRatios.length; i++) {
+                mSortedValues[i] = mSortedRatios[i].toFloat();
+            }
+        }
+
+        /**
+         * @return An unmodifiable set of all the aspect ratios.
+         */
+        Set<AspectRatio> ratios() {
+            return mRatioSet;
+        }
+
+        boolean contains(AspectRatio ratio) {
+            return indexOf(ratio) >= 0;
+        }
+
+        boolean isEmpty() {
+            return mRatios.length == 0;
+        }
+
+        /**
+         * @return All the sizes of the {@code ratio} from the smallest to the largest, or
+         * {@code null} if the ratio is not in this map.
+         */
+        @Nullable
+        List<Size> sizes(AspectRatio ratio) {
+            final int index = indexOf(ratio);
+            if (index < 0) {
+                return null;
+            }
+            final int[] widths = mWidths[index];
+            final Size[] sizes = new Size[widths.length];
+            for (int i = 0; i < widths.length; i++) {
+                sizes[i] = toSize(ratio, widths[i]);
+            }
+            return Collections.unmodifiableList(Arrays.asList(sizes));
+        }
+
+        /**
+         * @return The smallest size of the {@code ratio}, or {@code null} if there is none.
+         */
+        @Nullable
+        Size smallest(AspectRatio ratio) {
+            final int index = indexOf(ratio);
+            return index < 0 ? null : toSize(ratio, mWidths[index][0]);
+        }
+
+        /**
+         * @return The largest size of the {@code ratio}, or {@code null} if there is none.
+         */
+        @Nullable
+        Size largest(AspectRatio ratio) {
+            final int index = indexOf(ratio);
+            if (index < 0) {
+                return null;
+            }
+            final int[] widths = mWidths[index];
+            return toSize(ratio, widths[widths.length - 1]);
+        }
+
+        /**
+         * Finds the smallest size of the {@code ratio} that is at least {@code width} by
+         * {@code height}.
+         *
+         * @return The size, or {@code null} if none of the sizes is big enough.
+         */
+        @Nullable
+        Size ceiling(AspectRatio ratio, int width, int height) {
+            final int index = indexOf(ratio);
+            if (index < 0) {
+                return null;
+            }
+            final int[] widths = mWidths[index];
+            // The height of a size is width * y / x; turn the height requirement into a width.
+            final long x = ratio.getX();
+            final long y = ratio.getY();
+            final long required = Math.max(width, (height * x + y - 1) / y);
+            if (required > widths[widths.length - 1]) {
+                return null;
+            }
+            int position = Arrays.binarySearch(widths, (int) required);
+            if (position < 0) {
+                position = -(position + 1);
+            }
+            return toSize(ratio, widths[position]);
+        }
+
+        /**
+         * Finds the largest size of the {@code ratio} that is at most {@code width} by
+         * {@code height}.
+         *
+         * @return The size, or {@code null} if none of the sizes is small enough.
+         */
+        @Nullable
+        Size floor(AspectRatio ratio, int width, int height) {
+            final int index = indexOf(ratio);
+            if (index < 0) {
+                return null;
+            }
+            final int[] widths = mWidths[index];
+            // As in ceiling(), turn the height limit into a width
+            final long allowed = Math.min(width, height * (long) ratio.getX() / ratio.getY());
+            if (allowed < widths[0]) {
+                return null;
+            }
+            int position = Arrays.binarySearch(widths, (int) allowed);
+            if (position < 0) {
+                position = -(position + 1) - 1;
+            }
+            return toSize(ratio, widths[position]);
+        }
+
+        /**
+         * Finds the supported ratio closest to {@code ratio}.
+         *
+         * @param ratio     The requested aspect ratio.
+         * @param tolerance The maximum difference allowed between the requested and the found
+         *                  ratios, relative to the requested one. For example, {@code 0.01f}
+         *                  accepts ratios within 1%. Pass {@link Float#POSITIVE_INFINITY} to
+         *                  always get the closest one.
+         * @return {@code ratio} itself if it is supported, the closest supported ratio within
+         * {@code tolerance}, or {@code null} if there is none.
+         */
+        @Nullable
+        AspectRatio closest(AspectRatio ratio, float tolerance) {
+            if (contains(ratio)) {
+                return ratio;
+            }
+            final int count = mSortedValues.length;
+            if (count == 0) {
+                return null;
+            }
+            final float value = ratio.toFloat();
+            int position = Arrays.binarySearch(mSortedValues, value);
+            if (position >= 0) {
+                return mSortedRatios[position];
+            }
+            position = -(position + 1);
+            // The closest one is either right below or right above the requested value.
+            int closest;
+            if (position == 0) {
+                closest = 0;
+            } else if (position == count) {
+                closest = count - 1;
+            } else if (value - mSortedValues[position - 1] <= mSortedValues[position] - value) {
+                closest = position - 1;
+            } else {
+                closest = position;
+            }
+            if (Math.abs(mSortedValues[closest] - value) > value * tolerance) {
+                return null;
+            }
+            return mSortedRatios[closest];
+        }
+
+        private int indexOf(AspectRatio ratio) {
+            return find(mKeys, mSlots, AspectRatio.pack(ratio.getX(), ratio.getY()));
+        }
+
+        private static Size toSize(AspectRatio ratio, int width) {
+            return new Size(width, width / ratio.getX() * ratio.getY());
+        }
+
     }
 
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * Chooses the size of a camera stream among the ones supported for the current aspect ratio.
+ *
+ * @see CameraView#setPreviewSizeSelector(SizeSelector)
+ * @see CameraView#setPictureSizeSelector(SizeSelector)
+ * @see SizeSelectors
+ */
+public interface SizeSelector {
+
+    /**
+     * Chooses one of the {@code candidates}.
+     *
+     * @param candidates The supported sizes, from the cheapest to the most expensive in pixels per
+     *                   second. This is never empty.
+     * @param target     The size of the preview surface in the orientation of the camera sensor,
+     *                   or 0x0 if the preview is not laid out yet.
+     * @return The size of one of the {@code candidates}.
+     */
+    @NonNull
+    Size select(@NonNull List<Candidate> candidates, @NonNull Size target);
+
+    /**
+     * A size that a {@link SizeSelector} can choose, along with its cost.
+     */
+    final class Candidate {
+
+        private final Size mSize;
+
+        private final int mMaxFrameRate;
+
+        /**
+         * @param size         The size of the stream.
+         * @param maxFrameRate The highest frame rate the camera can stream this size at.
+         */
+        public Candidate(@NonNull Size size, int maxFrameRate) {
+            mSize = size;
+            mMaxFrameRate = maxFrameRate;
+        }
+
+        @NonNull
+        public Size getSize() {
+            return mSize;
+        }
+
+        public int getMaxFrameRate() {
+            return mMaxFrameRate;
+        }
+
+        /**
+         * @return The number of pixels per second this size streams at its highest frame rate;
+         * this approximates the memory bandwidth and the power it costs.
+         */
+        public long getCost() {
+            return (long) mSize.getWidth() * mSize.getHeight() * mMaxFrameRate;
+        }
+
+        @Override
+        public String toString() {
+            return mSize + "@" + mMaxFrameRate;
+        }
+
+    }
+
+}
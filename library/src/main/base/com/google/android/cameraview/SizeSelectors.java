@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Built-in {@link SizeSelector}s.
+ */
+public final class SizeSelectors {
+
+    private static final Comparator<SizeSelector.Candidate> BY_COST
+            = new Comparator<SizeSelector.Candidate>() {
+        @Override
+        public int compare(SizeSelector.Candidate a, SizeSelector.Candidate b) {
+            final long diff = a.getCost() - b.getCost();
+            if (diff == 0) {
+                return area(a) < area(b) ? -1 : (area(a) == area(b) ? 0 : 1);
+            }
+            return diff < 0 ? -1 : 1;
+        }
+    };
+
+    /**
+     * The cheapest size that is at least as large as the preview surface. If none of them is
+     * large enough, the cheapest one.
+     */
+    @NonNull
+    public static SizeSelector minimumBandwidth() {
+        return new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Candidate> candidates, @NonNull Size target) {
+                for (Candidate candidate : candidates) { // From the cheapest
+                    if (covers(candidate, target)) {
+                        return candidate.getSize();
+                    }
+                }
+                return candidates.get(0).getSize();
+            }
+        };
+    }
+
+    /**
+     * The size with the number of pixels closest to the preview surface, whether it is larger or
+     * smaller.
+     */
+    @NonNull
+    public static SizeSelector matchDisplay() {
+        return new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Candidate> candidates, @NonNull Size target) {
+                final long targetArea = (long) target.getWidth() * target.getHeight();
+                Candidate result = null;
+                double best = Double.MAX_VALUE;
+                for (Candidate candidate : candidates) {
+                    // Compare the scale, so that 2x larger and 2x smaller are equally far
+                    final double distance = targetArea == 0 ? area(candidate)
+                            : Math.abs(Math.log((double) area(candidate) / targetArea));
+                    if (distance < best || (distance == best && area(candidate) > area(result))) {
+                        best = distance;
+                        result = candidate;
+                    }
+                }
+                return result.getSize();
+            }
+        };
+    }
+
+    /**
+     * The largest size that does not exceed {@code megapixels}. If all of them exceed it, the
+     * smallest one.
+     *
+     * @param megapixels The maximum number of pixels, in millions.
+     */
+    @NonNull
+    public static SizeSelector maxResolution(final float megapixels) {
+        if (megapixels <= 0) {
+            throw new IllegalArgumentException("megapixels must be positive: " + megapixels);
+        }
+        final double limit = megapixels * 1e6;
+        return new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Candidate> candidates, @NonNull Size target) {
+                Candidate largest = null;
+                Candidate smallest = null;
+                for (Candidate candidate : candidates) {
+                    final long area = area(candidate);
+                    if (area <= limit && (largest == null || area > area(largest))) {
+                        largest = candidate;
+                    }
+                    if (smallest == null || area < area(smallest)) {
+                        smallest = candidate;
+                    }
+                }
+                return (largest != null ? largest : smallest).getSize();
+            }
+        };
+    }
+
+    /**
+     * Among the sizes with the highest frame rate, the cheapest one that is at least as large as
+     * the preview surface. If none of them is large enough, the largest one.
+     */
+    @NonNull
+    public static SizeSelector maxFrameRate() {
+        return new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Candidate> candidates, @NonNull Size target) {
+                int maxFrameRate = 0;
+                for (Candidate candidate : candidates) {
+                    maxFrameRate = Math.max(maxFrameRate, candidate.getMaxFrameRate());
+                }
+                Candidate largest = null;
+                for (Candidate candidate : candidates) { // From the cheapest
+                    if (candidate.getMaxFrameRate() != maxFrameRate) {
+                        continue;
+                    }
+                    if (covers(candidate, target)) {
+                        return candidate.getSize();
+                    }
+                    if (largest == null || area(candidate) > area(largest)) {
+                        largest = candidate;
+                    }
+                }
+                //noinspection ConstantConditions
+                return largest.getSize();
+            }
+        };
+    }
+
+    /**
+     * Ranks the {@code candidates} by their cost and lets the {@code selector} choose one.
+     *
+     * @throws IllegalStateException if the selector returns a size that is not a candidate.
+     */
+    static Size select(SizeSelector selector, List<SizeSelector.Candidate> candidates,
+            Size target) {
+        final List<SizeSelector.Candidate> ranked = new ArrayList<>(candidates);
+        Collections.sort(ranked, BY_COST);
+        final Size size = selector.select(Collections.unmodifiableList(ranked), target);
+        for (SizeSelector.Candidate candidate : ranked) {
+            if (candidate.getSize().equals(size)) {
+                return size;
+            }
+        }
+        throw new IllegalStateException(selector + " returned " + size +
+                ", which is not one of " + ranked);
+    }
+
+    private static long area(SizeSelector.Candidate candidate) {
+        return (long) candidate.getSize().getWidth() * candidate.getSize().getHeight();
+    }
+
+    private static boolean covers(SizeSelector.Candidate candidate, Size target) {
+        return candidate.getSize().getWidth() >= target.getWidth() &&
+                candidate.getSize().getHeight() >= target.getHeight();
+    }
+
+    private SizeSelectors() {
+    }
+
+}
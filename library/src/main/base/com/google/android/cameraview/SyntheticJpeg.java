@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Builds valid baseline JPEG files of a flat gray image in plain Java, without a codec. Every
+ * 8x8 block is coded in two bits, so a picture of any size is built in linear time.
+ */
+final class SyntheticJpeg {
+
+    private static final byte[] HEADER_QUANTIZATION = {
+            (byte) 0xFF, (byte) 0xDB, 0, 67, 0,
+    };
+
+    /** A DC table and an AC table, each with a single one-bit code for difference 0 and EOB. */
+    private static final byte[] HUFFMAN_TABLES = {
+            (byte) 0xFF, (byte) 0xC4, 0, 20, 0x00,
+            1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0,
+            (byte) 0xFF, (byte) 0xC4, 0, 20, 0x10,
+            1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0,
+    };
+
+    private static final byte[] START_OF_SCAN = {
+            (byte) 0xFF, (byte) 0xDA, 0, 8, 1, 1, 0x00, 0, 63, 0,
+    };
+
+    private SyntheticJpeg() {
+    }
+
+    /**
+     * @return A grayscale JPEG file of {@code width} by {@code height} pixels.
+     */
+    static byte[] create(int width, int height) {
+        final long blocks = (long) ((width + 7) / 8) * ((height + 7) / 8);
+        final long bits = blocks * 2;
+        final int scanLength = (int) ((bits + 7) / 8);
+        final int length = 2 + HEADER_QUANTIZATION.length + 64 + 13 + HUFFMAN_TABLES.length
+                + START_OF_SCAN.length + scanLength + 2;
+        final byte[] jpeg = new byte[length];
+        int i = 0;
+        // Start of image
+        jpeg[i++] = (byte) 0xFF;
+        jpeg[i++] = (byte) 0xD8;
+        // A table of ones, so that the coefficients are taken as they are
+        System.arraycopy(HEADER_QUANTIZATION, 0, jpeg, i, HEADER_QUANTIZATION.length);
+        i += HEADER_QUANTIZATION.length;
+        for (int j = 0; j < 64; j++) {
+            jpeg[i++] = 1;
+        }
+        // Start of frame: 8 bits, one component with no subsampling
+        final byte[] frame = {
+                (byte) 0xFF, (byte) 0xC0, 0, 11, 8,
+                (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width,
+                1, 1, 0x11, 0,
+        };
+        System.arraycopy(frame, 0, jpeg, i, frame.length);
+        i += frame.length;
+        System.arraycopy(HUFFMAN_TABLES, 0, jpeg, i, HUFFMAN_TABLES.length);
+        i += HUFFMAN_TABLES.length;
+        System.arraycopy(START_OF_SCAN, 0, jpeg, i, START_OF_SCAN.length);
+        i += START_OF_SCAN.length;
+        // The scan is all zero bits, padded with ones to the byte
+        i += scanLength;
+        final int padding = (int) (scanLength * 8L - bits);
+        if (padding > 0) {
+            jpeg[i - 1] = (byte) ((1 << padding) - 1);
+        }
+        // End of image
+        jpeg[i++] = (byte) 0xFF;
+        jpeg[i] = (byte) 0xD9;
+        return jpeg;
+    }
+
+}
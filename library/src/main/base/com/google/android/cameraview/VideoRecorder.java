@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.media.CamcorderProfile;
+import android.media.MediaRecorder;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Configures a {@link MediaRecorder} the same way for both camera APIs. The camera specific part,
+ * the video source, is set on {@link #getMediaRecorder()} before {@link #prepare}.
+ */
+class VideoRecorder {
+
+    private static final String TAG = "VideoRecorder";
+
+    private final MediaRecorder mMediaRecorder = new MediaRecorder();
+
+    private final File mFile;
+
+    private final boolean mAudio;
+
+    private boolean mStarted;
+
+    /**
+     * @param file  The output file.
+     * @param audio {@code true} to record audio from the camcorder microphone.
+     */
+    VideoRecorder(File file, boolean audio) {
+        mFile = file;
+        mAudio = audio;
+        if (audio) {
+            mMediaRecorder.setAudioSource(MediaRecorder.AudioSource.CAMCORDER);
+        }
+    }
+
+    MediaRecorder getMediaRecorder() {
+        return mMediaRecorder;
+    }
+
+    File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Configures the output after the video source is set.
+     *
+     * @param profile     The profile to take the codecs and the bit rates from.
+     * @param size        The video size, which can differ from the one of the {@code profile}.
+     * @param orientation The clockwise rotation of the video for playback, in degrees.
+     */
+    void prepare(CamcorderProfile profile, Size size, int orientation) throws IOException {
+        mMediaRecorder.setOutputFormat(profile.fileFormat);
+        mMediaRecorder.setOutputFile(mFile.getAbsolutePath());
+        mMediaRecorder.setVideoFrameRate(profile.videoFrameRate);
+        mMediaRecorder.setVideoSize(size.getWidth(), size.getHeight());
+        mMediaRecorder.setVideoEncodingBitRate(scaleBitRate(profile.videoBitRate,
+                profile.videoFrameWidth * profile.videoFrameHeight,
+                size.getWidth() * size.getHeight()));
+        mMediaRecorder.setVideoEncoder(profile.videoCodec);
+        if (mAudio) {
+            mMediaRecorder.setAudioEncodingBitRate(profile.audioBitRate);
+            mMediaRecorder.setAudioChannels(profile.audioChannels);
+            mMediaRecorder.setAudioSamplingRate(profile.audioSampleRate);
+            mMediaRecorder.setAudioEncoder(profile.audioCodec);
+        }
+        mMediaRecorder.setOrientationHint(orientation);
+        mMediaRecorder.prepare();
+    }
+
+    /**
+     * Starts recording. This does nothing if it is already started.
+     */
+    void start() {
+        if (!mStarted) {
+            mMediaRecorder.start();
+            mStarted = true;
+        }
+    }
+
+    boolean isStarted() {
+        return mStarted;
+    }
+
+    /**
+     * Stops recording, if started, and releases the recorder. The output file is deleted when
+     * nothing was recorded.
+     *
+     * @return {@code true} if the output file has a valid video.
+     */
+    boolean stop() {
+        boolean recorded = false;
+        if (mStarted) {
+            try {
+                mMediaRecorder.stop();
+                recorded = true;
+            } catch (RuntimeException e) {
+                // Thrown when no valid frames were received
+                Log.w(TAG, "Nothing was recorded to " + mFile, e);
+            }
+            mStarted = false;
+        }
+        mMediaRecorder.release();
+        if (!recorded && mFile.exists() && !mFile.delete()) {
+            Log.w(TAG, "Failed to delete " + mFile);
+        }
+        return recorded;
+    }
+
+    static boolean hasAudioPermission(Context context) {
+        return context.checkCallingOrSelfPermission(Manifest.permission.RECORD_AUDIO)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * @return The highest quality profile of the camera, or of the default camera if the camera
+     * does not have its own.
+     */
+    static CamcorderProfile getProfile(int cameraId) {
+        if (cameraId >= 0 && CamcorderProfile.hasProfile(cameraId, CamcorderProfile.QUALITY_HIGH)) {
+            return CamcorderProfile.get(cameraId, CamcorderProfile.QUALITY_HIGH);
+        }
+        return CamcorderProfile.get(CamcorderProfile.QUALITY_HIGH);
+    }
+
+    /**
+     * Chooses a video size of the ratio closest to {@code ratio}. The largest size that fits in
+     * {@code maxWidth} x {@code maxHeight}, in either orientation, is preferred; otherwise the
+     * smallest one is chosen.
+     *
+     * @return The chosen size, or {@code null} if {@code sizes} is empty.
+     */
+    static Size chooseSize(SizeMap.Snapshot sizes, AspectRatio ratio, int maxWidth,
+            int maxHeight) {
+        final AspectRatio closest = sizes.closest(ratio, Float.POSITIVE_INFINITY);
+        if (closest == null) {
+            return null;
+        }
+        final int maxLong = Math.max(maxWidth, maxHeight);
+        final int maxShort = Math.min(maxWidth, maxHeight);
+        final List<Size> candidates = sizes.sizes(closest);
+        Size result = null;
+        // The sizes are in ascending order
+        for (Size size : candidates) {
+            final int w = size.getWidth();
+            final int h = size.getHeight();
+            if (Math.max(w, h) > maxLong || Math.min(w, h) > maxShort) {
+                break;
+            }
+            result = size;
+        }
+        return result != null ? result : candidates.get(0);
+    }
+
+    /**
+     * Scales the bit rate of a profile to a video size of a different number of pixels.
+     */
+    static int scaleBitRate(int bitRate, int profilePixels, int pixels) {
+        if (profilePixels <= 0 || pixels == profilePixels) {
+            return bitRate;
+        }
+        return (int) Math.max(1, (long) bitRate * pixels / profilePixels);
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Chooses the camera API that {@link CameraView}s use on this device. This is consulted when a
+ * {@link CameraView} is created, so that the preview suits the chosen API.
+ *
+ * <p>Ship your own allowlist or denylist by checking {@link android.os.Build#MODEL} and
+ * delegating the rest to {@link BackendSelectors#adaptive()}.</p>
+ *
+ * @see CameraView#setBackendSelector(BackendSelector)
+ */
+public interface BackendSelector {
+
+    /**
+     * @param stats The startup times measured on this device.
+     * @return Either {@link CameraView#BACKEND_CAMERA1} or {@link CameraView#BACKEND_CAMERA2}.
+     * Camera2 is only used if the device supports it.
+     */
+    @CameraView.Backend
+    int select(@NonNull BackendStats stats);
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Built-in {@link BackendSelector}s.
+ */
+public final class BackendSelectors {
+
+    /** The number of startups to measure for each backend before comparing them. */
+    static final int MIN_SAMPLES = 3;
+
+    /**
+     * Measures a few startups of Camera2 and then of Camera1, and chooses the one that reaches
+     * the first preview frame faster in the median from then on.
+     */
+    @NonNull
+    public static BackendSelector adaptive() {
+        return new BackendSelector() {
+            @Override
+            public int select(@NonNull BackendStats stats) {
+                if (stats.getSampleCount(CameraView.BACKEND_CAMERA2) < MIN_SAMPLES) {
+                    return CameraView.BACKEND_CAMERA2;
+                }
+                if (stats.getSampleCount(CameraView.BACKEND_CAMERA1) < MIN_SAMPLES) {
+                    return CameraView.BACKEND_CAMERA1;
+                }
+                return stats.getMedianStartupTime(CameraView.BACKEND_CAMERA1)
+                        < stats.getMedianStartupTime(CameraView.BACKEND_CAMERA2)
+                        ? CameraView.BACKEND_CAMERA1 : CameraView.BACKEND_CAMERA2;
+            }
+        };
+    }
+
+    private BackendSelectors() {
+    }
+
+}
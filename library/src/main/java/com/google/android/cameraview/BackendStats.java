@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+import java.util.Arrays;
+
+/**
+ * The startup times of the camera backends measured on this device, from
+ * {@link CameraView#start()} to the first preview frame. The latest few of each backend are
+ * persisted, and they are discarded when the system is updated.
+ */
+public final class BackendStats {
+
+    /** The number of the latest startup times kept for each backend. */
+    static final int MAX_SAMPLES = 8;
+
+    private static final String PREFERENCES = "com.google.android.cameraview.BackendStats";
+
+    private static final String KEY_FINGERPRINT = "fingerprint";
+
+    private static final String KEY_SAMPLES = "samples_";
+
+    private static BackendStats sInstance;
+
+    /** {@code null} to keep the samples in memory. */
+    private final SharedPreferences mPreferences;
+
+    /** The samples of {@link Constants#BACKEND_CAMERA1} and {@link Constants#BACKEND_CAMERA2}. */
+    private final int[][] mSamples = new int[2][];
+
+    BackendStats(SharedPreferences preferences) {
+        mPreferences = preferences;
+        if (preferences != null &&
+                Build.FINGERPRINT.equals(preferences.getString(KEY_FINGERPRINT, null))) {
+            mSamples[0] = parse(preferences.getString(KEY_SAMPLES + Constants.BACKEND_CAMERA1, ""));
+            mSamples[1] = parse(preferences.getString(KEY_SAMPLES + Constants.BACKEND_CAMERA2, ""));
+        } else {
+            mSamples[0] = new int[0];
+            mSamples[1] = new int[0];
+        }
+    }
+
+    /**
+     * @return The stats of this device, loaded once for the process.
+     */
+    static BackendStats get(Context context) {
+        if (sInstance == null) {
+            sInstance = new BackendStats(context.getApplicationContext()
+                    .getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE));
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return The number of startup times kept for the {@code backend}.
+     */
+    public int getSampleCount(@CameraView.Backend int backend) {
+        return samplesOf(backend).length;
+    }
+
+    /**
+     * @return The median of the startup times kept for the {@code backend}, in milliseconds, or
+     * -1 if there are none.
+     */
+    public int getMedianStartupTime(@CameraView.Backend int backend) {
+        final int[] samples = samplesOf(backend);
+        if (samples.length == 0) {
+            return -1;
+        }
+        final int[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * Adds a startup time of the {@code backend}, dropping the oldest one when there are
+     * {@link #MAX_SAMPLES}.
+     */
+    void record(int backend, int millis) {
+        final int index = indexOf(backend);
+        final int[] samples = mSamples[index];
+        final int[] updated;
+        if (samples.length < MAX_SAMPLES) {
+            updated = Arrays.copyOf(samples, samples.length + 1);
+        } else {
+            updated = new int[MAX_SAMPLES];
+            System.arraycopy(samples, 1, updated, 0, MAX_SAMPLES - 1);
+        }
+        updated[updated.length - 1] = millis;
+        mSamples[index] = updated;
+        if (mPreferences != null) {
+            mPreferences.edit()
+                    .putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+                    .putString(KEY_SAMPLES + Constants.BACKEND_CAMERA1, format(mSamples[0]))
+                    .putString(KEY_SAMPLES + Constants.BACKEND_CAMERA2, format(mSamples[1]))
+                    .apply();
+        }
+    }
+
+    private int[] samplesOf(int backend) {
+        return mSamples[indexOf(backend)];
+    }
+
+    private static int indexOf(int backend) {
+        switch (backend) {
+            case Constants.BACKEND_CAMERA1:
+                return 0;
+            case Constants.BACKEND_CAMERA2:
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+    }
+
+    /**
+     * Parses comma-separated samples, ignoring malformed ones.
+     */
+    static int[] parse(String s) {
+        if (s == null || s.isEmpty()) {
+            return new int[0];
+        }
+        final String[] parts = s.split(",");
+        final int[] samples = new int[Math.min(parts.length, MAX_SAMPLES)];
+        int count = 0;
+        for (int i = parts.length - samples.length; i < parts.length; i++) {
+            try {
+                samples[count] = Integer.parseInt(parts[i]);
+                count++;
+            } catch (NumberFormatException e) {
+                // Skip it
+            }
+        }
+        return count == samples.length ? samples : Arrays.copyOf(samples, count);
+    }
+
+    static String format(int[] samples) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < samples.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(samples[i]);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "BackendStats{camera1=" + Arrays.toString(mSamples[0])
+                + ", camera2=" + Arrays.toString(mSamples[1]) + "}";
+    }
+
+}
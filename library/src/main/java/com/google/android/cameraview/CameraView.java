@@ -18,21 +18,30 @@ package com.google.android.cameraview;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.ContextWrapper;
 import android.content.res.TypedArray;
 import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
+import android.view.Surface;
 import android.widget.FrameLayout;
 
+import java.io.File;
+import java.io.OutputStream;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CameraView extends FrameLayout {
 
@@ -68,14 +77,155 @@ public class CameraView extends FrameLayout {
     public @interface Flash {
     }
 
+    /** The {@link android.hardware.Camera} API. */
+    public static final int BACKEND_CAMERA1 = Constants.BACKEND_CAMERA1;
+
+    /** The {@link android.hardware.camera2} API. */
+    public static final int BACKEND_CAMERA2 = Constants.BACKEND_CAMERA2;
+
+    /** A synthetic camera without hardware; see {@link #setFakeCameraProfile}. */
+    public static final int BACKEND_FAKE = Constants.BACKEND_FAKE;
+
+    /** The camera API that drives a {@link CameraView}. */
+    @IntDef({BACKEND_CAMERA1, BACKEND_CAMERA2, BACKEND_FAKE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Backend {
+    }
+
+    /** Fails the pictures requested beyond the capture queue with a rejection. */
+    public static final int CAPTURE_OVERFLOW_REJECT = Constants.CAPTURE_OVERFLOW_REJECT;
+
+    /** Hands the pictures requested beyond the capture queue the latest picture in it. */
+    public static final int CAPTURE_OVERFLOW_COALESCE = Constants.CAPTURE_OVERFLOW_COALESCE;
+
+    /** Blocks the threads requesting pictures beyond the capture queue until there is room. */
+    public static final int CAPTURE_OVERFLOW_WAIT = Constants.CAPTURE_OVERFLOW_WAIT;
+
+    /** What happens to a picture requested when the capture queue is full. */
+    @IntDef({CAPTURE_OVERFLOW_REJECT, CAPTURE_OVERFLOW_COALESCE, CAPTURE_OVERFLOW_WAIT})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface CaptureOverflow {
+    }
+
+    private static BackendSelector sBackendSelector;
+
+    private static FakeCameraProfile sFakeCameraProfile;
+
+    /**
+     * The key of {@link #mCommands} for {@link #start()} and {@link #stop()}. The keys below 10
+     * are those of the commands of {@link CameraViewImpl}, which share the queue.
+     */
+    private static final int COMMAND_LIFECYCLE = 10;
+
+    private static final int COMMAND_FACING = 11;
+
+    private static final int COMMAND_ASPECT_RATIO = 12;
+
+    private static final int COMMAND_AUTO_FOCUS = 13;
+
+    private static final int COMMAND_FLASH = 14;
+
+    private static final int COMMAND_ASPECT_RATIO_TOLERANCE = 15;
+
+    private static final int COMMAND_PREVIEW_SIZE_SELECTOR = 16;
+
+    private static final int COMMAND_PICTURE_SIZE_SELECTOR = 17;
+
+    private static final int COMMAND_FRAME_RATE_RANGE = 18;
+
+    private static final int COMMAND_JPEG_QUALITY = 19;
+
+    private static final int COMMAND_JPEG_THUMBNAIL_SIZE = 20;
+
+    private static final int COMMAND_JPEG_THUMBNAIL_QUALITY = 21;
+
+    private static final int COMMAND_YUV_CAPTURE = 22;
+
+    private static final int COMMAND_RAW_CAPTURE = 23;
+
+    /**
+     * The queue of {@link #mImpl}. The calls made on other threads are applied in it on the main
+     * thread, in order with each other and with the commands of the camera.
+     */
+    private volatile CommandQueue mCommands;
+
+    /** The number of calls made on other threads and not applied yet. */
+    private final AtomicInteger mPendingCalls = new AtomicInteger();
+
+    /** Bounds the pictures requested and not yet taken. */
+    private final CaptureQueue mCaptureQueue = new CaptureQueue();
+
+    private final Runnable mStart = new Runnable() {
+        @Override
+        public void run() {
+            startCamera();
+        }
+    };
+
+    private final Runnable mStop = new Runnable() {
+        @Override
+        public void run() {
+            stopCamera();
+        }
+    };
+
     CameraViewImpl mImpl;
 
     private final CallbackBridge mCallbacks;
 
     private boolean mAdjustViewBounds;
 
+    private boolean mRetainCamera;
+
+    /** Whether the camera was released by the idle timeout of a paused preview. */
+    private boolean mReleasedWhilePaused;
+
+    private final Runnable mIdleRelease = new Runnable() {
+        @Override
+        public void run() {
+            if (mImpl.isPreviewPaused()) {
+                mImpl.stop();
+                mReleasedWhilePaused = true;
+            }
+        }
+    };
+
     private final DisplayOrientationDetector mDisplayOrientationDetector;
 
+    /** The time {@link #start()} was called while measuring the startup time. */
+    private long mStartTime;
+
+    private final Runnable mFirstFrame = new Runnable() {
+        @Override
+        public void run() {
+            // This comes from the thread that reports the frames
+            final int millis = (int) (SystemClock.elapsedRealtime() - mStartTime);
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    BackendStats.get(getContext()).record(getBackend(), millis);
+                }
+            });
+        }
+    };
+
+    private PreviewStatsListener mPreviewStatsListener;
+
+    private long mPreviewStatsInterval;
+
+    private final Runnable mPreviewStatsReporter = new Runnable() {
+        @Override
+        public void run() {
+            if (mPreviewStatsListener == null) {
+                return;
+            }
+            if (isCameraOpened()) {
+                mPreviewStatsListener.onPreviewStats(CameraView.this, getPreviewStats());
+            }
+            postDelayed(this, mPreviewStatsInterval);
+        }
+    };
+
     public CameraView(Context context) {
         this(context, null);
     }
@@ -92,16 +242,21 @@ public class CameraView extends FrameLayout {
             mDisplayOrientationDetector = null;
             return;
         }
-        // Internal setup
-        final PreviewImpl preview = createPreviewImpl(context);
+        // Internal setup; choose the implementation before the preview is inflated
         mCallbacks = new CallbackBridge();
-        if (Build.VERSION.SDK_INT < 21) {
+        final PreviewImpl preview = createPreviewImpl(context);
+        if (sFakeCameraProfile != null) {
+            mImpl = new FakeCamera(mCallbacks, preview, sFakeCameraProfile);
+        } else if (Build.VERSION.SDK_INT < 21 || !Camera2.isUsable(context)
+                || (sBackendSelector != null && sBackendSelector.select(
+                BackendStats.get(context)) == BACKEND_CAMERA1)) {
             mImpl = new Camera1(mCallbacks, preview);
         } else if (Build.VERSION.SDK_INT < 23) {
             mImpl = new Camera2(mCallbacks, preview, context);
         } else {
             mImpl = new Camera2Api23(mCallbacks, preview, context);
         }
+        mCommands = mImpl.getCommandQueue();
         // Attributes
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.CameraView, defStyleAttr,
                 R.style.Widget_CameraView);
@@ -217,8 +372,10 @@ public class CameraView extends FrameLayout {
         SavedState state = new SavedState(super.onSaveInstanceState());
         state.facing = getFacing();
         state.ratio = getAspectRatio();
+        state.ratioTolerance = getAspectRatioTolerance();
         state.autoFocus = getAutoFocus();
         state.flash = getFlash();
+        state.retainCamera = mRetainCamera;
         return state;
     }
 
@@ -231,24 +388,84 @@ public class CameraView extends FrameLayout {
         SavedState ss = (SavedState) state;
         super.onRestoreInstanceState(ss.getSuperState());
         setFacing(ss.facing);
+        setAspectRatioTolerance(ss.ratioTolerance);
         setAspectRatio(ss.ratio);
         setAutoFocus(ss.autoFocus);
         setFlash(ss.flash);
+        mRetainCamera = ss.retainCamera;
     }
 
     /**
      * Open a camera device and start showing camera preview. This is typically called from
      * {@link Activity#onResume()}.
+     *
+     * <p>This, {@link #stop()}, {@link #takePictureAsync()}, {@link #takePicture()},
+     * {@link #takeRawPicture(OutputStream)} and the setters of the facing, aspect ratio and its
+     * tolerance, size selectors, frame rate range, auto-focus, flash, JPEG settings, YUV capture
+     * and RAW capture can be called from any thread. Calls from other threads are applied on the
+     * main thread, and all the calls are applied in the order they are made: a call on the main
+     * thread first applies the ones made before it on other threads. Of the repeated calls to
+     * the same setter made on other threads and not applied yet, only the latest is. The other
+     * methods that change the camera, such as
+     * {@link #pausePreview()}, {@link #resumePreview()}, {@link #startRecording(File)},
+     * {@link #stopRecording()}, {@link #setRecordingSurfaceReserved(boolean)} and
+     * {@link #setHighSpeedMode(int, Surface)}, must be called on the main thread.</p>
      */
     public void start() {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_LIFECYCLE, mStart);
+            return;
+        }
+        applyPendingCalls();
+        startCamera();
+    }
+
+    private void startCamera() {
+        mImpl.resetPreviewStats();
+        if (mRetainCamera && adoptRetainedCamera()) {
+            return;
+        }
+        // Camera1 opens the camera within start(), so the time is taken before it
+        long startTime = SystemClock.elapsedRealtime();
         if (!mImpl.start()) {
-            //store the state ,and restore this state after fall back o Camera1
-            Parcelable state = onSaveInstanceState();
-            // Camera2 uses legacy hardware layer; fall back to Camera1
-            mImpl = new Camera1(mCallbacks, createPreviewImpl(getContext()));
-            onRestoreInstanceState(state);
+            // The camera of the facing uses legacy hardware layer; fall back to Camera1
+            mImpl = createCamera1(mImpl);
+            startTime = SystemClock.elapsedRealtime();
             mImpl.start();
         }
+        if (sBackendSelector != null && !(mImpl instanceof FakeCamera)) {
+            mStartTime = startTime;
+            mImpl.getPreview().setFirstFrameCallback(mFirstFrame);
+        }
+    }
+
+    /**
+     * Creates a {@link Camera1} on the same preview and with the same settings as {@code impl}.
+     */
+    private CameraViewImpl createCamera1(CameraViewImpl impl) {
+        // The commands already enqueued by this view go on to the new camera
+        final Camera1 camera1 = new Camera1(mCallbacks, impl.getPreview(),
+                impl.getCommandQueue());
+        camera1.setFacing(impl.getFacing());
+        camera1.setAspectRatioTolerance(impl.getAspectRatioTolerance());
+        camera1.setAspectRatio(impl.getAspectRatio());
+        camera1.setAutoFocus(impl.getAutoFocus());
+        camera1.setFlash(impl.getFlash());
+        camera1.setPreviewSizeSelector(impl.getPreviewSizeSelector());
+        camera1.setPictureSizeSelector(impl.getPictureSizeSelector());
+        camera1.setFrameRateRange(impl.getFrameRateRange());
+        camera1.setRecordingSurfaceReserved(impl.isRecordingSurfaceReserved());
+        camera1.setRawEnabled(impl.isRawEnabled());
+        camera1.setJpegQuality(impl.getJpegQuality());
+        camera1.setJpegThumbnailSize(impl.getJpegThumbnailSize());
+        camera1.setJpegThumbnailQuality(impl.getJpegThumbnailQuality());
+        camera1.setYuvCaptureEnabled(impl.isYuvCaptureEnabled());
+        camera1.setDisplayOrientation(
+                mDisplayOrientationDetector.getLastKnownDisplayOrientation());
+        if (impl.isPreviewPaused()) {
+            camera1.pausePreview();
+        }
+        return camera1;
     }
 
     /**
@@ -256,9 +473,210 @@ public class CameraView extends FrameLayout {
      * {@link Activity#onPause()}.
      */
     public void stop() {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_LIFECYCLE, mStop);
+            return;
+        }
+        applyPendingCalls();
+        stopCamera();
+    }
+
+    private void stopCamera() {
+        removeCallbacks(mIdleRelease);
+        mImpl.getPreview().setFirstFrameCallback(null);
+        mReleasedWhilePaused = false;
+        if (mRetainCamera && retainCamera()) {
+            return;
+        }
         mImpl.stop();
     }
 
+    /**
+     * Stops streaming camera preview while keeping the camera open, so that
+     * {@link #resumePreview()} shows it again within a frame or two. The last frame stays on the
+     * screen. This is the same as {@link #pausePreview(long)} without an idle timeout.
+     *
+     * @throws IllegalStateException when it is recording.
+     */
+    public void pausePreview() {
+        pausePreview(0);
+    }
+
+    /**
+     * Stops streaming camera preview while keeping the camera open, so that
+     * {@link #resumePreview()} shows it again within a frame or two. The last frame stays on the
+     * screen.
+     *
+     * @param idleTimeoutMillis The time after which the camera is closed if the preview is still
+     *                          paused, or 0 to keep it open until it is resumed or stopped.
+     *                          {@link #resumePreview()} reopens a closed camera.
+     * @throws IllegalStateException when it is recording.
+     */
+    public void pausePreview(long idleTimeoutMillis) {
+        if (idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("idleTimeoutMillis must not be negative: "
+                    + idleTimeoutMillis);
+        }
+        applyPendingCalls();
+        removeCallbacks(mIdleRelease);
+        if (mReleasedWhilePaused) {
+            return;
+        }
+        mImpl.pausePreview();
+        if (idleTimeoutMillis > 0) {
+            postDelayed(mIdleRelease, idleTimeoutMillis);
+        }
+    }
+
+    /**
+     * Resumes camera preview paused with {@link #pausePreview()}. This does nothing if the preview
+     * is not paused.
+     */
+    public void resumePreview() {
+        applyPendingCalls();
+        removeCallbacks(mIdleRelease);
+        if (mReleasedWhilePaused) {
+            mReleasedWhilePaused = false;
+            start();
+        } else {
+            mImpl.resumePreview();
+        }
+    }
+
+    /**
+     * @return {@code true} if camera preview is paused.
+     */
+    public boolean isPreviewPaused() {
+        return mReleasedWhilePaused || mImpl.isPreviewPaused();
+    }
+
+    /**
+     * Keeps the camera open when the activity is recreated for a configuration change, such as a
+     * rotation. When {@link #stop()} is called while the activity is changing configurations, the
+     * camera is handed over to the new {@link CameraView} of the same ID in the new activity,
+     * which picks it up in {@link #start()}. Only the preview is reconfigured then; the camera is
+     * not closed and reopened. A camera not picked up within a few seconds is closed.
+     *
+     * <p>The facing, aspect ratio, auto-focus and flash of the new view, from its attributes and
+     * saved state, are applied to the retained camera, which is only reopened or reconfigured
+     * if they differ. The other settings, such as the size selectors and the JPEG settings, are
+     * those of the retained camera.</p>
+     *
+     * <p>The view needs an ID. The setting is saved with the view state.</p>
+     *
+     * @param retain {@code true} to keep the camera open across configuration changes.
+     */
+    public void setRetainCameraOnConfigurationChange(boolean retain) {
+        mRetainCamera = retain;
+    }
+
+    /**
+     * @return {@code true} if the camera is kept open across configuration changes.
+     */
+    public boolean getRetainCameraOnConfigurationChange() {
+        return mRetainCamera;
+    }
+
+    /**
+     * Hands the camera over to the next instance of this view if the activity is changing
+     * configurations.
+     *
+     * @return {@code true} if the camera was retained.
+     */
+    private boolean retainCamera() {
+        final Activity activity = findActivity();
+        if (getId() == NO_ID || activity == null || !activity.isChangingConfigurations() ||
+                !mImpl.isCameraOpened() || !mImpl.detachPreview()) {
+            return false;
+        }
+        RetainedCameras.park(retainKey(activity), mImpl);
+        return true;
+    }
+
+    /**
+     * Takes over the camera retained by the previous instance of this view, if any.
+     *
+     * @return {@code true} if a camera was taken over.
+     */
+    private boolean adoptRetainedCamera() {
+        final Activity activity = findActivity();
+        if (getId() == NO_ID || activity == null) {
+            return false;
+        }
+        final CameraViewImpl retained = RetainedCameras.claim(retainKey(activity));
+        if (retained == null) {
+            return false;
+        }
+        final CameraViewImpl fresh = mImpl;
+        retained.attachPreview(mCallbacks, fresh.getPreview());
+        mImpl = retained;
+        // The calls made before this one have been applied to the fresh camera
+        mCommands = retained.getCommandQueue();
+        // The rotation has most likely changed; it was only reported to the fresh camera
+        retained.setDisplayOrientation(
+                mDisplayOrientationDetector.getLastKnownDisplayOrientation());
+        // Settings equal to the retained ones do not reopen nor reconfigure the camera
+        retained.setFacing(fresh.getFacing());
+        retained.setAspectRatioTolerance(fresh.getAspectRatioTolerance());
+        if (fresh.getAspectRatio() != null) {
+            retained.setAspectRatio(fresh.getAspectRatio());
+        }
+        retained.setAutoFocus(fresh.getAutoFocus());
+        retained.setFlash(fresh.getFlash());
+        mCallbacks.onCameraOpened();
+        return true;
+    }
+
+    private String retainKey(Activity activity) {
+        return activity.getClass().getName() + "#" + getId();
+    }
+
+    private Activity findActivity() {
+        Context context = getContext();
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return (Activity) context;
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+
+    /**
+     * Sets the policy that chooses the camera API for {@link CameraView}s created afterwards.
+     * While one is set, the time from {@link #start()} to the first preview frame is measured and
+     * kept for it in {@link BackendStats}. By default, Camera2 is used wherever it is supported
+     * beyond the legacy hardware level and nothing is measured.
+     *
+     * @param selector The policy, such as {@link BackendSelectors#adaptive()}, or {@code null}
+     *                 for the default.
+     */
+    public static void setBackendSelector(@Nullable BackendSelector selector) {
+        sBackendSelector = selector;
+    }
+
+    /**
+     * Makes the {@link CameraView}s created afterwards drive a synthetic camera instead of the
+     * hardware, which streams and takes pictures as described by {@code profile}. This lets the
+     * code around the view be tested and load tested without a camera, such as on CI.
+     *
+     * @param profile The synthetic camera, or {@code null} to use the hardware again.
+     */
+    public static void setFakeCameraProfile(@Nullable FakeCameraProfile profile) {
+        sFakeCameraProfile = profile;
+    }
+
+    /**
+     * @return The camera API that drives this view.
+     */
+    @Backend
+    public int getBackend() {
+        if (mImpl instanceof FakeCamera) {
+            return BACKEND_FAKE;
+        }
+        return mImpl instanceof Camera1 ? BACKEND_CAMERA1 : BACKEND_CAMERA2;
+    }
+
     /**
      * @return {@code true} if the camera is opened.
      */
@@ -267,17 +685,34 @@ public class CameraView extends FrameLayout {
     }
 
     /**
-     * Add a new callback.
+     * Add a new callback. It is called on the thread the camera reports the events on, after
+     * the ones added before it.
      *
      * @param callback The {@link Callback} to add.
      * @see #removeCallback(Callback)
      */
     public void addCallback(@NonNull Callback callback) {
-        mCallbacks.add(callback);
+        mCallbacks.add(null, callback);
+    }
+
+    /**
+     * Add a new callback that is called on the {@code executor}, so that it does not hold up the
+     * other callbacks. Callbacks can be added and removed from within callbacks.
+     *
+     * <p>Use a serial executor to receive the events in order. The picture data passed to
+     * {@link Callback#onPictureTaken(CameraView, byte[])} is shared among the callbacks, and
+     * must not be modified.</p>
+     *
+     * @param executor The executor to call the {@code callback} on.
+     * @param callback The {@link Callback} to add.
+     * @see #removeCallback(Callback)
+     */
+    public void addCallback(@NonNull Executor executor, @NonNull Callback callback) {
+        mCallbacks.add(executor, callback);
     }
 
     /**
-     * Remove a callback.
+     * Remove a callback. Events that are yet to be delivered to it on its executor are dropped.
      *
      * @param callback The {@link Callback} to remove.
      * @see #addCallback(Callback)
@@ -313,7 +748,17 @@ public class CameraView extends FrameLayout {
      * @param facing The camera facing. Must be either {@link #FACING_BACK} or
      *               {@link #FACING_FRONT}.
      */
-    public void setFacing(@Facing int facing) {
+    public void setFacing(@Facing final int facing) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_FACING, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setFacing(facing);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
         mImpl.setFacing(facing);
     }
 
@@ -340,7 +785,21 @@ public class CameraView extends FrameLayout {
      *
      * @param ratio The {@link AspectRatio} to be set.
      */
-    public void setAspectRatio(@NonNull AspectRatio ratio) {
+    public void setAspectRatio(@NonNull final AspectRatio ratio) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_ASPECT_RATIO, new Runnable() {
+                @Override
+                public void run() {
+                    applyAspectRatio(ratio);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        applyAspectRatio(ratio);
+    }
+
+    private void applyAspectRatio(AspectRatio ratio) {
         if (mImpl.setAspectRatio(ratio)) {
             requestLayout();
         }
@@ -356,6 +815,235 @@ public class CameraView extends FrameLayout {
         return mImpl.getAspectRatio();
     }
 
+    /**
+     * Sets how far the aspect ratio of camera can be from the one passed to
+     * {@link #setAspectRatio(AspectRatio)}. Sensors often report sizes such as 1920x1088 that are
+     * slightly off from the requested ratio; the closest supported ratio within this tolerance is
+     * used instead of falling back to an unrelated one.
+     *
+     * <p>The supported aspect ratios are matched against the picture sizes when the camera
+     * opens; a tolerance changed while it is open applies to them the next time it opens.</p>
+     *
+     * @param tolerance The maximum difference relative to the requested ratio. For example,
+     *                  {@code 0.01f} accepts ratios within 1%. The default is 1%.
+     * @throws IllegalArgumentException when {@code tolerance} is negative or NaN.
+     */
+    public void setAspectRatioTolerance(final float tolerance) {
+        if (!(tolerance >= 0)) {
+            throw new IllegalArgumentException("Tolerance must not be negative: " + tolerance);
+        }
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_ASPECT_RATIO_TOLERANCE, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setAspectRatioTolerance(tolerance);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        mImpl.setAspectRatioTolerance(tolerance);
+    }
+
+    /**
+     * Gets the tolerance used to match the requested aspect ratio with the supported ones.
+     *
+     * @return The maximum difference relative to the requested ratio.
+     * @see #setAspectRatioTolerance(float)
+     */
+    public float getAspectRatioTolerance() {
+        return mImpl.getAspectRatioTolerance();
+    }
+
+    /**
+     * Sets the strategy to choose the size of camera preview among the ones supported for the
+     * current aspect ratio.
+     *
+     * @param selector The {@link SizeSelector}, such as one from {@link SizeSelectors}. Pass
+     *                 {@code null} to use the smallest size that covers this view.
+     */
+    public void setPreviewSizeSelector(@Nullable final SizeSelector selector) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_PREVIEW_SIZE_SELECTOR, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setPreviewSizeSelector(selector);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        mImpl.setPreviewSizeSelector(selector);
+    }
+
+    /**
+     * @return The strategy to choose the size of camera preview, or {@code null} if the default
+     * one is used.
+     * @see #setPreviewSizeSelector(SizeSelector)
+     */
+    @Nullable
+    public SizeSelector getPreviewSizeSelector() {
+        return mImpl.getPreviewSizeSelector();
+    }
+
+    /**
+     * Sets the strategy to choose the size of pictures among the ones supported for the current
+     * aspect ratio.
+     *
+     * @param selector The {@link SizeSelector}, such as one from {@link SizeSelectors}. Pass
+     *                 {@code null} to use the largest size.
+     */
+    public void setPictureSizeSelector(@Nullable final SizeSelector selector) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_PICTURE_SIZE_SELECTOR, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setPictureSizeSelector(selector);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        mImpl.setPictureSizeSelector(selector);
+    }
+
+    /**
+     * @return The strategy to choose the size of pictures, or {@code null} if the default one is
+     * used.
+     * @see #setPictureSizeSelector(SizeSelector)
+     */
+    @Nullable
+    public SizeSelector getPictureSizeSelector() {
+        return mImpl.getPictureSizeSelector();
+    }
+
+    /**
+     * Sets the target frame rate range of camera preview and capture. The supported range closest
+     * to the requested one is applied; use {@link #getAppliedFrameRateRange()} to see which one.
+     * A fixed range, such as 30 to 30, keeps the frame rate steady in low light at the cost of
+     * exposure.
+     *
+     * @param min The lower bound, in frames per second.
+     * @param max The upper bound, in frames per second.
+     * @throws IllegalArgumentException when {@code min} is not positive or is above {@code max}.
+     */
+    public void setFrameRateRange(int min, int max) {
+        setFrameRateRangeInternal(new FrameRateRange(min, max));
+    }
+
+    /**
+     * Goes back to the default frame rate range of the camera.
+     */
+    public void clearFrameRateRange() {
+        setFrameRateRangeInternal(null);
+    }
+
+    private void setFrameRateRangeInternal(final FrameRateRange range) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_FRAME_RATE_RANGE, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setFrameRateRange(range);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        mImpl.setFrameRateRange(range);
+    }
+
+    /**
+     * @return The frame rate range requested with {@link #setFrameRateRange(int, int)}, or
+     * {@code null} if none is requested.
+     */
+    @Nullable
+    public FrameRateRange getFrameRateRange() {
+        return mImpl.getFrameRateRange();
+    }
+
+    /**
+     * @return The frame rate range actually applied to the camera, or {@code null} if it is not
+     * known yet, such as before the camera is opened.
+     */
+    @Nullable
+    public FrameRateRange getAppliedFrameRateRange() {
+        return mImpl.getAppliedFrameRateRange();
+    }
+
+    /**
+     * @param frameRate The frame rate, such as 120 or 240.
+     * @return The size the camera streams at in high-speed mode at {@code frameRate}, or
+     * {@code null} if it is not supported. Always {@code null} before API level 23.
+     */
+    @Nullable
+    public Size getHighSpeedSize(int frameRate) {
+        return mImpl.getHighSpeedSize(frameRate);
+    }
+
+    /**
+     * Switches the camera to a constrained high-speed session at {@code frameRate}. The preview
+     * and {@code output}, typically the input surface of a video encoder, are fed at the size
+     * returned by {@link #getHighSpeedSize(int)}. Still capture is not available in this mode.
+     * The camera must be started.
+     *
+     * @param frameRate The frame rate, such as 120 or 240.
+     * @param output    An extra output, or {@code null} for preview only.
+     * @return {@code false} if the current camera does not support high-speed capture at the rate.
+     */
+    public boolean setHighSpeedMode(int frameRate, @Nullable Surface output) {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("frameRate must be positive: " + frameRate);
+        }
+        applyPendingCalls();
+        return mImpl.setHighSpeedMode(frameRate, output);
+    }
+
+    /**
+     * Goes back to a regular session.
+     */
+    public void clearHighSpeedMode() {
+        applyPendingCalls();
+        mImpl.setHighSpeedMode(0, null);
+    }
+
+    /**
+     * @return The frame rate of the high-speed session, or 0 if the camera is not in high-speed
+     * mode.
+     */
+    public int getHighSpeedFrameRate() {
+        return mImpl.getHighSpeedFrameRate();
+    }
+
+    /**
+     * @return The statistics of the preview frames over the last two seconds. Frames are counted
+     * when they are displayed on API levels below 23, and when the camera starts capturing them
+     * otherwise; they are not counted at all on Camera1 with a {@code SurfaceView}.
+     */
+    @NonNull
+    public PreviewStats getPreviewStats() {
+        return mImpl.getPreviewStats();
+    }
+
+    /**
+     * Sets a listener to receive {@link PreviewStats} periodically while the camera is open.
+     *
+     * @param listener       The listener, or {@code null} to stop receiving the statistics.
+     * @param intervalMillis The interval of the reports, in milliseconds.
+     */
+    public void setPreviewStatsListener(@Nullable PreviewStatsListener listener,
+            long intervalMillis) {
+        if (listener != null && intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be positive: "
+                    + intervalMillis);
+        }
+        removeCallbacks(mPreviewStatsReporter);
+        mPreviewStatsListener = listener;
+        mPreviewStatsInterval = intervalMillis;
+        if (listener != null) {
+            postDelayed(mPreviewStatsReporter, intervalMillis);
+        }
+    }
+
     /**
      * Enables or disables the continuous auto-focus mode. When the current camera doesn't support
      * auto-focus, calling this method will be ignored.
@@ -363,7 +1051,17 @@ public class CameraView extends FrameLayout {
      * @param autoFocus {@code true} to enable continuous auto-focus mode. {@code false} to
      *                  disable it.
      */
-    public void setAutoFocus(boolean autoFocus) {
+    public void setAutoFocus(final boolean autoFocus) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_AUTO_FOCUS, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setAutoFocus(autoFocus);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
         mImpl.setAutoFocus(autoFocus);
     }
 
@@ -382,7 +1080,17 @@ public class CameraView extends FrameLayout {
      *
      * @param flash The desired flash mode.
      */
-    public void setFlash(@Flash int flash) {
+    public void setFlash(@Flash final int flash) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_FLASH, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setFlash(flash);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
         mImpl.setFlash(flash);
     }
 
@@ -400,26 +1108,435 @@ public class CameraView extends FrameLayout {
     /**
      * Take a picture. The result will be returned to
      * {@link Callback#onPictureTaken(CameraView, byte[])}.
+     *
+     * <p>While recording, this takes a video snapshot without pausing the recording. Focus and
+     * exposure are not locked for it.</p>
+     *
+     * <p>When the capture queue set by {@link #setCaptureQueue(int, int)} is full, a request
+     * coalesced by {@link #CAPTURE_OVERFLOW_COALESCE} shares the picture of the latest one, so
+     * it gets no callback of its own.</p>
+     *
+     * @throws IllegalStateException         when the preview is paused.
+     * @throws UnsupportedOperationException when it is recording and the camera cannot take
+     *                                       video snapshots.
+     * @throws RejectedExecutionException    when the capture queue is full and rejects the
+     *                                       request.
      */
     public void takePicture() {
-        mImpl.takePicture();
+        final PictureFuture future = takePictureAsync();
+        if (!future.isDone()) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                throw (RejectedExecutionException) e.getCause();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes a picture like {@link #takePicture()}, and returns a handle to it. The handle is
+     * completed with the picture and how it was captured, such as its size, orientation and
+     * exposure, so that the picture does not have to be decoded for them. Pictures requested
+     * while another one is being taken are taken in turn.
+     *
+     * <p>The picture fails with an {@link IllegalStateException} if the camera is closed before
+     * it is taken. When the capture queue is full, the request is handled as set by
+     * {@link #setCaptureQueue(int, int)}.</p>
+     *
+     * @return The handle to the picture.
+     * @throws IllegalStateException         when the preview is paused.
+     * @throws UnsupportedOperationException when it is recording and the camera cannot take
+     *                                       video snapshots.
+     */
+    @NonNull
+    public PictureFuture takePictureAsync() {
+        if (isPreviewPaused()) {
+            throw new IllegalStateException(
+                    "Preview is paused. Call resumePreview() before takePicture().");
+        }
+        final PictureFuture future = new PictureFuture(mCommands.getDispatcher());
+        final PictureFuture admitted = mCaptureQueue.admit(future, !mCommands.isCurrentThread());
+        if (admitted != future || future.isDone()) {
+            // Coalesced or rejected
+            return admitted;
+        }
+        if (!mCommands.isCurrentThread()) {
+            enqueue(CommandQueue.NO_KEY, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mImpl.takePicture(future);
+                    } catch (RuntimeException e) {
+                        future.setException(e);
+                    }
+                }
+            });
+            return future;
+        }
+        applyPendingCalls();
+        try {
+            mImpl.takePicture(future);
+        } catch (RuntimeException e) {
+            // Frees the place of the picture in the capture queue
+            future.setException(e);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Sets the quality of the JPEG pictures taken by {@link #takePicture()}. Lower qualities make
+     * smaller files that are faster to store and upload.
+     *
+     * @param quality The quality from 1 to 100, or 0 for the camera default.
+     * @throws IllegalArgumentException when {@code quality} is out of range.
+     */
+    public void setJpegQuality(final int quality) {
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("quality must be from 0 to 100: " + quality);
+        }
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_JPEG_QUALITY, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setJpegQuality(quality);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        mImpl.setJpegQuality(quality);
+    }
+
+    /**
+     * @return The JPEG quality from 1 to 100, or 0 for the camera default.
+     */
+    public int getJpegQuality() {
+        return mImpl.getJpegQuality();
+    }
+
+    /**
+     * Sets the size of the thumbnail embedded in the EXIF data of the JPEG pictures. The largest
+     * size supported by the camera that fits in {@code size} is used, and a size of 0x0 leaves
+     * out the thumbnail, which saves a few kilobytes per picture.
+     *
+     * @param size The largest thumbnail size, or {@code null} for the camera default.
+     */
+    public void setJpegThumbnailSize(@Nullable final Size size) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_JPEG_THUMBNAIL_SIZE, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setJpegThumbnailSize(size);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        mImpl.setJpegThumbnailSize(size);
+    }
+
+    /**
+     * @return The largest thumbnail size, or {@code null} for the camera default.
+     */
+    @Nullable
+    public Size getJpegThumbnailSize() {
+        return mImpl.getJpegThumbnailSize();
+    }
+
+    /**
+     * Sets the quality of the thumbnail embedded in the EXIF data of the JPEG pictures.
+     *
+     * @param quality The quality from 1 to 100, or 0 for the camera default.
+     * @throws IllegalArgumentException when {@code quality} is out of range.
+     */
+    public void setJpegThumbnailQuality(final int quality) {
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("quality must be from 0 to 100: " + quality);
+        }
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_JPEG_THUMBNAIL_QUALITY, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setJpegThumbnailQuality(quality);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        mImpl.setJpegThumbnailQuality(quality);
+    }
+
+    /**
+     * @return The thumbnail quality from 1 to 100, or 0 for the camera default.
+     */
+    public int getJpegThumbnailQuality() {
+        return mImpl.getJpegThumbnailQuality();
+    }
+
+    /**
+     * Captures still pictures as uncompressed YUV frames and encodes them to JPEG on a pool of
+     * background threads, one per core. This helps on devices whose camera encodes JPEG slowly
+     * and holds up the next picture, as the pictures of a burst are encoded at the same time.
+     * The pictures have no EXIF metadata or thumbnail; their orientation is given by
+     * {@link PictureResult#getOrientation()}. Only effective on API level 21 and above.
+     *
+     * @param enabled {@code true} to encode pictures in software.
+     */
+    public void setYuvCaptureEnabled(final boolean enabled) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_YUV_CAPTURE, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setYuvCaptureEnabled(enabled);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        mImpl.setYuvCaptureEnabled(enabled);
+    }
+
+    /**
+     * @return {@code true} if still pictures are encoded to JPEG in software.
+     */
+    public boolean isYuvCaptureEnabled() {
+        return mImpl.isYuvCaptureEnabled();
+    }
+
+    /**
+     * @return {@code true} if the current camera can capture RAW pictures. This is only known once
+     * the camera is started, and only ever on API level 21 and above.
+     */
+    public boolean isRawSupported() {
+        return mImpl.isRawSupported();
+    }
+
+    /**
+     * Keeps a RAW output in the camera session where the camera supports it, so that
+     * {@link #takeRawPicture(OutputStream)} can be used. This takes the memory for a few
+     * full-resolution sensor images while the camera is open, and the output is left out of the
+     * session while recording.
+     *
+     * @param enabled {@code true} to keep the output.
+     */
+    public void setRawCaptureEnabled(final boolean enabled) {
+        if (!mCommands.isCurrentThread()) {
+            enqueue(COMMAND_RAW_CAPTURE, new Runnable() {
+                @Override
+                public void run() {
+                    mImpl.setRawEnabled(enabled);
+                }
+            });
+            return;
+        }
+        applyPendingCalls();
+        mImpl.setRawEnabled(enabled);
+    }
+
+    /**
+     * @return {@code true} if a RAW output is kept in the camera session where supported.
+     */
+    public boolean isRawCaptureEnabled() {
+        return mImpl.isRawEnabled();
+    }
+
+    /**
+     * Captures a RAW picture and writes it to {@code output} as DNG. The image is written on a
+     * background thread straight from the camera buffer, so the file is never held in memory.
+     * The stream is flushed but not closed; close it once the returned handle is done.
+     *
+     * <p>The handle is completed with the size, orientation and exposure of the picture, and
+     * without its data. It fails if the picture cannot be captured or written.</p>
+     *
+     * @param output The stream to write the DNG file to.
+     * @return The handle to the picture.
+     * @throws IllegalStateException         when RAW capture is not enabled, or the camera is not
+     *                                       streaming, or it is recording.
+     * @throws UnsupportedOperationException when the camera cannot capture RAW pictures.
+     * @throws RejectedExecutionException    when three RAW pictures are in flight already, which
+     *                                       is as many as the camera buffers.
+     * @see #setRawCaptureEnabled(boolean)
+     */
+    @NonNull
+    public PictureFuture takeRawPicture(@NonNull final OutputStream output) {
+        final PictureFuture future = new PictureFuture(mCommands.getDispatcher());
+        if (!mCommands.isCurrentThread()) {
+            enqueue(CommandQueue.NO_KEY, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mImpl.takeRawPicture(output, future);
+                    } catch (RuntimeException e) {
+                        future.setException(e);
+                    }
+                }
+            });
+            return future;
+        }
+        applyPendingCalls();
+        mImpl.takeRawPicture(output, future);
+        return future;
+    }
+
+    /**
+     * Bounds the pictures requested by {@link #takePictureAsync()} and not yet done. Requests
+     * within the bound are pipelined as fast as the camera allows; the ones beyond it are
+     * handled by {@code overflow}. The queue is unbounded by default.
+     *
+     * <p>{@link #CAPTURE_OVERFLOW_WAIT} cannot block the main thread; requests made on it when
+     * the queue is full are rejected. A cancelled picture leaves the queue right away, even though
+     * the camera may still be taking it.</p>
+     *
+     * @param depth    The number of pictures the queue holds.
+     * @param overflow What happens to a request when the queue is full.
+     * @throws IllegalArgumentException when {@code depth} is not positive.
+     */
+    public void setCaptureQueue(int depth, @CaptureOverflow int overflow) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("depth must be positive: " + depth);
+        }
+        mCaptureQueue.setLimit(depth, overflow);
+    }
+
+    /**
+     * @return The number of pictures the capture queue holds.
+     */
+    public int getCaptureQueueDepth() {
+        return mCaptureQueue.getDepth();
+    }
+
+    /**
+     * @return What happens to a picture requested when the capture queue is full.
+     */
+    @CaptureOverflow
+    public int getCaptureOverflow() {
+        //noinspection WrongConstant
+        return mCaptureQueue.getOverflow();
+    }
+
+    /**
+     * Starts recording video to {@code file} while keeping the preview running. The video is
+     * recorded at the camcorder profile of the camera in the current aspect ratio. Audio is
+     * recorded as well if the app holds the {@link android.Manifest.permission#RECORD_AUDIO}
+     * permission. Pictures taken while recording are no larger than the video, as that is all
+     * many devices can capture alongside it.
+     *
+     * @param file The output file. It is overwritten if it exists.
+     * @throws IllegalStateException when the camera is not started or it is already recording.
+     * @see #setRecordingSurfaceReserved(boolean)
+     */
+    public void startRecording(@NonNull File file) {
+        applyPendingCalls();
+        if (isPreviewPaused()) {
+            throw new IllegalStateException(
+                    "Preview is paused. Call resumePreview() before startRecording().");
+        }
+        mImpl.startRecording(file);
+    }
+
+    /**
+     * Stops recording video. This does nothing if it is not recording.
+     *
+     * @return {@code true} if the video was recorded; {@code false} if nothing was recorded, in
+     * which case the output file is deleted.
+     */
+    public boolean stopRecording() {
+        applyPendingCalls();
+        return mImpl.stopRecording();
+    }
+
+    /**
+     * @return {@code true} if it is recording video.
+     */
+    public boolean isRecording() {
+        return mImpl.isRecording();
+    }
+
+    /**
+     * Keeps an encoder input surface in the camera session, so that recordings start and stop
+     * without reconfiguring the camera, which otherwise interrupts the preview. This takes the
+     * memory for the encoder buffers while the camera is open, and limits the pictures to the
+     * video size, as they are while recording. Only effective on API level 23 and above.
+     *
+     * @param reserved {@code true} to keep the surface.
+     * @throws IllegalStateException when it is recording.
+     */
+    public void setRecordingSurfaceReserved(boolean reserved) {
+        applyPendingCalls();
+        mImpl.setRecordingSurfaceReserved(reserved);
+    }
+
+    /**
+     * @return {@code true} if an encoder input surface is kept in the camera session.
+     */
+    public boolean isRecordingSurfaceReserved() {
+        return mImpl.isRecordingSurfaceReserved();
+    }
+
+    /**
+     * Enqueues a {@code call} made on another thread, to be applied on the main thread. It calls
+     * into {@link #mImpl} directly, as the public methods would apply the later calls first.
+     */
+    private void enqueue(int key, final Runnable call) {
+        mPendingCalls.incrementAndGet();
+        final boolean added = mCommands.enqueue(key, new Runnable() {
+            @Override
+            public void run() {
+                mPendingCalls.decrementAndGet();
+                call.run();
+            }
+        });
+        if (!added) {
+            // It took the place of a pending call, which is never run
+            mPendingCalls.decrementAndGet();
+        }
+    }
+
+    /**
+     * Applies the calls made on other threads before a call made on the main thread, so that an
+     * earlier call does not overwrite a later one.
+     */
+    private void applyPendingCalls() {
+        if (mPendingCalls.get() > 0) {
+            mCommands.drain();
+        }
     }
 
     private class CallbackBridge implements CameraViewImpl.Callback {
 
-        private final ArrayList<Callback> mCallbacks = new ArrayList<>();
+        private static final int EVENT_OPENED = 0;
+
+        private static final int EVENT_CLOSED = 1;
+
+        private static final int EVENT_PICTURE_TAKEN = 2;
+
+        /** Iterated without locks, and modifiable while it is iterated. */
+        private final CopyOnWriteArrayList<Registration> mRegistrations
+                = new CopyOnWriteArrayList<>();
 
         private boolean mRequestLayoutOnOpen;
 
         CallbackBridge() {
         }
 
-        public void add(Callback callback) {
-            mCallbacks.add(callback);
+        public void add(Executor executor, Callback callback) {
+            mRegistrations.add(new Registration(executor, callback));
         }
 
         public void remove(Callback callback) {
-            mCallbacks.remove(callback);
+            for (Registration registration : mRegistrations) {
+                if (registration.callback == callback) {
+                    registration.removed = true;
+                    mRegistrations.remove(registration);
+                    return;
+                }
+            }
         }
 
         @Override
@@ -428,22 +1545,47 @@ public class CameraView extends FrameLayout {
                 mRequestLayoutOnOpen = false;
                 requestLayout();
             }
-            for (Callback callback : mCallbacks) {
-                callback.onCameraOpened(CameraView.this);
-            }
+            dispatch(EVENT_OPENED, null);
         }
 
         @Override
         public void onCameraClosed() {
-            for (Callback callback : mCallbacks) {
-                callback.onCameraClosed(CameraView.this);
-            }
+            dispatch(EVENT_CLOSED, null);
         }
 
         @Override
         public void onPictureTaken(byte[] data) {
-            for (Callback callback : mCallbacks) {
-                callback.onPictureTaken(CameraView.this, data);
+            dispatch(EVENT_PICTURE_TAKEN, data);
+        }
+
+        private void dispatch(final int event, final byte[] data) {
+            for (final Registration registration : mRegistrations) {
+                if (registration.executor == null) {
+                    deliver(registration.callback, event, data);
+                } else {
+                    registration.executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!registration.removed) {
+                                deliver(registration.callback, event, data);
+                            }
+                        }
+                    });
+                }
+            }
+        }
+
+        private void deliver(Callback callback, int event, byte[] data) {
+            switch (event) {
+                case EVENT_OPENED:
+                    callback.onCameraOpened(CameraView.this);
+                    break;
+                case EVENT_CLOSED:
+                    callback.onCameraClosed(CameraView.this);
+                    break;
+                case EVENT_PICTURE_TAKEN:
+                    callback.onPictureTaken(CameraView.this, data);
+                    break;
             }
         }
 
@@ -452,6 +1594,22 @@ public class CameraView extends FrameLayout {
         }
     }
 
+    private static class Registration {
+
+        /** {@code null} to call {@link #callback} directly. */
+        final Executor executor;
+
+        final Callback callback;
+
+        volatile boolean removed;
+
+        Registration(Executor executor, Callback callback) {
+            this.executor = executor;
+            this.callback = callback;
+        }
+
+    }
+
     protected static class SavedState extends BaseSavedState {
 
         @Facing
@@ -459,18 +1617,24 @@ public class CameraView extends FrameLayout {
 
         AspectRatio ratio;
 
+        float ratioTolerance;
+
         boolean autoFocus;
 
         @Flash
         int flash;
 
+        boolean retainCamera;
+
         @SuppressWarnings("WrongConstant")
         public SavedState(Parcel source, ClassLoader loader) {
             super(source);
             facing = source.readInt();
             ratio = source.readParcelable(loader);
+            ratioTolerance = source.readFloat();
             autoFocus = source.readByte() != 0;
             flash = source.readInt();
+            retainCamera = source.readByte() != 0;
         }
 
         public SavedState(Parcelable superState) {
@@ -482,8 +1646,10 @@ public class CameraView extends FrameLayout {
             super.writeToParcel(out, flags);
             out.writeInt(facing);
             out.writeParcelable(ratio, 0);
+            out.writeFloat(ratioTolerance);
             out.writeByte((byte) (autoFocus ? 1 : 0));
             out.writeInt(flash);
+            out.writeByte((byte) (retainCamera ? 1 : 0));
         }
 
         public static final Parcelable.Creator<SavedState> CREATOR
@@ -508,6 +1674,23 @@ public class CameraView extends FrameLayout {
 
     }
 
+    /**
+     * Receives the statistics of the preview frames.
+     *
+     * @see #setPreviewStatsListener(PreviewStatsListener, long)
+     */
+    public interface PreviewStatsListener {
+
+        /**
+         * Called on the main thread at the interval set with the listener.
+         *
+         * @param cameraView The associated {@link CameraView}.
+         * @param stats      The statistics of the last two seconds.
+         */
+        void onPreviewStats(CameraView cameraView, PreviewStats stats);
+
+    }
+
     /**
      * Callback for monitoring events about {@link CameraView}.
      */
@@ -16,7 +16,11 @@
 
 package com.google.android.cameraview;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.support.annotation.VisibleForTesting;
 import android.util.SparseIntArray;
 import android.view.Display;
 import android.view.OrientationEventListener;
@@ -25,11 +29,19 @@ import android.view.Surface;
 
 /**
  * Monitors the value returned from {@link Display#getRotation()}.
+ *
+ * <p>On API level 17 and above, this only wakes up when a display actually changes, including
+ * 180 degree flips that do not cause a configuration change. Below that, it falls back to
+ * polling the rotation on each orientation sensor event.</p>
  */
 abstract class DisplayOrientationDetector {
 
+    /** Polls the rotation on sensor events; {@code null} when {@link #mDisplayWatcher} is used. */
     private final OrientationEventListener mOrientationEventListener;
 
+    /** Listens to display changes; {@code null} when the sensor is used. */
+    private final DisplayWatcher mDisplayWatcher;
+
     /** Mapping from Surface.Rotation_n to degrees. */
     static final SparseIntArray DISPLAY_ORIENTATIONS = new SparseIntArray();
 
@@ -44,43 +56,84 @@ abstract class DisplayOrientationDetector {
 
     private int mLastKnownDisplayOrientation = 0;
 
-    public DisplayOrientationDetector(Context context) {
-        mOrientationEventListener = new OrientationEventListener(context) {
+    /** This is either Surface.Rotation_0, _90, _180, _270, or -1 (invalid). */
+    private int mLastKnownRotation = -1;
 
-            /** This is either Surface.Rotation_0, _90, _180, _270, or -1 (invalid). */
-            private int mLastKnownRotation = -1;
+    /** The number of times the sensor or the display woke this up. */
+    private int mWakeUpCount;
 
-            @Override
-            public void onOrientationChanged(int orientation) {
-                if (orientation == OrientationEventListener.ORIENTATION_UNKNOWN ||
-                        mDisplay == null) {
-                    return;
-                }
-                final int rotation = mDisplay.getRotation();
-                if (mLastKnownRotation != rotation) {
-                    mLastKnownRotation = rotation;
-                    dispatchOnDisplayOrientationChanged(DISPLAY_ORIENTATIONS.get(rotation));
+    public DisplayOrientationDetector(Context context) {
+        this(context, Build.VERSION.SDK_INT < 17);
+    }
+
+    /**
+     * @param useSensor {@code true} to poll the rotation on orientation sensor events even when
+     *                  display changes can be listened to.
+     */
+    @VisibleForTesting
+    DisplayOrientationDetector(Context context, boolean useSensor) {
+        if (useSensor) {
+            mDisplayWatcher = null;
+            mOrientationEventListener = new OrientationEventListener(context) {
+                @Override
+                public void onOrientationChanged(int orientation) {
+                    mWakeUpCount++;
+                    if (orientation != OrientationEventListener.ORIENTATION_UNKNOWN) {
+                        checkRotation();
+                    }
                 }
-            }
-        };
+            };
+        } else {
+            mDisplayWatcher = new DisplayWatcher(context);
+            mOrientationEventListener = null;
+        }
     }
 
     public void enable(Display display) {
         mDisplay = display;
-        mOrientationEventListener.enable();
+        if (mDisplayWatcher != null) {
+            mDisplayWatcher.enable();
+        } else {
+            mOrientationEventListener.enable();
+        }
         // Immediately dispatch the first callback
-        dispatchOnDisplayOrientationChanged(DISPLAY_ORIENTATIONS.get(display.getRotation()));
+        mLastKnownRotation = display.getRotation();
+        dispatchOnDisplayOrientationChanged(DISPLAY_ORIENTATIONS.get(mLastKnownRotation));
     }
 
     public void disable() {
-        mOrientationEventListener.disable();
+        if (mDisplayWatcher != null) {
+            mDisplayWatcher.disable();
+        } else {
+            mOrientationEventListener.disable();
+        }
         mDisplay = null;
+        mLastKnownRotation = -1;
     }
 
     public int getLastKnownDisplayOrientation() {
         return mLastKnownDisplayOrientation;
     }
 
+    /**
+     * @return The number of times the sensor or the display woke this up since it was created.
+     */
+    @VisibleForTesting
+    int getWakeUpCount() {
+        return mWakeUpCount;
+    }
+
+    void checkRotation() {
+        if (mDisplay == null) {
+            return;
+        }
+        final int rotation = mDisplay.getRotation();
+        if (mLastKnownRotation != rotation) {
+            mLastKnownRotation = rotation;
+            dispatchOnDisplayOrientationChanged(DISPLAY_ORIENTATIONS.get(rotation));
+        }
+    }
+
     void dispatchOnDisplayOrientationChanged(int displayOrientation) {
         mLastKnownDisplayOrientation = displayOrientation;
         onDisplayOrientationChanged(displayOrientation);
@@ -93,4 +146,40 @@ abstract class DisplayOrientationDetector {
      */
     public abstract void onDisplayOrientationChanged(int displayOrientation);
 
+    @TargetApi(17)
+    private class DisplayWatcher implements DisplayManager.DisplayListener {
+
+        private final DisplayManager mDisplayManager;
+
+        DisplayWatcher(Context context) {
+            mDisplayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        }
+
+        void enable() {
+            // Callbacks come on the looper of the calling thread
+            mDisplayManager.registerDisplayListener(this, null);
+        }
+
+        void disable() {
+            mDisplayManager.unregisterDisplayListener(this);
+        }
+
+        @Override
+        public void onDisplayAdded(int displayId) {
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            mWakeUpCount++;
+            if (mDisplay != null && mDisplay.getDisplayId() == displayId) {
+                checkRotation();
+            }
+        }
+
+    }
+
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds open cameras while their {@link CameraView}s are recreated for configuration changes. It
+ * is process-scoped and used on the main thread only.
+ */
+final class RetainedCameras {
+
+    /** How long a camera waits for a new {@link CameraView} before it is closed. */
+    static final long TIMEOUT_MS = 3000;
+
+    private static final Map<String, CameraViewImpl> sCameras = new HashMap<>();
+
+    /** The timeout of each camera in {@link #sCameras}, cancelled once it is claimed. */
+    private static final Map<String, Runnable> sTimeouts = new HashMap<>();
+
+    private static Handler sHandler;
+
+    private RetainedCameras() {
+    }
+
+    /**
+     * Holds {@code impl} under {@code key} until it is claimed or times out.
+     */
+    static void park(final String key, final CameraViewImpl impl) {
+        final CameraViewImpl previous = sCameras.put(key, impl);
+        if (previous != null && previous != impl) {
+            previous.stop();
+        }
+        if (sHandler == null) {
+            sHandler = new Handler(Looper.getMainLooper());
+        }
+        cancelTimeout(key);
+        final Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                sTimeouts.remove(key);
+                if (sCameras.get(key) == impl) {
+                    sCameras.remove(key);
+                    impl.stop();
+                }
+            }
+        };
+        sTimeouts.put(key, timeout);
+        sHandler.postDelayed(timeout, TIMEOUT_MS);
+    }
+
+    /**
+     * @return The camera held under {@code key}, or {@code null} if there is none.
+     */
+    static CameraViewImpl claim(String key) {
+        cancelTimeout(key);
+        return sCameras.remove(key);
+    }
+
+    private static void cancelTimeout(String key) {
+        final Runnable timeout = sTimeouts.remove(key);
+        if (timeout != null) {
+            sHandler.removeCallbacks(timeout);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import android.support.v4.util.SparseArrayCompat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures the throughput of {@link AspectRatio#of(int, int)} against the previous
+ * {@link SparseArrayCompat}-based cache, made thread-safe by a lock.
+ */
+public class AspectRatioBenchmark {
+
+    private static final int ITERATIONS = 1000000;
+
+    private static final int THREADS = 4;
+
+    /** Sizes commonly passed to {@link AspectRatio#of(int, int)}. */
+    private static final Size[] SIZES = DeviceSizes.FLAGSHIP;
+
+    private final SparseArrayCompat<SparseArrayCompat<AspectRatio>> mLegacyCache
+            = new SparseArrayCompat<>(16);
+
+    private final Benchmark.Operation mLegacy = new Benchmark.Operation() {
+
+        private int mIndex;
+
+        @Override
+        public long run() {
+            Size size = SIZES[mIndex++ % SIZES.length];
+            return legacyOf(size.getWidth(), size.getHeight()).getX();
+        }
+
+    };
+
+    private final Benchmark.Operation mCurrent = new Benchmark.Operation() {
+
+        private int mIndex;
+
+        @Override
+        public long run() {
+            Size size = SIZES[mIndex++ % SIZES.length];
+            return AspectRatio.of(size.getWidth(), size.getHeight()).getX();
+        }
+
+    };
+
+    @Before
+    public void setUp() {
+        Benchmark.assumeEnabled();
+    }
+
+    @Test
+    public void singleThread() {
+        Benchmark.measure("Legacy AspectRatio.of", ITERATIONS, mLegacy);
+        Benchmark.measure("AspectRatio.of", ITERATIONS, mCurrent);
+    }
+
+    @Test
+    public void multipleThreads() throws Exception {
+        // The operations share an index that is not thread-safe; it only picks the input.
+        Benchmark.measureConcurrent("Legacy AspectRatio.of, " + THREADS + " threads", THREADS,
+                ITERATIONS, mLegacy);
+        Benchmark.measureConcurrent("AspectRatio.of, " + THREADS + " threads", THREADS,
+                ITERATIONS, mCurrent);
+    }
+
+    private AspectRatio legacyOf(int x, int y) {
+        int gcd = AspectRatio.gcd(x, y);
+        x /= gcd;
+        y /= gcd;
+        synchronized (mLegacyCache) {
+            SparseArrayCompat<AspectRatio> arrayX = mLegacyCache.get(x);
+            if (arrayX == null) {
+                arrayX = new SparseArrayCompat<>();
+                mLegacyCache.put(x, arrayX);
+            }
+            AspectRatio ratio = arrayX.get(y);
+            if (ratio == null) {
+                ratio = AspectRatio.of(x, y);
+                arrayX.put(y, ratio);
+            }
+            return ratio;
+        }
+    }
+
+}
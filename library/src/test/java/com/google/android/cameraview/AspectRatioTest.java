@@ -17,14 +17,33 @@
 package com.google.android.cameraview;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class AspectRatioTest {
 
+    @Before
+    public void setUp() {
+        AspectRatio.clearCache();
+    }
+
+    @After
+    public void tearDown() {
+        AspectRatio.clearCache();
+    }
+
     @Test
     public void testGcd() {
         AspectRatio r;
@@ -104,4 +123,89 @@ public class AspectRatioTest {
         AspectRatio.parse("MALFORMED");
     }
 
+    @Test
+    public void testOf_sameInstance() {
+        assertThat(AspectRatio.of(8, 6), is(sameInstance(AspectRatio.of(4, 3))));
+        assertThat(AspectRatio.parse("32:18"), is(sameInstance(AspectRatio.of(16, 9))));
+    }
+
+    @Test
+    public void testOf_concurrent() throws Exception {
+        final int threads = 8;
+        // Ratios that no other test uses, so that all the threads race to intern them.
+        final int count = 64;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            @SuppressWarnings("unchecked")
+            Future<AspectRatio[]>[] futures = new Future[threads];
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                futures[t] = executor.submit(new Callable<AspectRatio[]>() {
+                    @Override
+                    public AspectRatio[] call() throws Exception {
+                        start.await();
+                        AspectRatio[] ratios = new AspectRatio[count];
+                        // Each thread walks the ratios in a different order and scale.
+                        for (int i = 0; i < count; i++) {
+                            int k = (i + offset * 7) % count;
+                            ratios[k] = AspectRatio.of((1009 + k) * (offset + 1),
+                                    4093 * (offset + 1));
+                        }
+                        return ratios;
+                    }
+                });
+            }
+            start.countDown();
+            AspectRatio[] expected = futures[0].get(10, TimeUnit.SECONDS);
+            for (int t = 1; t < threads; t++) {
+                AspectRatio[] actual = futures[t].get(10, TimeUnit.SECONDS);
+                for (int i = 0; i < count; i++) {
+                    assertThat(actual[i], is(sameInstance(expected[i])));
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                assertThat(expected[i].getX(), is(1009 + i));
+                assertThat(expected[i].getY(), is(4093));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOf_bounded() throws Exception {
+        final int threads = 4;
+        final int count = AspectRatio.CACHE_CAPACITY * 4;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            @SuppressWarnings("unchecked")
+            Future<Boolean>[] futures = new Future[threads];
+            for (int t = 0; t < threads; t++) {
+                futures[t] = executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        // Far more distinct ratios than the cache can hold
+                        for (int i = 0; i < count; i++) {
+                            AspectRatio ratio = AspectRatio.of(2 * i + 1, 2);
+                            if (ratio.getX() != 2 * i + 1 || ratio.getY() != 2 ||
+                                    !ratio.equals(AspectRatio.of(4 * i + 2, 4))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                });
+            }
+            for (Future<Boolean> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // A full cache still interns new ratios
+        assertThat(AspectRatio.of(8, 6), is(sameInstance(AspectRatio.of(4, 3))));
+        assertThat(AspectRatio.of(3, 1), is(sameInstance(AspectRatio.of(6, 2))));
+    }
+
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class BackendSelectorsTest {
+
+    @Test
+    public void stats_median() {
+        BackendStats stats = new BackendStats(null);
+        assertThat(stats.getSampleCount(CameraView.BACKEND_CAMERA1), is(0));
+        assertThat(stats.getMedianStartupTime(CameraView.BACKEND_CAMERA1), is(-1));
+        stats.record(CameraView.BACKEND_CAMERA1, 300);
+        stats.record(CameraView.BACKEND_CAMERA1, 100);
+        stats.record(CameraView.BACKEND_CAMERA1, 900);
+        assertThat(stats.getSampleCount(CameraView.BACKEND_CAMERA1), is(3));
+        assertThat(stats.getMedianStartupTime(CameraView.BACKEND_CAMERA1), is(300));
+        assertThat(stats.getSampleCount(CameraView.BACKEND_CAMERA2), is(0));
+    }
+
+    @Test
+    public void stats_keepsLatest() {
+        BackendStats stats = new BackendStats(null);
+        for (int i = 0; i < BackendStats.MAX_SAMPLES + 2; i++) {
+            stats.record(CameraView.BACKEND_CAMERA2, i < 2 ? 10000 : 100);
+        }
+        assertThat(stats.getSampleCount(CameraView.BACKEND_CAMERA2), is(BackendStats.MAX_SAMPLES));
+        assertThat(stats.getMedianStartupTime(CameraView.BACKEND_CAMERA2), is(100));
+    }
+
+    @Test
+    public void stats_parseAndFormat() {
+        assertThat(BackendStats.format(new int[]{1, 22, 333}), is("1,22,333"));
+        assertThat(BackendStats.format(new int[0]), is(""));
+        assertThat(BackendStats.parse("1,22,333"), is(new int[]{1, 22, 333}));
+        assertThat(BackendStats.parse("1,x,3"), is(new int[]{1, 3}));
+        assertThat(BackendStats.parse(""), is(new int[0]));
+        assertThat(BackendStats.parse("1,2,3,4,5,6,7,8,9,10").length, is(BackendStats.MAX_SAMPLES));
+    }
+
+    @Test
+    public void adaptive_measuresBothFirst() {
+        BackendSelector selector = BackendSelectors.adaptive();
+        BackendStats stats = new BackendStats(null);
+        for (int i = 0; i < BackendSelectors.MIN_SAMPLES; i++) {
+            assertThat(selector.select(stats), is(CameraView.BACKEND_CAMERA2));
+            stats.record(CameraView.BACKEND_CAMERA2, 500);
+        }
+        for (int i = 0; i < BackendSelectors.MIN_SAMPLES; i++) {
+            assertThat(selector.select(stats), is(CameraView.BACKEND_CAMERA1));
+            stats.record(CameraView.BACKEND_CAMERA1, 200);
+        }
+        assertThat(selector.select(stats), is(CameraView.BACKEND_CAMERA1));
+    }
+
+    @Test
+    public void adaptive_prefersCamera2OnTie() {
+        BackendSelector selector = BackendSelectors.adaptive();
+        BackendStats stats = new BackendStats(null);
+        for (int i = 0; i < BackendSelectors.MIN_SAMPLES; i++) {
+            stats.record(CameraView.BACKEND_CAMERA1, 300);
+            stats.record(CameraView.BACKEND_CAMERA2, 300);
+        }
+        assertThat(selector.select(stats), is(CameraView.BACKEND_CAMERA2));
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A minimal harness for JVM micro benchmarks.
+ *
+ * <p>Benchmarks are skipped unless the {@code cameraview.benchmark} system property is set; run
+ * them with {@code ./gradlew :library:testDebugUnitTest -Pbenchmark}.</p>
+ */
+final class Benchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final int MEASURED_ROUNDS = 10;
+
+    /** Keeps the JIT from eliminating the measured work. */
+    static volatile long sSink;
+
+    interface Operation {
+        /**
+         * Runs the operation once.
+         *
+         * @return Any value derived from the work done.
+         */
+        long run();
+    }
+
+    /**
+     * @return {@code true} if benchmarks are enabled.
+     */
+    static boolean isEnabled() {
+        return Boolean.getBoolean("cameraview.benchmark");
+    }
+
+    /**
+     * Skips the calling test unless benchmarks are enabled.
+     */
+    static void assumeEnabled() {
+        assumeTrue("Benchmarks are disabled", isEnabled());
+    }
+
+    /**
+     * Measures the average time of {@code operation}.
+     *
+     * @param name       The label to print along with the result.
+     * @param iterations The number of times to run the operation in a round.
+     * @param operation  The operation to measure.
+     * @return The best average time of a single run among all rounds, in nanoseconds.
+     */
+    static double measure(String name, int iterations, Operation operation) {
+        long sink = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < iterations; i++) {
+                sink += operation.run();
+            }
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            final long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink += operation.run();
+            }
+            best = Math.min(best, (double) (System.nanoTime() - start) / iterations);
+        }
+        sSink = sink;
+        System.out.println(String.format(Locale.US, "%-48s %12.1f ns/op", name, best));
+        return best;
+    }
+
+    /**
+     * Measures the throughput of {@code operation} when it is run from several threads at once.
+     *
+     * @param name       The label to print along with the result.
+     * @param threads    The number of threads.
+     * @param iterations The number of times each thread runs the operation.
+     * @param operation  The operation to measure. It has to be thread-safe.
+     * @return The number of operations per second across all the threads.
+     */
+    static double measureConcurrent(String name, int threads, final int iterations,
+            final Operation operation) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Callable<Long> task = new Callable<Long>() {
+                @Override
+                public Long call() {
+                    long sink = 0;
+                    for (int i = 0; i < iterations; i++) {
+                        sink += operation.run();
+                    }
+                    return sink;
+                }
+            };
+            double best = 0;
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                final long start = System.nanoTime();
+                final Future<?>[] futures = new Future[threads];
+                for (int t = 0; t < threads; t++) {
+                    futures[t] = executor.submit(task);
+                }
+                long sink = 0;
+                for (Future<?> future : futures) {
+                    sink += (Long) future.get();
+                }
+                sSink = sink;
+                if (round >= WARMUP_ROUNDS) {
+                    final double seconds = (System.nanoTime() - start) / 1e9;
+                    best = Math.max(best, (double) threads * iterations / seconds);
+                }
+            }
+            System.out.println(String.format(Locale.US, "%-48s %12.0f ops/s", name, best));
+            return best;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Benchmark() {
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class CameraStateTest {
+
+    @Test
+    public void canMove_lifecycle() {
+        assertThat(CameraState.canMove(CameraState.CLOSED, CameraState.OPENING), is(true));
+        assertThat(CameraState.canMove(CameraState.OPENING, CameraState.OPENED), is(true));
+        assertThat(CameraState.canMove(CameraState.OPENED, CameraState.CONFIGURING), is(true));
+        assertThat(CameraState.canMove(CameraState.CONFIGURING, CameraState.STREAMING),
+                is(true));
+        assertThat(CameraState.canMove(CameraState.STREAMING, CameraState.CAPTURING), is(true));
+        assertThat(CameraState.canMove(CameraState.CAPTURING, CameraState.STREAMING), is(true));
+        assertThat(CameraState.canMove(CameraState.STREAMING, CameraState.CLOSING), is(true));
+        assertThat(CameraState.canMove(CameraState.CLOSING, CameraState.CLOSED), is(true));
+    }
+
+    @Test
+    public void canMove_same() {
+        for (int state = CameraState.CLOSED; state <= CameraState.CLOSING; state++) {
+            assertThat(CameraState.canMove(state, state), is(true));
+        }
+    }
+
+    @Test
+    public void canMove_illegal() {
+        assertThat(CameraState.canMove(CameraState.CLOSED, CameraState.STREAMING), is(false));
+        assertThat(CameraState.canMove(CameraState.CLOSED, CameraState.CLOSING), is(false));
+        assertThat(CameraState.canMove(CameraState.OPENING, CameraState.CAPTURING), is(false));
+        assertThat(CameraState.canMove(CameraState.STREAMING, CameraState.CLOSED), is(false));
+        assertThat(CameraState.canMove(CameraState.CAPTURING, CameraState.CONFIGURING),
+                is(false));
+        assertThat(CameraState.canMove(CameraState.CLOSING, CameraState.STREAMING), is(false));
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CameraViewImplTest {
+
+    private static final List<Size> THUMBNAIL_SIZES = Arrays.asList(
+            new Size(0, 0), new Size(160, 120), new Size(320, 240), new Size(256, 144));
+
+    @Test
+    public void chooseThumbnailSize_supported() {
+        assertThat(CameraViewImpl.chooseThumbnailSize(new Size(320, 240), THUMBNAIL_SIZES),
+                is(new Size(320, 240)));
+    }
+
+    @Test
+    public void chooseThumbnailSize_fits() {
+        assertThat(CameraViewImpl.chooseThumbnailSize(new Size(300, 200), THUMBNAIL_SIZES),
+                is(new Size(256, 144)));
+    }
+
+    @Test
+    public void chooseThumbnailSize_none() {
+        assertThat(CameraViewImpl.chooseThumbnailSize(new Size(0, 0), THUMBNAIL_SIZES),
+                is(new Size(0, 0)));
+        assertThat(CameraViewImpl.chooseThumbnailSize(new Size(100, 100), THUMBNAIL_SIZES),
+                is(new Size(0, 0)));
+        assertThat(CameraViewImpl.chooseThumbnailSize(new Size(320, 240),
+                Collections.<Size>emptyList()), is(new Size(0, 0)));
+    }
+
+}
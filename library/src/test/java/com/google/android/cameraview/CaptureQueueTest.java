@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+public class CaptureQueueTest {
+
+    private static PictureResult newResult() {
+        return new PictureResult(new byte[]{1, 2, 3}, new Size(4, 3), 90, 1000L, 33000000L, 400);
+    }
+
+    @Test
+    public void unbounded() {
+        CaptureQueue queue = new CaptureQueue();
+        for (int i = 0; i < 100; i++) {
+            PictureFuture future = new PictureFuture();
+            assertThat(queue.admit(future, false), is(sameInstance(future)));
+        }
+        assertThat(queue.size(), is(100));
+    }
+
+    @Test
+    public void reject() throws Exception {
+        CaptureQueue queue = new CaptureQueue();
+        queue.setLimit(1, Constants.CAPTURE_OVERFLOW_REJECT);
+        PictureFuture first = new PictureFuture();
+        assertThat(queue.admit(first, false), is(sameInstance(first)));
+        PictureFuture second = new PictureFuture();
+        assertThat(queue.admit(second, true), is(sameInstance(second)));
+        assertThat(second.isDone(), is(true));
+        try {
+            second.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(RejectedExecutionException.class)));
+        }
+        assertThat(queue.size(), is(1));
+        // A picture that is done makes room
+        first.set(newResult());
+        assertThat(queue.size(), is(0));
+        PictureFuture third = new PictureFuture();
+        assertThat(queue.admit(third, false), is(sameInstance(third)));
+        assertThat(third.isDone(), is(false));
+    }
+
+    @Test
+    public void coalesce() {
+        CaptureQueue queue = new CaptureQueue();
+        queue.setLimit(2, Constants.CAPTURE_OVERFLOW_COALESCE);
+        PictureFuture first = new PictureFuture();
+        PictureFuture second = new PictureFuture();
+        queue.admit(first, false);
+        queue.admit(second, false);
+        PictureFuture third = new PictureFuture();
+        assertThat(queue.admit(third, false), is(sameInstance(second)));
+        assertThat(third.isDone(), is(false));
+        assertThat(queue.size(), is(2));
+    }
+
+    @Test
+    public void waitForRoom() throws Exception {
+        final CaptureQueue queue = new CaptureQueue();
+        queue.setLimit(1, Constants.CAPTURE_OVERFLOW_WAIT);
+        PictureFuture first = new PictureFuture();
+        queue.admit(first, true);
+        // The main thread is never blocked
+        PictureFuture rejected = new PictureFuture();
+        queue.admit(rejected, false);
+        assertThat(rejected.isDone(), is(true));
+        final PictureFuture second = new PictureFuture();
+        final PictureFuture[] admitted = new PictureFuture[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                admitted[0] = queue.admit(second, true);
+            }
+        });
+        thread.start();
+        thread.join(100);
+        assertThat(thread.isAlive(), is(true));
+        first.cancel(false);
+        thread.join(1000);
+        assertThat(thread.isAlive(), is(false));
+        assertThat(admitted[0], is(sameInstance(second)));
+        assertThat(second.isDone(), is(false));
+        assertThat(queue.size(), is(1));
+    }
+
+}
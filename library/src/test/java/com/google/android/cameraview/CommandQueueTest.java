@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CommandQueueTest {
+
+    private final List<Runnable> mDispatched = new ArrayList<>();
+
+    private final StringBuilder mLog = new StringBuilder();
+
+    private CommandQueue mQueue;
+
+    @Before
+    public void setUp() {
+        mQueue = new CommandQueue(new CommandQueue.Dispatcher() {
+            @Override
+            public boolean isCurrentThread() {
+                return false;
+            }
+
+            @Override
+            public void dispatch(Runnable runnable) {
+                mDispatched.add(runnable);
+            }
+        });
+    }
+
+    @Test
+    public void runsInOrder() {
+        mQueue.enqueue(1, log("a"));
+        mQueue.enqueue(2, log("b"));
+        mQueue.enqueue(CommandQueue.NO_KEY, log("c"));
+        assertThat(mLog.toString(), is(""));
+        runDispatched();
+        assertThat(mLog.toString(), is("abc"));
+    }
+
+    @Test
+    public void coalescesPendingCommands() {
+        mQueue.enqueue(1, log("a1"));
+        mQueue.enqueue(2, log("b"));
+        mQueue.enqueue(1, log("a2"));
+        mQueue.enqueue(1, log("a3"));
+        runDispatched();
+        assertThat(mLog.toString(), is("a3b"));
+    }
+
+    @Test
+    public void enqueue_reportsReplaced() {
+        assertThat(mQueue.enqueue(1, log("a1")), is(true));
+        assertThat(mQueue.enqueue(1, log("a2")), is(false));
+        assertThat(mQueue.enqueue(CommandQueue.NO_KEY, log("b")), is(true));
+        assertThat(mQueue.enqueue(CommandQueue.NO_KEY, log("b")), is(true));
+        runDispatched();
+        assertThat(mQueue.enqueue(1, log("a3")), is(true));
+    }
+
+    @Test
+    public void keepsCommandsWithoutKey() {
+        mQueue.enqueue(CommandQueue.NO_KEY, log("a"));
+        mQueue.enqueue(CommandQueue.NO_KEY, log("a"));
+        runDispatched();
+        assertThat(mLog.toString(), is("aa"));
+    }
+
+    @Test
+    public void dispatchesOncePerBatch() {
+        mQueue.enqueue(1, log("a"));
+        mQueue.enqueue(2, log("b"));
+        assertThat(mDispatched.size(), is(1));
+        runDispatched();
+        mQueue.enqueue(1, log("c"));
+        assertThat(mDispatched.size(), is(1));
+        runDispatched();
+        assertThat(mLog.toString(), is("abc"));
+    }
+
+    @Test
+    public void runsCommandsEnqueuedByCommands() {
+        mQueue.enqueue(1, new Runnable() {
+            @Override
+            public void run() {
+                mLog.append("a");
+                mQueue.enqueue(1, log("b"));
+            }
+        });
+        runDispatched();
+        assertThat(mLog.toString(), is("ab"));
+    }
+
+    @Test
+    public void cancel() {
+        mQueue.enqueue(1, log("a"));
+        mQueue.enqueue(2, log("b"));
+        assertThat(mQueue.isPending(1), is(true));
+        mQueue.cancel(1);
+        assertThat(mQueue.isPending(1), is(false));
+        runDispatched();
+        assertThat(mLog.toString(), is("b"));
+        assertThat(mQueue.isPending(2), is(false));
+    }
+
+    private Runnable log(final String s) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                mLog.append(s);
+            }
+        };
+    }
+
+    private void runDispatched() {
+        final List<Runnable> dispatched = new ArrayList<>(mDispatched);
+        mDispatched.clear();
+        for (Runnable runnable : dispatched) {
+            runnable.run();
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+/**
+ * Size lists reported by real devices, for tests and benchmarks that need realistic input.
+ */
+final class DeviceSizes {
+
+    /** JPEG output sizes of a flagship device with a 12MP sensor. */
+    static final Size[] FLAGSHIP = {
+            new Size(4032, 3024), new Size(4000, 3000), new Size(4032, 2268), new Size(4000, 2250),
+            new Size(3840, 2160), new Size(3264, 2448), new Size(3264, 1836), new Size(3024, 3024),
+            new Size(3000, 3000), new Size(2976, 2976), new Size(2880, 2160), new Size(2688, 1512),
+            new Size(2592, 1944), new Size(2592, 1458), new Size(2560, 1920), new Size(2560, 1440),
+            new Size(2448, 2448), new Size(2304, 1728), new Size(2304, 1296), new Size(2160, 2160),
+            new Size(2160, 1080), new Size(2048, 1536), new Size(2048, 1152), new Size(1920, 1440),
+            new Size(1920, 1088), new Size(1920, 1080), new Size(1920, 960), new Size(1856, 1392),
+            new Size(1600, 1200), new Size(1600, 900), new Size(1536, 864), new Size(1456, 1092),
+            new Size(1440, 1080), new Size(1440, 720), new Size(1280, 960), new Size(1280, 768),
+            new Size(1280, 720), new Size(1280, 640), new Size(1200, 1200), new Size(1088, 1088),
+            new Size(1080, 1080), new Size(1024, 768), new Size(1024, 576), new Size(960, 720),
+            new Size(960, 540), new Size(864, 480), new Size(800, 600), new Size(800, 480),
+            new Size(800, 400), new Size(768, 432), new Size(720, 720), new Size(720, 480),
+            new Size(704, 576), new Size(640, 480), new Size(640, 360), new Size(640, 320),
+            new Size(576, 432), new Size(480, 360), new Size(480, 320), new Size(352, 288),
+            new Size(320, 240), new Size(320, 180), new Size(240, 240), new Size(176, 144),
+            new Size(160, 120),
+    };
+
+    /** JPEG output sizes of a mid-range device with a 13MP sensor. */
+    static final Size[] MID_RANGE = {
+            new Size(4160, 3120), new Size(4160, 2340), new Size(4128, 3096), new Size(4128, 2322),
+            new Size(3264, 2448), new Size(3264, 1836), new Size(3200, 2400), new Size(3120, 3120),
+            new Size(3096, 3096), new Size(2592, 1944), new Size(2592, 1458), new Size(2560, 1440),
+            new Size(2400, 2400), new Size(2340, 2340), new Size(2336, 1752), new Size(2304, 1728),
+            new Size(2304, 1296), new Size(2176, 1224), new Size(2048, 1536), new Size(2048, 1152),
+            new Size(1952, 1098), new Size(1920, 1440), new Size(1920, 1080), new Size(1836, 1836),
+            new Size(1800, 1350), new Size(1728, 1296), new Size(1600, 1200), new Size(1600, 900),
+            new Size(1560, 720), new Size(1440, 1080), new Size(1440, 720), new Size(1280, 960),
+            new Size(1280, 720), new Size(1200, 540), new Size(1152, 864), new Size(1088, 1088),
+            new Size(1024, 768), new Size(960, 720), new Size(960, 540), new Size(864, 480),
+            new Size(800, 600), new Size(800, 450), new Size(720, 720), new Size(720, 480),
+            new Size(720, 360), new Size(640, 480), new Size(640, 360), new Size(480, 360),
+            new Size(480, 320), new Size(352, 288), new Size(320, 240), new Size(176, 144),
+    };
+
+    private DeviceSizes() {
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+public class FakeCameraTest {
+
+    private static final FakeCameraProfile PROFILE = new FakeCameraProfile(
+            new Size(640, 480), new Size(1600, 1200), 20, 200, 100, 300);
+
+    private final VirtualScheduler mScheduler = new VirtualScheduler();
+
+    private final FakePreview mPreview = new FakePreview();
+
+    private final StringBuilder mLog = new StringBuilder();
+
+    private FakeCamera mCamera;
+
+    @Before
+    public void setUp() {
+        mCamera = new FakeCamera(new CameraViewImpl.Callback() {
+            @Override
+            public void onCameraOpened() {
+                mLog.append("opened@").append(mScheduler.mNow).append(' ');
+            }
+
+            @Override
+            public void onCameraClosed() {
+                mLog.append("closed@").append(mScheduler.mNow).append(' ');
+            }
+
+            @Override
+            public void onPictureTaken(byte[] data) {
+                mLog.append("picture@").append(mScheduler.mNow).append(' ');
+            }
+        }, mPreview, PROFILE, mScheduler);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void setCameraState_illegal() {
+        mCamera.setCameraState(CameraState.STREAMING);
+    }
+
+    @Test
+    public void open() {
+        assertThat(mCamera.start(), is(true));
+        mScheduler.advance(199);
+        assertThat(mCamera.isCameraOpened(), is(false));
+        mScheduler.advance(1);
+        assertThat(mCamera.isCameraOpened(), is(true));
+        assertThat(mCamera.getCameraState(), is(CameraState.STREAMING));
+        assertThat(mPreview.mBufferWidth, is(640));
+        // A frame every 50 ms from the start of the stream
+        mScheduler.advance(1000);
+        assertThat(mPreview.mFrames, is(21));
+        mCamera.stop();
+        assertThat(mCamera.isCameraOpened(), is(false));
+        assertThat(mLog.toString(), is("opened@200 closed@1200 "));
+        mScheduler.advance(1000);
+        assertThat(mPreview.mFrames, is(21));
+    }
+
+    @Test
+    public void takePicture_pipelined() throws Exception {
+        mCamera.setAutoFocus(true);
+        mCamera.start();
+        final PictureFuture first = new PictureFuture();
+        final PictureFuture second = new PictureFuture();
+        final PictureFuture third = new PictureFuture();
+        // Requested while opening
+        mCamera.takePicture(first);
+        mCamera.takePicture(second);
+        mScheduler.advance(200);
+        mCamera.takePicture(third);
+        // Focused one after another; encoded while the next one is focused for
+        mScheduler.advance(1000);
+        assertThat(mLog.toString(), is("opened@200 picture@600 picture@700 picture@800 "));
+        final PictureResult result = third.get();
+        assertThat(result.getSize(), is(new Size(1600, 1200)));
+        assertThat(result.getData()[0], is((byte) 0xFF));
+        assertThat(result.getData()[1], is((byte) 0xD8));
+        assertThat(mCamera.getCameraState(), is(CameraState.STREAMING));
+    }
+
+    @Test
+    public void stop_abortsPictures() throws Exception {
+        mCamera.start();
+        mScheduler.advance(200);
+        final PictureFuture future = new PictureFuture();
+        mCamera.takePicture(future);
+        mScheduler.advance(100);
+        mCamera.stop();
+        assertThat(future.isDone(), is(true));
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+        mScheduler.advance(1000);
+        assertThat(mLog.toString(), is("opened@200 closed@300 "));
+    }
+
+    @Test
+    public void pausePreview() {
+        mCamera.start();
+        mScheduler.advance(200);
+        mCamera.pausePreview();
+        assertThat(mCamera.getCameraState(), is(CameraState.OPENED));
+        final int frames = mPreview.mFrames;
+        mScheduler.advance(1000);
+        assertThat(mPreview.mFrames, is(frames));
+        mCamera.resumePreview();
+        mScheduler.advance(0);
+        assertThat(mCamera.getCameraState(), is(CameraState.STREAMING));
+        assertThat(mPreview.mFrames, is(frames + 1));
+    }
+
+    @Test
+    public void setFacing_reopens() {
+        mCamera.start();
+        mScheduler.advance(200);
+        mCamera.setFacing(Constants.FACING_FRONT);
+        mScheduler.advance(200);
+        assertThat(mLog.toString(), is("opened@200 closed@200 opened@400 "));
+        assertThat(mCamera.getFacing(), is(Constants.FACING_FRONT));
+        mCamera.setFacing(Constants.FACING_FRONT);
+        mScheduler.advance(200);
+        assertThat(mLog.toString(), is("opened@200 closed@200 opened@400 "));
+    }
+
+    @Test
+    public void setAspectRatio_restartsStream() throws Exception {
+        mCamera.start();
+        mScheduler.advance(200);
+        assertThat(mCamera.setAspectRatio(AspectRatio.of(16, 9)), is(true));
+        mScheduler.advance(0);
+        assertThat(mCamera.getCameraState(), is(CameraState.STREAMING));
+        assertThat(mPreview.mBufferWidth, is(640));
+        assertThat(mPreview.mBufferHeight, is(360));
+        final PictureFuture future = new PictureFuture();
+        mCamera.takePicture(future);
+        mScheduler.advance(1000);
+        assertThat(future.get().getSize(), is(new Size(1600, 900)));
+        assertThat(mCamera.setAspectRatio(AspectRatio.of(3, 2)), is(false));
+        assertThat(mCamera.getAspectRatio(), is(AspectRatio.of(16, 9)));
+    }
+
+    @Test
+    public void setAspectRatio_withinTolerance() throws Exception {
+        mCamera.start();
+        mScheduler.advance(200);
+        // 1280x721 is 0.2% off 16:9
+        assertThat(mCamera.setAspectRatio(AspectRatio.of(1280, 721)), is(true));
+        assertThat(mCamera.getAspectRatio(), is(AspectRatio.of(16, 9)));
+        mCamera.setAspectRatioTolerance(0.001f);
+        assertThat(mCamera.setAspectRatio(AspectRatio.of(721, 720)), is(false));
+        assertThat(mCamera.getAspectRatio(), is(AspectRatio.of(16, 9)));
+    }
+
+    @Test
+    public void setAspectRatio_whileCapturing() throws Exception {
+        mCamera.setAutoFocus(true);
+        mCamera.start();
+        mScheduler.advance(200);
+        final PictureFuture future = new PictureFuture();
+        mCamera.takePicture(future);
+        mCamera.setAspectRatio(AspectRatio.of(1, 1));
+        mScheduler.advance(0);
+        // The stream restarts once the picture is captured
+        assertThat(mCamera.getCameraState(), is(CameraState.CAPTURING));
+        assertThat(mPreview.mBufferWidth, is(640));
+        mScheduler.advance(1000);
+        assertThat(mPreview.mBufferWidth, is(480));
+        assertThat(future.get().getSize(), is(new Size(1600, 1200)));
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import android.view.Surface;
+import android.view.View;
+
+/**
+ * A preview without a view that counts the frames drawn into it.
+ */
+final class FakePreview extends PreviewImpl {
+
+    int mFrames;
+
+    int mBufferWidth;
+
+    int mBufferHeight;
+
+    @Override
+    Surface getSurface() {
+        return null;
+    }
+
+    @Override
+    View getView() {
+        return null;
+    }
+
+    @Override
+    Class getOutputClass() {
+        return null;
+    }
+
+    @Override
+    void setDisplayOrientation(int displayOrientation) {
+    }
+
+    @Override
+    boolean isReady() {
+        return false;
+    }
+
+    @Override
+    boolean reportsFrames() {
+        return true;
+    }
+
+    @Override
+    void onCameraFrame(long sensorTimestamp) {
+        mFrames++;
+    }
+
+    @Override
+    void setBufferSize(int width, int height) {
+        mBufferWidth = width;
+        mBufferHeight = height;
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class FrameRateRangeTest {
+
+    /** Typical ranges of CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES. */
+    private static final List<FrameRateRange> SUPPORTED = Arrays.asList(
+            new FrameRateRange(15, 15),
+            new FrameRateRange(7, 30),
+            new FrameRateRange(15, 30),
+            new FrameRateRange(30, 30),
+            new FrameRateRange(24, 60));
+
+    @Test
+    public void testGetters() {
+        FrameRateRange range = new FrameRateRange(15, 30);
+        assertThat(range.getMin(), is(15));
+        assertThat(range.getMax(), is(30));
+        assertThat(range.isFixed(), is(false));
+        assertThat(new FrameRateRange(30, 30).isFixed(), is(true));
+    }
+
+    @Test
+    public void testToString() {
+        assertThat(new FrameRateRange(15, 30).toString(), is("[15, 30]"));
+    }
+
+    @Test
+    public void testEquals() {
+        assertThat(new FrameRateRange(15, 30).equals(new FrameRateRange(15, 30)), is(true));
+        assertThat(new FrameRateRange(15, 30).equals(new FrameRateRange(30, 30)), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid_reversed() {
+        new FrameRateRange(30, 15);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid_zero() {
+        new FrameRateRange(0, 30);
+    }
+
+    @Test
+    public void testClosest() {
+        assertThat(FrameRateRange.closest(new FrameRateRange(30, 30), SUPPORTED),
+                is(new FrameRateRange(30, 30)));
+        assertThat(FrameRateRange.closest(new FrameRateRange(20, 30), SUPPORTED),
+                is(new FrameRateRange(15, 30)));
+        assertThat(FrameRateRange.closest(new FrameRateRange(60, 60), SUPPORTED),
+                is(new FrameRateRange(24, 60)));
+        assertThat(FrameRateRange.closest(new FrameRateRange(10, 20), SUPPORTED),
+                is(new FrameRateRange(15, 15)));
+        assertThat(FrameRateRange.closest(new FrameRateRange(30, 30),
+                Collections.<FrameRateRange>emptyList()), is(nullValue()));
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class ImageMatcherTest {
+
+    private final StringBuilder mLog = new StringBuilder();
+
+    private final ImageMatcher<String, String> mMatcher = new ImageMatcher<>(
+            new ImageMatcher.Callback<String, String>() {
+                @Override
+                public void onMatched(String request, String image) {
+                    mLog.append(request).append('=').append(image).append(' ');
+                }
+
+                @Override
+                public void onDropped(String image) {
+                    mLog.append("drop:").append(image).append(' ');
+                }
+            });
+
+    @Test
+    public void resultFirst() {
+        mMatcher.add("a");
+        mMatcher.onStarted("a", 100);
+        mMatcher.onCompleted("a", 100);
+        assertThat(mLog.toString(), is(""));
+        mMatcher.onImage(100, "i100");
+        assertThat(mLog.toString(), is("a=i100 "));
+        assertThat(mMatcher.size(), is(0));
+    }
+
+    @Test
+    public void imageFirst() {
+        mMatcher.add("a");
+        mMatcher.onImage(100, "i100");
+        assertThat(mLog.toString(), is(""));
+        mMatcher.onStarted("a", 100);
+        assertThat(mLog.toString(), is(""));
+        mMatcher.onCompleted("a", 100);
+        assertThat(mLog.toString(), is("a=i100 "));
+    }
+
+    @Test
+    public void imagesOutOfOrder() {
+        mMatcher.add("a");
+        mMatcher.add("b");
+        mMatcher.onStarted("a", 100);
+        mMatcher.onStarted("b", 200);
+        mMatcher.onImage(200, "i200");
+        mMatcher.onImage(100, "i100");
+        mMatcher.onCompleted("b", 200);
+        mMatcher.onCompleted("a", 100);
+        assertThat(mLog.toString(), is("b=i200 a=i100 "));
+    }
+
+    @Test
+    public void failed_imageAfter() {
+        mMatcher.add("a");
+        mMatcher.add("b");
+        mMatcher.onStarted("a", 100);
+        assertThat(mMatcher.onFailed("a", true), is(true));
+        mMatcher.onImage(100, "i100");
+        mMatcher.onCompleted("b", 200);
+        mMatcher.onImage(200, "i200");
+        assertThat(mLog.toString(), is("drop:i100 b=i200 "));
+    }
+
+    @Test
+    public void failed_imageBefore() {
+        mMatcher.add("a");
+        mMatcher.onStarted("a", 100);
+        mMatcher.onImage(100, "i100");
+        mMatcher.onFailed("a", true);
+        assertThat(mLog.toString(), is("drop:i100 "));
+        assertThat(mMatcher.size(), is(0));
+    }
+
+    @Test
+    public void failed_notWaiting() {
+        assertThat(mMatcher.onFailed("a", false), is(false));
+    }
+
+    @Test
+    public void orphanImage_dropped() {
+        mMatcher.add("a");
+        mMatcher.onImage(50, "i50");
+        assertThat(mLog.toString(), is(""));
+        // Every capture is reported now, and none of them took the image
+        mMatcher.onStarted("a", 100);
+        assertThat(mLog.toString(), is("drop:i50 "));
+        mMatcher.onImage(70, "i70");
+        assertThat(mLog.toString(), is("drop:i50 drop:i70 "));
+    }
+
+    @Test
+    public void imageLost() {
+        mMatcher.add("a");
+        mMatcher.add("b");
+        mMatcher.onStarted("a", 100);
+        mMatcher.onImage(100, "i100");
+        mMatcher.onStarted("b", 200);
+        // The image of "a" is held, so the lost one is of "b"
+        assertThat(mMatcher.onImageLost(), is("b"));
+        assertThat(mMatcher.contains("b"), is(false));
+        mMatcher.onCompleted("a", 100);
+        assertThat(mLog.toString(), is("a=i100 "));
+        assertThat(mMatcher.onImageLost(), is(nullValue()));
+    }
+
+    @Test
+    public void remove() {
+        mMatcher.add("a");
+        assertThat(mMatcher.remove("a"), is(true));
+        assertThat(mMatcher.remove("a"), is(false));
+        mMatcher.onImage(100, "i100");
+        assertThat(mLog.toString(), is("drop:i100 "));
+    }
+
+    @Test
+    public void clear() {
+        mMatcher.add("a");
+        mMatcher.add("b");
+        mMatcher.onStarted("a", 100);
+        mMatcher.onImage(100, "i100");
+        assertThat(mMatcher.clear(), is(Arrays.asList("a", "b")));
+        assertThat(mLog.toString(), is("drop:i100 "));
+        assertThat(mMatcher.size(), is(0));
+    }
+
+}
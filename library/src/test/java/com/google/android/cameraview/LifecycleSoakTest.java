@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Cycles the fake camera through starts, stops, facing switches and aspect ratio changes, and
+ * fails when a cycle leaves work scheduled, preview outputs attached, unbalanced callbacks or
+ * pictures that never complete, or when the time a cycle takes or the heap grow as the cycles go
+ * by.
+ *
+ * <p>The default run is short enough for every build, and allows for the noise of a shared
+ * machine; set the {@code cameraview.soakCycles} system property for a longer one. With
+ * benchmarks enabled, the growth limits are tighter.</p>
+ */
+public class LifecycleSoakTest {
+
+    private static final FakeCameraProfile PROFILE = new FakeCameraProfile(
+            new Size(320, 240), new Size(640, 480), 30, 50, 20, 30);
+
+    /** Each cycle switches to the next one, so that the stream is restarted every time. */
+    private static final AspectRatio[] RATIOS = {
+            AspectRatio.of(4, 3), AspectRatio.of(16, 9), AspectRatio.of(1, 1)};
+
+    private static final int DEFAULT_CYCLES = 2000;
+
+    /** The heap is measured once every this many cycles, as it takes a full collection. */
+    private static final int HEAP_INTERVAL = 100;
+
+    /** Allowance for the noise of the heap measurements. */
+    private static final long HEAP_SLACK_BYTES = 512 * 1024;
+
+    /** How much slower the last cycles may be than the first ones. */
+    private static final double ELAPSED_SLACK = 3;
+
+    /** The allowances of a default run, which may share the machine with other builds. */
+    private static final long DEFAULT_HEAP_SLACK_BYTES = 4 * 1024 * 1024;
+
+    private static final double DEFAULT_ELAPSED_SLACK = 10;
+
+    private final VirtualScheduler mScheduler = new VirtualScheduler();
+
+    private final FakePreview mPreview = new FakePreview();
+
+    private int mOpened;
+
+    private int mClosed;
+
+    private int mPictures;
+
+    private FakeCamera mCamera;
+
+    @Before
+    public void setUp() {
+        mCamera = new FakeCamera(new CameraViewImpl.Callback() {
+            @Override
+            public void onCameraOpened() {
+                mOpened++;
+            }
+
+            @Override
+            public void onCameraClosed() {
+                mClosed++;
+            }
+
+            @Override
+            public void onPictureTaken(byte[] data) {
+                mPictures++;
+            }
+        }, mPreview, PROFILE, mScheduler);
+        mCamera.setAutoFocus(true);
+    }
+
+    @Test
+    public void cyclesDoNotGrow() {
+        final int cycles = Integer.getInteger("cameraview.soakCycles", DEFAULT_CYCLES);
+        final boolean strict = Benchmark.isEnabled();
+        final long[] elapsed = new long[cycles];
+        final long[] heap = new long[cycles / HEAP_INTERVAL + 1];
+        heap[0] = usedHeap();
+        int opened = 0;
+        int pictures = 0;
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            final long start = System.nanoTime();
+            final PictureFuture future = new PictureFuture();
+            final int facing = cycle % 2 == 0 ? Constants.FACING_FRONT : Constants.FACING_BACK;
+            mCamera.start();
+            if (cycle % 4 == 3) {
+                // Switches the facing and stops while opening, with a picture pending
+                mCamera.takePicture(future);
+                mCamera.setFacing(facing);
+                mScheduler.advance(PROFILE.getOpenMillis() / 2);
+            } else {
+                mScheduler.advance(PROFILE.getOpenMillis());
+                final AspectRatio ratio = RATIOS[cycle % RATIOS.length];
+                mCamera.setAspectRatio(ratio);
+                mScheduler.advance(0);
+                final Size buffer = FakeCamera.crop(PROFILE.getPreviewSize(), ratio);
+                assertThat("Stream not restarted in cycle " + cycle,
+                        mPreview.mBufferHeight, is(buffer.getHeight()));
+                assertThat("Preview outputs in cycle " + cycle,
+                        mCamera.getPreviewOutputCount(), is(1));
+                mCamera.takePicture(future);
+                mScheduler.advance(PROFILE.getFocusMillis() + PROFILE.getEncodeMillis());
+                // Reopens the camera
+                mCamera.setFacing(facing);
+                mScheduler.advance(PROFILE.getOpenMillis());
+                opened += 2;
+                pictures++;
+            }
+            mCamera.stop();
+            elapsed[cycle] = System.nanoTime() - start;
+
+            assertThat("Work left scheduled after cycle " + cycle,
+                    mScheduler.getPendingCount(), is(0));
+            assertThat("Preview output left attached after cycle " + cycle,
+                    mCamera.getPreviewOutputCount(), is(0));
+            assertThat("Unbalanced callbacks after cycle " + cycle, mOpened, is(mClosed));
+            assertThat(mOpened, is(opened));
+            assertThat(mPictures, is(pictures));
+            assertThat("Picture left pending in cycle " + cycle, future.isDone(), is(true));
+            if ((cycle + 1) % HEAP_INTERVAL == 0) {
+                heap[(cycle + 1) / HEAP_INTERVAL] = usedHeap();
+            }
+        }
+
+        // The first tenth of the cycles warms up the JIT and the caches of the fake camera
+        final int window = Math.max(cycles / 10, 1);
+        final long first = median(elapsed, window, 2 * window);
+        final long last = median(elapsed, cycles - window, cycles);
+        final int warm = Math.min(heap.length - 1, (2 * window) / HEAP_INTERVAL);
+        final long growth = heap[heap.length - 1] - heap[warm];
+        if (strict) {
+            System.out.println(String.format(Locale.US,
+                    "%-48s %.1f us -> %.1f us a cycle, heap %+d KB", "LifecycleSoakTest",
+                    first / 1e3, last / 1e3, growth / 1024));
+        }
+        assertTrue("A cycle went from " + first + " ns to " + last + " ns",
+                last <= first * (strict ? ELAPSED_SLACK : DEFAULT_ELAPSED_SLACK));
+        assertTrue("The heap grew by " + growth + " bytes",
+                growth <= (strict ? HEAP_SLACK_BYTES : DEFAULT_HEAP_SLACK_BYTES));
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        // A single collection may leave garbage behind for the next one
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long median(long[] values, int from, int to) {
+        final long[] window = Arrays.copyOfRange(values, from, to);
+        Arrays.sort(window);
+        return window[window.length / 2];
+    }
+
+}
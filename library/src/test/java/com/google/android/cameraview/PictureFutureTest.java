@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class PictureFutureTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static PictureResult newResult() {
+        return new PictureResult(new byte[]{1, 2, 3}, new Size(4, 3), 90, 1000L, 33000000L, 400);
+    }
+
+    @Test
+    public void set() throws Exception {
+        PictureFuture future = new PictureFuture();
+        assertThat(future.isDone(), is(false));
+        PictureResult result = newResult();
+        assertThat(future.set(result), is(true));
+        assertThat(future.isDone(), is(true));
+        assertThat(future.isCancelled(), is(false));
+        assertThat(future.get(), is(sameInstance(result)));
+        assertThat(future.get(0, TimeUnit.MILLISECONDS), is(sameInstance(result)));
+        // Only the first completion counts
+        assertThat(future.set(newResult()), is(false));
+        assertThat(future.cancel(false), is(false));
+        assertThat(future.get(), is(sameInstance(result)));
+    }
+
+    @Test
+    public void setException() throws Exception {
+        PictureFuture future = new PictureFuture();
+        IllegalStateException exception = new IllegalStateException();
+        assertThat(future.setException(exception), is(true));
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(sameInstance((Throwable) exception)));
+        }
+    }
+
+    @Test
+    public void cancel() throws Exception {
+        PictureFuture future = new PictureFuture();
+        assertThat(future.cancel(true), is(true));
+        assertThat(future.isCancelled(), is(true));
+        assertThat(future.isDone(), is(true));
+        assertThat(future.set(newResult()), is(false));
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException e) {
+            assertThat(e, is(instanceOf(CancellationException.class)));
+        }
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void get_timeout() throws Exception {
+        new PictureFuture().get(1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void get_onDeliveryThread() throws Exception {
+        PictureFuture future = new PictureFuture(new CommandQueue.Dispatcher() {
+            @Override
+            public boolean isCurrentThread() {
+                return true;
+            }
+
+            @Override
+            public void dispatch(Runnable runnable) {
+                runnable.run();
+            }
+        });
+        try {
+            future.get(1, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(future.isDone(), is(false));
+        }
+        // Waiting is fine once it is done
+        PictureResult result = newResult();
+        future.set(result);
+        assertThat(future.get(), is(sameInstance(result)));
+    }
+
+    @Test
+    public void listeners() {
+        PictureFuture future = new PictureFuture();
+        final int[] calls = new int[1];
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                calls[0]++;
+            }
+        };
+        future.addListener(listener, DIRECT);
+        assertThat(calls[0], is(0));
+        future.set(newResult());
+        assertThat(calls[0], is(1));
+        // Runs right away once done
+        future.addListener(listener, DIRECT);
+        assertThat(calls[0], is(2));
+    }
+
+    @Test
+    public void result() {
+        PictureResult result = newResult();
+        assertThat(result.getData().length, is(3));
+        assertThat(result.getSize(), is(new Size(4, 3)));
+        assertThat(result.getOrientation(), is(90));
+        assertThat(result.getTimestamp(), is(1000L));
+        assertThat(result.getExposureTime(), is(33000000L));
+        assertThat(result.getSensitivity(), is(400));
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PreviewStatsTrackerTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void empty() {
+        PreviewStats stats = new PreviewStatsTracker().snapshot(1000 * MS);
+        assertThat(stats.getFrameCount(), is(0));
+        assertEquals(0.f, stats.getFrameRate(), 0.f);
+        assertTrue(Float.isNaN(stats.getLatency()));
+    }
+
+    @Test
+    public void steady() {
+        PreviewStatsTracker tracker = new PreviewStatsTracker();
+        long time = 0;
+        for (int i = 0; i < 120; i++) {
+            time += 33 * MS;
+            tracker.onFrame(time, 10 * MS);
+        }
+        PreviewStats stats = tracker.snapshot(time);
+        // 2 seconds at 33 ms
+        assertThat(stats.getFrameCount(), is(61));
+        assertEquals(30.3f, stats.getFrameRate(), 0.1f);
+        assertEquals(33.f, stats.getMedianInterval(), 0.f);
+        assertEquals(33.f, stats.getMaxInterval(), 0.f);
+        assertThat(stats.getLongFrameCount(), is(0));
+        assertThat(stats.getBucketFrameCount(PreviewStats.bucketOf(33 * MS)), is(60));
+        assertEquals(10.f, stats.getLatency(), 0.f);
+    }
+
+    @Test
+    public void longFrames() {
+        PreviewStatsTracker tracker = new PreviewStatsTracker();
+        long time = 0;
+        for (int i = 0; i < 30; i++) {
+            time += (i % 10 == 9 ? 83 : 33) * MS;
+            tracker.onFrame(time, -1);
+        }
+        PreviewStats stats = tracker.snapshot(time);
+        assertThat(stats.getLongFrameCount(), is(3));
+        assertEquals(83.f, stats.getMaxInterval(), 0.f);
+        assertThat(stats.getBucketFrameCount(PreviewStats.bucketOf(83 * MS)), is(3));
+        assertTrue(Float.isNaN(stats.getLatency()));
+    }
+
+    @Test
+    public void oldFramesLeaveWindow() {
+        PreviewStatsTracker tracker = new PreviewStatsTracker();
+        for (int i = 1; i <= 60; i++) {
+            tracker.onFrame(i * 33 * MS, -1);
+        }
+        assertThat(tracker.snapshot(60 * 33 * MS + PreviewStatsTracker.WINDOW_NANOS + 1)
+                .getFrameCount(), is(0));
+    }
+
+    @Test
+    public void wrapsAround() {
+        PreviewStatsTracker tracker = new PreviewStatsTracker();
+        long time = 0;
+        for (int i = 0; i < 2000; i++) {
+            time += 4 * MS;
+            tracker.onFrame(time, -1);
+        }
+        PreviewStats stats = tracker.snapshot(time);
+        assertThat(stats.getFrameCount(), is(501));
+        assertEquals(4.f, stats.getMaxInterval(), 0.f);
+    }
+
+    @Test
+    public void reset() {
+        PreviewStatsTracker tracker = new PreviewStatsTracker();
+        tracker.onFrame(10 * MS, -1);
+        tracker.reset();
+        assertThat(tracker.snapshot(10 * MS).getFrameCount(), is(0));
+    }
+
+    @Test
+    public void latencyOf() {
+        final long monotonic = 5000 * MS;
+        final long realtime = 90000 * MS;
+        assertThat(PreviewStatsTracker.latencyOf(monotonic - 20 * MS, monotonic, realtime),
+                is(20 * MS));
+        assertThat(PreviewStatsTracker.latencyOf(realtime - 30 * MS, monotonic, realtime),
+                is(30 * MS));
+        assertThat(PreviewStatsTracker.latencyOf(1, monotonic, realtime), is(-1L));
+        assertThat(PreviewStatsTracker.latencyOf(0, monotonic, realtime), is(-1L));
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import android.media.ExifInterface;
+
+import org.junit.Test;
+
+public class RawCaptureTest {
+
+    @Test
+    public void toExifOrientation() {
+        assertThat(RawCapture.toExifOrientation(0), is(ExifInterface.ORIENTATION_NORMAL));
+        assertThat(RawCapture.toExifOrientation(90), is(ExifInterface.ORIENTATION_ROTATE_90));
+        assertThat(RawCapture.toExifOrientation(180), is(ExifInterface.ORIENTATION_ROTATE_180));
+        assertThat(RawCapture.toExifOrientation(270), is(ExifInterface.ORIENTATION_ROTATE_270));
+    }
+
+}
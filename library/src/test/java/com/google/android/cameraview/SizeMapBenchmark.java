@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.SortedSet;
+
+/**
+ * Compares {@link SizeMap} against {@link LegacySizeMap} with the sizes of devices that report
+ * more than 50 sizes.
+ */
+public class SizeMapBenchmark {
+
+    private static final int ITERATIONS = 20000;
+
+    @Before
+    public void setUp() {
+        Benchmark.assumeEnabled();
+    }
+
+    @Test
+    public void add() {
+        add("flagship", DeviceSizes.FLAGSHIP);
+        add("mid-range", DeviceSizes.MID_RANGE);
+    }
+
+    @Test
+    public void largest() {
+        largest("flagship", DeviceSizes.FLAGSHIP);
+        largest("mid-range", DeviceSizes.MID_RANGE);
+    }
+
+    @Test
+    public void ceiling() {
+        ceiling("flagship", DeviceSizes.FLAGSHIP);
+        ceiling("mid-range", DeviceSizes.MID_RANGE);
+    }
+
+    private static void add(String device, final Size[] sizes) {
+        Benchmark.measure("LegacySizeMap.add (" + device + ")", ITERATIONS,
+                new Benchmark.Operation() {
+                    @Override
+                    public long run() {
+                        LegacySizeMap map = new LegacySizeMap();
+                        for (Size size : sizes) {
+                            map.add(size);
+                        }
+                        return map.ratios().size();
+                    }
+                });
+        Benchmark.measure("SizeMap.add (" + device + ")", ITERATIONS,
+                new Benchmark.Operation() {
+                    @Override
+                    public long run() {
+                        SizeMap map = new SizeMap();
+                        for (Size size : sizes) {
+                            map.add(size);
+                        }
+                        return map.snapshot().ratios().size();
+                    }
+                });
+    }
+
+    private static void largest(String device, Size[] sizes) {
+        final LegacySizeMap legacy = new LegacySizeMap();
+        final SizeMap map = new SizeMap();
+        for (Size size : sizes) {
+            legacy.add(size);
+            map.add(size);
+        }
+        final AspectRatio ratio = AspectRatio.of(4, 3);
+        Benchmark.measure("LegacySizeMap largest 4:3 (" + device + ")", ITERATIONS * 10,
+                new Benchmark.Operation() {
+                    @Override
+                    public long run() {
+                        return legacy.sizes(ratio).last().getWidth();
+                    }
+                });
+        Benchmark.measure("SizeMap largest 4:3 (" + device + ")", ITERATIONS * 10,
+                new Benchmark.Operation() {
+                    @Override
+                    public long run() {
+                        return map.snapshot().largest(ratio).getWidth();
+                    }
+                });
+    }
+
+    private static void ceiling(String device, Size[] sizes) {
+        final LegacySizeMap legacy = new LegacySizeMap();
+        final SizeMap map = new SizeMap();
+        for (Size size : sizes) {
+            legacy.add(size);
+            map.add(size);
+        }
+        final AspectRatio ratio = AspectRatio.of(16, 9);
+        final int width = 1920;
+        final int height = 1080;
+        Benchmark.measure("LegacySizeMap smallest >= 1920x1080 (" + device + ")", ITERATIONS * 10,
+                new Benchmark.Operation() {
+                    @Override
+                    public long run() {
+                        SortedSet<Size> candidates = legacy.sizes(ratio);
+                        for (Size size : candidates) {
+                            if (size.getWidth() >= width && size.getHeight() >= height) {
+                                return size.getWidth();
+                            }
+                        }
+                        return candidates.last().getWidth();
+                    }
+                });
+        Benchmark.measure("SizeMap smallest >= 1920x1080 (" + device + ")", ITERATIONS * 10,
+                new Benchmark.Operation() {
+                    @Override
+                    public long run() {
+                        return map.snapshot().ceiling(ratio, width, height).getWidth();
+                    }
+                });
+    }
+
+}
@@ -17,10 +17,15 @@
 package com.google.android.cameraview;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class SizeMapTest {
 
     @Test
@@ -52,4 +57,147 @@ public class SizeMapTest {
         assertThat(map.ratios().size(), is(0));
     }
 
+    @Test
+    public void testRemove() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(4, 3));
+        map.add(new Size(16, 9));
+        map.add(new Size(1, 1));
+        map.remove(AspectRatio.of(16, 9));
+        assertThat(map.ratios().size(), is(2));
+        assertThat(map.contains(AspectRatio.of(16, 9)), is(false));
+        assertThat(map.contains(AspectRatio.of(4, 3)), is(true));
+        assertThat(map.contains(AspectRatio.of(1, 1)), is(true));
+        assertThat(map.sizes(AspectRatio.of(16, 9)), is(nullValue()));
+    }
+
+    @Test
+    public void testRemove_whileIterating() {
+        SizeMap map = new SizeMap();
+        for (Size size : DeviceSizes.FLAGSHIP) {
+            map.add(size);
+        }
+        for (AspectRatio ratio : map.ratios()) {
+            map.remove(ratio);
+        }
+        assertThat(map.ratios().size(), is(0));
+    }
+
+    @Test
+    public void testSizes_sorted() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(1920, 1080));
+        map.add(new Size(640, 360));
+        map.add(new Size(1280, 720));
+        map.add(new Size(1280, 720));
+        List<Size> sizes = map.sizes(AspectRatio.of(16, 9));
+        assertThat(sizes.size(), is(3));
+        assertThat(sizes.get(0), is(new Size(640, 360)));
+        assertThat(sizes.get(1), is(new Size(1280, 720)));
+        assertThat(sizes.get(2), is(new Size(1920, 1080)));
+    }
+
+    @Test
+    public void testSnapshot() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        SizeMap.Snapshot snapshot = map.snapshot();
+        assertThat(map.snapshot(), is(sameInstance(snapshot)));
+        map.add(new Size(1280, 720));
+        assertThat(snapshot.ratios().size(), is(1));
+        assertThat(snapshot.contains(AspectRatio.of(16, 9)), is(false));
+        assertThat(map.snapshot().ratios().size(), is(2));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshot_immutable() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        map.ratios().clear();
+    }
+
+    @Test
+    public void testSmallestLargest() {
+        SizeMap map = new SizeMap();
+        for (Size size : DeviceSizes.FLAGSHIP) {
+            map.add(size);
+        }
+        SizeMap.Snapshot snapshot = map.snapshot();
+        assertThat(snapshot.smallest(AspectRatio.of(4, 3)), is(new Size(160, 120)));
+        assertThat(snapshot.largest(AspectRatio.of(4, 3)), is(new Size(4032, 3024)));
+        assertThat(snapshot.largest(AspectRatio.of(7, 5)), is(nullValue()));
+    }
+
+    @Test
+    public void testCeiling() {
+        SizeMap map = new SizeMap();
+        for (Size size : DeviceSizes.FLAGSHIP) {
+            map.add(size);
+        }
+        SizeMap.Snapshot snapshot = map.snapshot();
+        AspectRatio ratio = AspectRatio.of(16, 9);
+        assertThat(snapshot.ceiling(ratio, 1920, 1080), is(new Size(1920, 1080)));
+        assertThat(snapshot.ceiling(ratio, 1921, 1080), is(new Size(2048, 1152)));
+        assertThat(snapshot.ceiling(ratio, 1000, 1081), is(new Size(2048, 1152)));
+        assertThat(snapshot.ceiling(ratio, 1, 1), is(new Size(320, 180)));
+        assertThat(snapshot.ceiling(ratio, 4033, 2268), is(nullValue()));
+    }
+
+    @Test
+    public void testFloor() {
+        SizeMap map = new SizeMap();
+        for (Size size : DeviceSizes.FLAGSHIP) {
+            map.add(size);
+        }
+        SizeMap.Snapshot snapshot = map.snapshot();
+        AspectRatio ratio = AspectRatio.of(16, 9);
+        assertThat(snapshot.floor(ratio, 1920, 1080), is(new Size(1920, 1080)));
+        assertThat(snapshot.floor(ratio, 2047, 1152), is(new Size(1920, 1080)));
+        assertThat(snapshot.floor(ratio, 4000, 1079), is(new Size(1600, 900)));
+        assertThat(snapshot.floor(ratio, 10000, 10000), is(new Size(4032, 2268)));
+        assertThat(snapshot.floor(ratio, 319, 180), is(nullValue()));
+    }
+
+    @Test
+    public void testMatchesLegacy() {
+        for (Size[] device : new Size[][]{DeviceSizes.FLAGSHIP, DeviceSizes.MID_RANGE}) {
+            SizeMap map = new SizeMap();
+            LegacySizeMap legacy = new LegacySizeMap();
+            for (Size size : device) {
+                assertThat(map.add(size), is(legacy.add(size)));
+            }
+            assertThat(map.ratios().size(), is(legacy.ratios().size()));
+            for (AspectRatio ratio : legacy.ratios()) {
+                assertThat(map.sizes(ratio), is((List<Size>) new ArrayList<>(legacy.sizes(ratio))));
+            }
+        }
+    }
+
+    @Test
+    public void testClosest() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(1920, 1088)); // 30:17
+        map.add(new Size(1440, 1080)); // 4:3
+        map.add(new Size(1088, 1088)); // 1:1
+        SizeMap.Snapshot snapshot = map.snapshot();
+        AspectRatio ratio = AspectRatio.of(16, 9);
+        assertThat(snapshot.closest(ratio, 0.01f), is(AspectRatio.of(30, 17)));
+        assertThat(snapshot.closest(ratio, 0.001f), is(nullValue()));
+        assertThat(snapshot.closest(AspectRatio.of(4, 3), 0f), is(AspectRatio.of(4, 3)));
+        assertThat(snapshot.closest(AspectRatio.of(11, 10), 0.01f), is(nullValue()));
+        assertThat(snapshot.closest(AspectRatio.of(11, 10), Float.POSITIVE_INFINITY),
+                is(AspectRatio.of(1, 1)));
+        assertThat(snapshot.closest(AspectRatio.of(3, 1), Float.POSITIVE_INFINITY),
+                is(AspectRatio.of(30, 17)));
+        assertThat(snapshot.closest(AspectRatio.of(1, 3), Float.POSITIVE_INFINITY),
+                is(AspectRatio.of(1, 1)));
+    }
+
+    @Test
+    public void testClosest_empty() {
+        SizeMap map = new SizeMap();
+        assertThat(map.snapshot().closest(AspectRatio.of(4, 3), Float.POSITIVE_INFINITY),
+                is(nullValue()));
+    }
+
 }
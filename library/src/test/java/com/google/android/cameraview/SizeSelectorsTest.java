@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class SizeSelectorsTest {
+
+    /** 16:9 sizes; the largest one cannot be streamed at 60 fps. */
+    private static final List<SizeSelector.Candidate> CANDIDATES = Arrays.asList(
+            new SizeSelector.Candidate(new Size(3840, 2160), 30),
+            new SizeSelector.Candidate(new Size(1920, 1080), 60),
+            new SizeSelector.Candidate(new Size(1280, 720), 60),
+            new SizeSelector.Candidate(new Size(640, 360), 30));
+
+    @Test
+    public void testCost() {
+        SizeSelector.Candidate candidate = new SizeSelector.Candidate(new Size(1920, 1080), 60);
+        assertThat(candidate.getCost(), is(1920L * 1080 * 60));
+    }
+
+    @Test
+    public void testSelect_rankedByCost() {
+        final Size[] first = new Size[1];
+        SizeSelectors.select(new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Candidate> candidates, @NonNull Size target) {
+                for (int i = 1; i < candidates.size(); i++) {
+                    assertThat(candidates.get(i - 1).getCost() <= candidates.get(i).getCost(),
+                            is(true));
+                }
+                first[0] = candidates.get(0).getSize();
+                return first[0];
+            }
+        }, CANDIDATES, new Size(0, 0));
+        assertThat(first[0], is(new Size(640, 360)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSelect_notCandidate() {
+        SizeSelectors.select(new SizeSelector() {
+            @NonNull
+            @Override
+            public Size select(@NonNull List<Candidate> candidates, @NonNull Size target) {
+                return new Size(1, 1);
+            }
+        }, CANDIDATES, new Size(0, 0));
+    }
+
+    @Test
+    public void testMinimumBandwidth() {
+        SizeSelector selector = SizeSelectors.minimumBandwidth();
+        assertThat(select(selector, 1000, 600), is(new Size(1280, 720)));
+        assertThat(select(selector, 1300, 700), is(new Size(1920, 1080)));
+        assertThat(select(selector, 5000, 3000), is(new Size(640, 360)));
+    }
+
+    @Test
+    public void testMatchDisplay() {
+        SizeSelector selector = SizeSelectors.matchDisplay();
+        assertThat(select(selector, 1920, 1080), is(new Size(1920, 1080)));
+        assertThat(select(selector, 1800, 1000), is(new Size(1920, 1080)));
+        assertThat(select(selector, 700, 400), is(new Size(640, 360)));
+        assertThat(select(selector, 0, 0), is(new Size(640, 360)));
+    }
+
+    @Test
+    public void testMaxResolution() {
+        assertThat(select(SizeSelectors.maxResolution(8.3f), 0, 0), is(new Size(3840, 2160)));
+        assertThat(select(SizeSelectors.maxResolution(8f), 0, 0), is(new Size(1920, 1080)));
+        assertThat(select(SizeSelectors.maxResolution(0.1f), 0, 0), is(new Size(640, 360)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxResolution_invalid() {
+        SizeSelectors.maxResolution(0);
+    }
+
+    @Test
+    public void testMaxFrameRate() {
+        SizeSelector selector = SizeSelectors.maxFrameRate();
+        assertThat(select(selector, 0, 0), is(new Size(1280, 720)));
+        assertThat(select(selector, 1300, 700), is(new Size(1920, 1080)));
+        assertThat(select(selector, 3840, 2160), is(new Size(1920, 1080)));
+    }
+
+    private static Size select(SizeSelector selector, int width, int height) {
+        return SizeSelectors.select(selector, CANDIDATES, new Size(width, height));
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import android.hardware.camera2.CaptureResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StillCaptureSequenceTest {
+
+    private static final int AF_INACTIVE = CaptureResult.CONTROL_AF_STATE_INACTIVE;
+    private static final int AF_SCANNING = CaptureResult.CONTROL_AF_STATE_ACTIVE_SCAN;
+    private static final int AF_LOCKED = CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED;
+    private static final int AF_FAILED = CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED;
+
+    private static final int AE_SEARCHING = CaptureResult.CONTROL_AE_STATE_SEARCHING;
+    private static final int AE_CONVERGED = CaptureResult.CONTROL_AE_STATE_CONVERGED;
+    private static final int AE_PRECAPTURE = CaptureResult.CONTROL_AE_STATE_PRECAPTURE;
+    private static final int AE_FLASH_REQUIRED = CaptureResult.CONTROL_AE_STATE_FLASH_REQUIRED;
+
+    /** The time between two results of a session streaming at 30 fps. */
+    private static final long FRAME_NANOS = 33333333L;
+
+    private final StringBuilder mLog = new StringBuilder();
+
+    private StillCaptureSequence mSequence;
+
+    /** The time of the session, advanced by each result. */
+    private long mNow;
+
+    @Before
+    public void setUp() {
+        mSequence = new StillCaptureSequence(new StillCaptureSequence.Requests() {
+            @Override
+            public void lockFocus() {
+                mLog.append("lock@").append(frame()).append(' ');
+            }
+
+            @Override
+            public void startPrecapture() {
+                mLog.append("precapture@").append(frame()).append(' ');
+            }
+
+            @Override
+            public void capture() {
+                mLog.append("capture@").append(frame()).append(' ');
+            }
+        });
+    }
+
+    @Test
+    public void withoutAutoFocus() {
+        mSequence.start(false);
+        assertThat(mLog.toString(), is("capture@0 "));
+        assertThat(mSequence.getState(), is(StillCaptureSequence.STATE_CAPTURING));
+    }
+
+    @Test
+    public void focusAndExposureReady() {
+        mSequence.start(true);
+        results(new int[][]{
+                {AF_SCANNING, AE_CONVERGED},
+                {AF_SCANNING, AE_CONVERGED},
+                {AF_LOCKED, AE_CONVERGED},
+                {AF_LOCKED, AE_CONVERGED},
+        });
+        assertThat(mLog.toString(), is("lock@0 capture@3 "));
+    }
+
+    @Test
+    public void focusFailedStillCaptures() {
+        mSequence.start(true);
+        results(new int[][]{
+                {AF_SCANNING, AE_CONVERGED},
+                {AF_FAILED, AE_CONVERGED},
+        });
+        assertThat(mLog.toString(), is("lock@0 capture@2 "));
+    }
+
+    @Test
+    public void precapture() {
+        mSequence.start(true);
+        results(new int[][]{
+                {AF_LOCKED, AE_SEARCHING},
+                {AF_LOCKED, AE_SEARCHING},
+                {AF_LOCKED, AE_PRECAPTURE},
+                {AF_LOCKED, AE_PRECAPTURE},
+                {AF_LOCKED, AE_FLASH_REQUIRED},
+                {AF_LOCKED, AE_FLASH_REQUIRED},
+        });
+        assertThat(mLog.toString(), is("lock@0 precapture@1 capture@5 "));
+        assertThat(mSequence.getState(), is(StillCaptureSequence.STATE_CAPTURING));
+    }
+
+    @Test
+    public void missingStates() {
+        // LEGACY devices may leave the AE state out
+        mSequence.start(true);
+        mNow += FRAME_NANOS;
+        mSequence.onResult(null, null);
+        mNow += FRAME_NANOS;
+        mSequence.onResult(AF_LOCKED, null);
+        assertThat(mLog.toString(), is("lock@0 capture@2 "));
+    }
+
+    @Test
+    public void slowFocus_waitsForLock() {
+        // Low light; the focus takes longer than a second
+        mSequence.start(true);
+        final int[][] scanning = new int[40][];
+        for (int i = 0; i < scanning.length; i++) {
+            scanning[i] = new int[]{AF_SCANNING, AE_CONVERGED};
+        }
+        results(scanning);
+        assertThat(mLog.toString(), is("lock@0 "));
+        assertThat(mSequence.getState(), is(StillCaptureSequence.STATE_LOCKING));
+        results(new int[][]{
+                {AF_LOCKED, AE_CONVERGED},
+        });
+        assertThat(mLog.toString(), is("lock@0 capture@41 "));
+    }
+
+    @Test
+    public void slowPrecapture_waitsForFlash() {
+        mSequence.start(true);
+        final int[][] precapture = new int[40][];
+        precapture[0] = new int[]{AF_LOCKED, AE_SEARCHING};
+        for (int i = 1; i < precapture.length; i++) {
+            precapture[i] = new int[]{AF_LOCKED, AE_PRECAPTURE};
+        }
+        results(precapture);
+        assertThat(mLog.toString(), is("lock@0 precapture@1 "));
+        results(new int[][]{
+                {AF_LOCKED, AE_FLASH_REQUIRED},
+        });
+        assertThat(mLog.toString(), is("lock@0 precapture@1 capture@41 "));
+    }
+
+    @Test
+    public void reset_ignoresResults() {
+        mSequence.start(true);
+        mSequence.reset();
+        results(new int[][]{
+                {AF_LOCKED, AE_CONVERGED},
+        });
+        assertThat(mLog.toString(), is("lock@0 "));
+        assertThat(mSequence.getState(), is(StillCaptureSequence.STATE_PREVIEW));
+    }
+
+    /**
+     * Reports a result for each of the {@code states}, one frame apart.
+     */
+    private void results(int[][] states) {
+        for (int[] state : states) {
+            mNow += FRAME_NANOS;
+            mSequence.onResult(state[0], state[1]);
+        }
+    }
+
+    private long frame() {
+        return mNow / FRAME_NANOS;
+    }
+
+}
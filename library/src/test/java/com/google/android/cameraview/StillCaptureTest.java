@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import android.hardware.camera2.CaptureResult;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+public class StillCaptureTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /** The time between two preview results at 30 fps. */
+    private static final long FRAME_MILLIS = 33;
+
+    /** The time a device takes to start a session after it is reconfigured. */
+    private static final long CONFIGURE_MILLIS = 150;
+
+    private static final long EXPOSURE_TIME = 20000000L;
+
+    private static final int SENSITIVITY = 400;
+
+    private final VirtualScheduler mScheduler = new VirtualScheduler();
+
+    private final StringBuilder mLog = new StringBuilder();
+
+    private final List<byte[]> mTaken = new ArrayList<>();
+
+    private ScriptedSession mSession;
+
+    private StillCapture mCapture;
+
+    @Before
+    public void setUp() {
+        mSession = new ScriptedSession();
+        mCapture = new StillCapture(mSession, new StillCapture.Callback() {
+            @Override
+            public void onPictureTaken(byte[] data) {
+                mTaken.add(data);
+            }
+        });
+        mSession.startPreview();
+    }
+
+    @Test
+    public void withoutAutoFocus() throws Exception {
+        mSession.mAutoFocus = false;
+        final PictureFuture future = takePicture();
+        mScheduler.advance(1000);
+        assertThat(mLog.toString(), is("burst(1)@0 unlock@100 "));
+        final PictureResult result = future.get();
+        assertThat(result.getData(), is(new byte[]{0}));
+        assertThat(result.getTimestamp(), is(0L));
+        assertThat(result.getExposureTime(), is(EXPOSURE_TIME));
+        assertThat(result.getSensitivity(), is(SENSITIVITY));
+        assertThat(result.getOrientation(), is(90));
+        assertThat(mTaken.size(), is(1));
+    }
+
+    @Test
+    public void locksFocusFirst() throws Exception {
+        mSession.mFocusMillis = 100;
+        final PictureFuture future = takePicture();
+        mScheduler.advance(1000);
+        // The focus locks on the fourth result after the trigger
+        assertThat(mLog.toString(), is("lock@0 burst(1)@132 unlock@232 "));
+        assertThat(future.get().getTimestamp(), is(132000000L));
+    }
+
+    @Test
+    public void precaptureWithFlash() throws Exception {
+        mSession.mFocusMillis = 100;
+        mSession.mPrecaptureMillis = 100;
+        final PictureFuture future = takePicture();
+        mScheduler.advance(1000);
+        assertThat(mLog.toString(),
+                is("lock@0 precapture@132 burst(1)@264 unlock@364 "));
+        assertThat(future.isDone(), is(true));
+    }
+
+    @Test
+    public void burst_takesPicturesRequestedWhileFocusing() throws Exception {
+        mSession.mFocusMillis = 100;
+        final PictureFuture first = takePicture();
+        mScheduler.advance(40);
+        final PictureFuture second = takePicture();
+        mScheduler.advance(40);
+        final PictureFuture third = takePicture();
+        mScheduler.advance(1000);
+        // A single lock and burst for the three of them
+        assertThat(mLog.toString(), is("lock@0 burst(3)@132 unlock@298 "));
+        assertThat(first.get().getData(), is(new byte[]{0}));
+        assertThat(second.get().getData(), is(new byte[]{1}));
+        assertThat(third.get().getData(), is(new byte[]{2}));
+        assertThat(first.get().getTimestamp(), is(132000000L));
+        assertThat(second.get().getTimestamp(), is(165000000L));
+        assertThat(third.get().getTimestamp(), is(198000000L));
+        assertThat(mTaken.size(), is(3));
+    }
+
+    @Test
+    public void burst_imagesMatchedByTimestamp() throws Exception {
+        mSession.mFocusMillis = 100;
+        mSession.mReverseImages = true;
+        final PictureFuture first = takePicture();
+        mScheduler.advance(40);
+        final PictureFuture second = takePicture();
+        mScheduler.advance(40);
+        final PictureFuture third = takePicture();
+        mScheduler.advance(1000);
+        assertThat(first.get().getData(), is(new byte[]{0}));
+        assertThat(second.get().getData(), is(new byte[]{1}));
+        assertThat(third.get().getData(), is(new byte[]{2}));
+    }
+
+    @Test
+    public void resultBeforeImage() throws Exception {
+        mSession.mAutoFocus = false;
+        mSession.mImageMillis = 150;
+        final PictureFuture future = takePicture();
+        mScheduler.advance(120);
+        assertThat(future.isDone(), is(false));
+        mScheduler.advance(1000);
+        assertThat(future.get().getData(), is(new byte[]{0}));
+        assertThat(future.get().getExposureTime(), is(EXPOSURE_TIME));
+    }
+
+    @Test
+    public void imageFailed_failsThatPicture() throws Exception {
+        mSession.mAutoFocus = false;
+        mSession.mImageFailures.add(0);
+        final PictureFuture future = takePicture();
+        mScheduler.advance(1000);
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+        assertThat(mTaken.size(), is(0));
+    }
+
+    @Test
+    public void picturesRequestedDuringBurst_waitForUnlock() throws Exception {
+        mSession.mAutoFocus = false;
+        final PictureFuture first = takePicture();
+        mScheduler.advance(50);
+        final PictureFuture second = takePicture();
+        mScheduler.advance(1000);
+        assertThat(mLog.toString(), is("burst(1)@0 unlock@100 burst(1)@100 unlock@200 "));
+        assertThat(first.get().getTimestamp(), is(0L));
+        assertThat(second.get().getTimestamp(), is(100000000L));
+    }
+
+    @Test
+    public void sessionRestart_picturesWaitUntilStreaming() throws Exception {
+        mSession.mAutoFocus = false;
+        takePicture();
+        mScheduler.advance(50);
+        // Reconfigured during the capture, as when the aspect ratio is changed
+        mSession.mRestartPending = true;
+        final PictureFuture second = takePicture();
+        mScheduler.advance(1000);
+        assertThat(mLog.toString(),
+                is("burst(1)@0 unlock@100 restart@100 burst(1)@250 unlock@350 "));
+        assertThat(second.get().getTimestamp(), is(250000000L));
+    }
+
+    @Test
+    public void captureFailed_failsThatPicture() throws Exception {
+        mSession.mFocusMillis = 100;
+        mSession.mFailures.add(0);
+        final PictureFuture first = takePicture();
+        mScheduler.advance(40);
+        final PictureFuture second = takePicture();
+        mScheduler.advance(1000);
+        // The burst still finishes once every picture is reported
+        assertThat(mLog.toString(), is("lock@0 burst(2)@132 unlock@265 "));
+        try {
+            first.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+        assertThat(second.get().getData(), is(new byte[]{1}));
+        assertThat(mTaken.size(), is(1));
+    }
+
+    @Test
+    public void videoSnapshot() throws Exception {
+        mSession.mRecording = true;
+        final PictureFuture future = takePicture();
+        mScheduler.advance(1000);
+        // Neither the focus nor the preview are touched
+        assertThat(mLog.toString(), is("snapshot@0 "));
+        assertThat(future.get().getData(), is(new byte[]{0}));
+    }
+
+    @Test
+    public void abort_failsAllPictures() throws Exception {
+        mSession.mFocusMillis = 100;
+        final PictureFuture focusing = takePicture();
+        mScheduler.advance(40);
+        final PictureFuture pending = takePicture();
+        mScheduler.advance(40);
+        mCapture.abort();
+        mScheduler.advance(1000);
+        for (PictureFuture future : new PictureFuture[]{focusing, pending}) {
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+            }
+        }
+        // The results that follow are ignored
+        assertThat(mLog.toString(), is("lock@0 "));
+        assertThat(mCapture.getState(), is(StillCaptureSequence.STATE_PREVIEW));
+    }
+
+    @Test
+    public void abortDuringBurst_dropsImages() throws Exception {
+        mSession.mAutoFocus = false;
+        final PictureFuture future = takePicture();
+        mScheduler.advance(40);
+        mCapture.abort();
+        mScheduler.advance(1000);
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IllegalStateException.class)));
+        }
+        // The image that arrives afterwards is not delivered
+        assertThat(mTaken.size(), is(0));
+    }
+
+    @Test
+    public void latencyBudget() throws Exception {
+        // Indoors with the flash: a slow focus and precapture, and a large JPEG
+        mSession.mFocusMillis = 300;
+        mSession.mPrecaptureMillis = 200;
+        mSession.mResultMillis = 120;
+        mSession.mImageMillis = 250;
+        // Three presses of the shutter button
+        final long[] done = new long[3];
+        for (int i = 0; i < done.length; i++) {
+            final int index = i;
+            takePicture().addListener(new Runnable() {
+                @Override
+                public void run() {
+                    done[index] = mScheduler.mNow;
+                }
+            }, DIRECT);
+            mScheduler.advance(100);
+        }
+        mScheduler.advance(5000);
+        // One focus and exposure lock serves the three; they are not taken one after another
+        for (long time : done) {
+            assertThat("done@" + time, time > 0 && time <= 1100, is(true));
+        }
+    }
+
+    private PictureFuture takePicture() {
+        final PictureFuture future = new PictureFuture();
+        mCapture.takePicture(future);
+        return future;
+    }
+
+    /**
+     * A session streaming results at 30 fps, whose 3A routines and captures take the time set in
+     * its fields. The images of a burst are numbered in the order they are captured.
+     */
+    private class ScriptedSession implements StillCapture.Session {
+
+        boolean mAutoFocus = true;
+
+        boolean mRecording;
+
+        /** Whether the session is reconfigured once the capture is finished. */
+        boolean mRestartPending;
+
+        long mFocusMillis;
+
+        /** The time of the precapture metering, or 0 if the exposure is converged already. */
+        long mPrecaptureMillis;
+
+        long mResultMillis = 100;
+
+        long mImageMillis = 80;
+
+        /** Whether the images of a burst arrive in the reverse order of their captures. */
+        boolean mReverseImages;
+
+        /** The indices of the pictures whose capture fails, with their image captured. */
+        final List<Integer> mFailures = new ArrayList<>();
+
+        /** The indices of the pictures whose image cannot be encoded. */
+        final List<Integer> mImageFailures = new ArrayList<>();
+
+        private boolean mStreaming;
+
+        private long mLockTime = -1;
+
+        private long mPrecaptureTime = -1;
+
+        private int mImages;
+
+        private final Runnable mFrame = new Runnable() {
+            @Override
+            public void run() {
+                mCapture.onPreviewResult(getAfState(), getAeState());
+                mScheduler.schedule(this, FRAME_MILLIS);
+            }
+        };
+
+        void startPreview() {
+            mStreaming = true;
+            mScheduler.schedule(mFrame, FRAME_MILLIS);
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return mStreaming;
+        }
+
+        @Override
+        public boolean isRecording() {
+            return mRecording;
+        }
+
+        @Override
+        public boolean isAutoFocus() {
+            return mAutoFocus;
+        }
+
+        @Override
+        public int getOutputOrientation() {
+            return 90;
+        }
+
+        @Override
+        public void startCapture() {
+            mStreaming = false;
+        }
+
+        @Override
+        public void lockFocus() {
+            log("lock");
+            mLockTime = mScheduler.mNow;
+        }
+
+        @Override
+        public void startPrecapture() {
+            log("precapture");
+            mPrecaptureTime = mScheduler.mNow;
+        }
+
+        @Override
+        public void captureBurst(List<StillCapture.Picture> pictures) {
+            log("burst(" + pictures.size() + ")");
+            mScheduler.cancel(mFrame);
+            final int count = pictures.size();
+            for (int i = 0; i < count; i++) {
+                final int image = mReverseImages ? count - 1 - i : i;
+                capture(pictures.get(i), i * FRAME_MILLIS, image * FRAME_MILLIS + mImageMillis);
+            }
+        }
+
+        @Override
+        public void captureVideoSnapshot(StillCapture.Picture picture) {
+            log("snapshot");
+            capture(picture, 0, mImageMillis);
+        }
+
+        @Override
+        public void finishCapture() {
+            log("unlock");
+            mLockTime = -1;
+            mPrecaptureTime = -1;
+            if (mRestartPending) {
+                mRestartPending = false;
+                log("restart");
+                mScheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        startPreview();
+                        mCapture.takePendingPictures();
+                    }
+                }, CONFIGURE_MILLIS);
+                return;
+            }
+            startPreview();
+        }
+
+        private void capture(final StillCapture.Picture picture, long delay, long imageDelay) {
+            final int index = mImages++;
+            final long timestamp = (mScheduler.mNow + delay) * 1000000L;
+            final boolean failed = mFailures.contains(index);
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    mCapture.onCaptureStarted(picture, timestamp);
+                }
+            }, delay);
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (failed) {
+                        mCapture.onCaptureFailed(picture, 0, true);
+                    } else {
+                        mCapture.onCaptureCompleted(picture, timestamp, EXPOSURE_TIME,
+                                SENSITIVITY);
+                    }
+                }
+            }, delay + mResultMillis);
+            mScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (mImageFailures.contains(index)) {
+                        mCapture.onImageFailed(timestamp, new IllegalStateException());
+                    } else {
+                        mCapture.onImage(timestamp, new byte[]{(byte) index}, new Size(4, 3));
+                    }
+                }
+            }, imageDelay);
+        }
+
+        private int getAfState() {
+            if (mLockTime < 0) {
+                return CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED;
+            }
+            return mScheduler.mNow - mLockTime > mFocusMillis
+                    ? CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED
+                    : CaptureResult.CONTROL_AF_STATE_ACTIVE_SCAN;
+        }
+
+        private int getAeState() {
+            if (mPrecaptureMillis == 0) {
+                return CaptureResult.CONTROL_AE_STATE_CONVERGED;
+            }
+            if (mPrecaptureTime < 0) {
+                return CaptureResult.CONTROL_AE_STATE_FLASH_REQUIRED;
+            }
+            return mScheduler.mNow - mPrecaptureTime > mPrecaptureMillis
+                    ? CaptureResult.CONTROL_AE_STATE_FLASH_REQUIRED
+                    : CaptureResult.CONTROL_AE_STATE_PRECAPTURE;
+        }
+
+        private void log(String event) {
+            mLog.append(event).append('@').append(mScheduler.mNow).append(' ');
+        }
+
+    }
+
+}
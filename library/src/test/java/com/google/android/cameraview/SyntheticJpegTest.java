@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+public class SyntheticJpegTest {
+
+    @Test
+    public void decodes() throws IOException {
+        assertDecodes(640, 480);
+        assertDecodes(1, 1);
+        assertDecodes(4000, 3000);
+        assertDecodes(1923, 1081);
+    }
+
+    private static void assertDecodes(int width, int height) throws IOException {
+        final byte[] jpeg = SyntheticJpeg.create(width, height);
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertThat(image.getWidth(), is(width));
+        assertThat(image.getHeight(), is(height));
+        assertThat(image.getRaster().getSample(width - 1, height - 1, 0), is(128));
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class VideoRecorderTest {
+
+    private static SizeMap.Snapshot videoSizes() {
+        SizeMap map = new SizeMap();
+        map.add(new Size(640, 480));
+        map.add(new Size(1280, 720));
+        map.add(new Size(1920, 1080));
+        map.add(new Size(3840, 2160));
+        map.add(new Size(1440, 1080));
+        return map.snapshot();
+    }
+
+    @Test
+    public void chooseSize_largestWithinProfile() {
+        assertThat(VideoRecorder.chooseSize(videoSizes(), AspectRatio.of(16, 9), 1920, 1080),
+                is(new Size(1920, 1080)));
+    }
+
+    @Test
+    public void chooseSize_profileInPortrait() {
+        assertThat(VideoRecorder.chooseSize(videoSizes(), AspectRatio.of(16, 9), 1080, 1920),
+                is(new Size(1920, 1080)));
+    }
+
+    @Test
+    public void chooseSize_closestRatio() {
+        assertThat(VideoRecorder.chooseSize(videoSizes(), AspectRatio.of(3, 2), 1920, 1080),
+                is(new Size(1440, 1080)));
+    }
+
+    @Test
+    public void chooseSize_smallestWhenNoneFits() {
+        assertThat(VideoRecorder.chooseSize(videoSizes(), AspectRatio.of(16, 9), 320, 240),
+                is(new Size(1280, 720)));
+    }
+
+    @Test
+    public void chooseSize_empty() {
+        assertThat(VideoRecorder.chooseSize(new SizeMap().snapshot(), AspectRatio.of(16, 9),
+                1920, 1080), is(nullValue()));
+    }
+
+    @Test
+    public void scaleBitRate() {
+        assertThat(VideoRecorder.scaleBitRate(17000000, 1920 * 1080, 1920 * 1080), is(17000000));
+        assertThat(VideoRecorder.scaleBitRate(17000000, 1920 * 1080, 960 * 540), is(4250000));
+        assertThat(VideoRecorder.scaleBitRate(17000000, 0, 960 * 540), is(17000000));
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the scheduled work in the order it is due, as the clock is advanced.
+ */
+final class VirtualScheduler implements FakeCamera.Scheduler {
+
+    long mNow;
+
+    private final List<Task> mTasks = new ArrayList<>();
+
+    void advance(long millis) {
+        final long until = mNow + millis;
+        while (true) {
+            Task next = null;
+            for (Task task : mTasks) {
+                if (task.time <= until && (next == null || task.time < next.time)) {
+                    next = task;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            mTasks.remove(next);
+            mNow = next.time;
+            next.runnable.run();
+        }
+        mNow = until;
+    }
+
+    /**
+     * @return The number of tasks that are scheduled but have not run yet.
+     */
+    int getPendingCount() {
+        return mTasks.size();
+    }
+
+    @Override
+    public boolean isCurrentThread() {
+        return true;
+    }
+
+    @Override
+    public void dispatch(Runnable runnable) {
+        schedule(runnable, 0);
+    }
+
+    @Override
+    public void schedule(Runnable runnable, long delayMillis) {
+        mTasks.add(new Task(mNow + delayMillis, runnable));
+    }
+
+    @Override
+    public void cancel(Runnable runnable) {
+        for (int i = mTasks.size() - 1; i >= 0; i--) {
+            if (mTasks.get(i).runnable == runnable) {
+                mTasks.remove(i);
+            }
+        }
+    }
+
+    @Override
+    public long elapsedRealtimeNanos() {
+        return mNow * 1000000L;
+    }
+
+    private static class Task {
+
+        final long time;
+
+        final Runnable runnable;
+
+        Task(long time, Runnable runnable) {
+            this.time = time;
+            this.runnable = runnable;
+        }
+
+    }
+
+}
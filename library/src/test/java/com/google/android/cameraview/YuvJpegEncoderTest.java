@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.cameraview;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class YuvJpegEncoderTest {
+
+    @Test
+    public void copyPlane_packed() {
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[]{
+                1, 2, 3, 0,
+                4, 5, 6, 0,
+        });
+        final byte[] out = new byte[6];
+        YuvJpegEncoder.copyPlane(buffer, 4, 1, 3, 2, out, 0, 1);
+        assertThat(out, is(new byte[]{1, 2, 3, 4, 5, 6}));
+    }
+
+    @Test
+    public void copyPlane_interleaved() {
+        // Semi-planar chroma, where the last row ends right after its last sample
+        final ByteBuffer buffer = ByteBuffer.wrap(new byte[]{
+                1, 0, 2, 0, 0, 0,
+                3, 0, 4,
+        });
+        final byte[] out = new byte[9];
+        YuvJpegEncoder.copyPlane(buffer, 6, 2, 2, 2, out, 1, 2);
+        assertThat(out, is(new byte[]{0, 1, 0, 2, 0, 3, 0, 4, 0}));
+    }
+
+}